@@ -17,6 +17,7 @@ package com.alibaba.intl.imagesearch;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Application configuration.
@@ -25,6 +26,7 @@ import org.springframework.context.annotation.PropertySource;
  */
 @SpringBootApplication
 @PropertySource("classpath:/application.properties")
+@EnableScheduling
 public class Application {
 
     public static void main(String[] args) {
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch;
+
+import com.alibaba.intl.imagesearch.services.impl.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Handle the Tomcat requests with virtual threads ("virtualThreads.enabled" property), so that requests blocked on the
+ * Image Search API or on the database do not hold a platform thread each.
+ * <p>
+ * When the runtime does not support virtual threads, the default Tomcat thread pool is kept.
+ *
+ * @author Alibaba Cloud
+ */
+@Configuration
+@ConditionalOnProperty(name = "virtualThreads.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+    private ExecutorService requestExecutorService;
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+        if (!VirtualThreads.isSupported()) {
+            LOGGER.warn("Virtual threads are enabled but not supported by this runtime (Java {}), platform threads are used instead.",
+                    System.getProperty("java.version"));
+            return factory -> {
+            };
+        }
+
+        requestExecutorService = VirtualThreads.newThreadPerTaskExecutor("http-request-");
+        LOGGER.info("Handle the HTTP requests with virtual threads.");
+        return factory -> factory.addConnectorCustomizers(
+                connector -> connector.getProtocolHandler().setExecutor(requestExecutorService));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (requestExecutorService != null) {
+            requestExecutorService.shutdown();
+        }
+    }
+}
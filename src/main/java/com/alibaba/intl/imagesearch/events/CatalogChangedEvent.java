@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.events;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+
+/**
+ * Event published when objects have been added to or removed from the Image Search instances. The changes applied
+ * together (e.g. a batch of the outbox) are published as a single event.
+ *
+ * @author Alibaba Cloud
+ */
+public class CatalogChangedEvent extends ApplicationEvent {
+
+    private final Collection<String> uuids;
+
+    public CatalogChangedEvent(Object source, Collection<String> uuids) {
+        super(source);
+        this.uuids = uuids;
+    }
+
+    /**
+     * @return UUIDs of the added or removed objects.
+     */
+    public Collection<String> getUuids() {
+        return uuids;
+    }
+}
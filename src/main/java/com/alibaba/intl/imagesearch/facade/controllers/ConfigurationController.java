@@ -29,6 +29,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Arrays;
+
 /**
  * Configuration operations behind the "/configuration" path.
  *
@@ -121,5 +123,13 @@ public class ConfigurationController {
         if (StringUtils.isBlank(configuration.getRegionId())) {
             throw new InvalidConfigurationException("The regionId is invalid.");
         }
+        if (StringUtils.isNotBlank(configuration.getSecondaryImageSearchInstanceName()) &&
+                countNames(configuration.getSecondaryImageSearchInstanceName()) != countNames(configuration.getImageSearchInstanceName())) {
+            throw new InvalidConfigurationException("The secondaryImageSearchInstanceName must contain one instance per imageSearchInstanceName.");
+        }
+    }
+
+    private static long countNames(String commaSeparatedNames) {
+        return Arrays.stream(commaSeparatedNames.split(",")).filter(StringUtils::isNotBlank).count();
     }
 }
@@ -14,15 +14,21 @@
 
 package com.alibaba.intl.imagesearch.facade.controllers;
 
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
 import com.alibaba.intl.imagesearch.facade.exceptions.InvalidImageException;
 import com.alibaba.intl.imagesearch.facade.exceptions.InvalidObjectException;
+import com.alibaba.intl.imagesearch.facade.exceptions.InvalidSearchRequestException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Handle errors and return appropriate messages in JSON.
  *
@@ -33,6 +39,25 @@ public class ErrorControllerAdvice {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ErrorControllerAdvice.class);
 
+    @ExceptionHandler
+    public ResponseEntity<String> handleUpstreamUnavailableException(UpstreamUnavailableException exception) {
+        // Expected under load, do not flood the logs with stack traces
+        LOGGER.warn("Image Search API unavailable: {}", exception.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()))
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> handleCompletionException(CompletionException exception) {
+        // Asynchronous requests fail with the exception of their future, wrapped by its dependent stages
+        Throwable cause = exception.getCause();
+        if (cause instanceof UpstreamUnavailableException) {
+            return handleUpstreamUnavailableException((UpstreamUnavailableException) cause);
+        }
+        return handleException(cause instanceof Exception ? (Exception) cause : exception);
+    }
+
     @ExceptionHandler
     public ResponseEntity<String> handleException(Exception exception) {
         LOGGER.error("Exception thrown: " + exception.getMessage(), exception);
@@ -41,6 +66,10 @@ public class ErrorControllerAdvice {
             return new ResponseEntity<>(exception.getMessage(), HttpStatus.BAD_REQUEST);
         } else if (exception instanceof InvalidImageException) {
             return new ResponseEntity<>(exception.getMessage(), HttpStatus.BAD_REQUEST);
+        } else if (exception instanceof InvalidSearchRequestException) {
+            return new ResponseEntity<>(exception.getMessage(), HttpStatus.BAD_REQUEST);
+        } else if (exception instanceof RejectedExecutionException) {
+            return new ResponseEntity<>("The server is busy, please retry later.", HttpStatus.SERVICE_UNAVAILABLE);
         } else {
             return new ResponseEntity<>(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
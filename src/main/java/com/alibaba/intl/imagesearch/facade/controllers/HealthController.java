@@ -14,9 +14,13 @@
 
 package com.alibaba.intl.imagesearch.facade.controllers;
 
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus;
+import com.alibaba.intl.imagesearch.services.ImageSearchService;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * Serves HTML pages.
  *
@@ -25,9 +29,20 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class HealthController {
 
+    private final ImageSearchService imageSearchService;
+
+    public HealthController(ImageSearchService imageSearchService) {
+        this.imageSearchService = imageSearchService;
+    }
+
     @RequestMapping("/health")
     public String health() {
         return "OK!";
     }
 
+    @RequestMapping("/health/circuitBreakers")
+    public List<CircuitBreakerStatus> circuitBreakers() {
+        return imageSearchService.getCircuitBreakerStatuses();
+    }
+
 }
@@ -19,27 +19,46 @@ import com.alibaba.intl.imagesearch.facade.dto.ObjectSearchResponseDTO;
 import com.alibaba.intl.imagesearch.facade.dto.ObjectWithScoreDTO;
 import com.alibaba.intl.imagesearch.facade.exceptions.InvalidImageException;
 import com.alibaba.intl.imagesearch.facade.exceptions.InvalidObjectException;
+import com.alibaba.intl.imagesearch.facade.exceptions.InvalidSearchRequestException;
 import com.alibaba.intl.imagesearch.model.ObjectCategory;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
 import com.alibaba.intl.imagesearch.model.RecognizableObject;
 import com.alibaba.intl.imagesearch.model.dto.AugmentedAuction;
+import com.alibaba.intl.imagesearch.model.dto.BulkIngestStatus;
 import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
 import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
 import com.alibaba.intl.imagesearch.model.dto.ObjectSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
+import com.alibaba.intl.imagesearch.services.BulkIngestService;
 import com.alibaba.intl.imagesearch.services.ConfigurationService;
+import com.alibaba.intl.imagesearch.services.ImageProcessingService;
 import com.alibaba.intl.imagesearch.services.RecognizableObjectService;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -52,44 +71,91 @@ import java.util.stream.Collectors;
 public class ObjectController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ObjectController.class);
-    private static final String UUID_REGEX = "^[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$";
-    private static final String NAME_REGEX = "^[a-zA-Z0-9 .\\-_()]+$";
+    private static final String UUID_REGEX = RecognizableObject.UUID_REGEX;
+    private static final String NAME_REGEX = RecognizableObject.NAME_REGEX;
+    /**
+     * Images cannot be modified once their object is created, so they can be cached "forever".
+     * Note: the "immutable" directive is not supported by {@link CacheControl} in this Spring version.
+     */
+    private static final String IMAGE_CACHE_CONTROL =
+            CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    @Value("${searchWindow.size}")
+    private int searchWindowSize;
 
     private final ConfigurationService configurationService;
     private final RecognizableObjectService recognizableObjectService;
+    private final ImageProcessingService imageProcessingService;
+    private final BulkIngestService bulkIngestService;
     private final Pattern UUID_PATTERN = Pattern.compile(UUID_REGEX);
     private final Pattern NAME_PATTERN = Pattern.compile(NAME_REGEX);
 
-    public ObjectController(ConfigurationService configurationService, RecognizableObjectService recognizableObjectService) {
+    public ObjectController(ConfigurationService configurationService,
+                            RecognizableObjectService recognizableObjectService,
+                            ImageProcessingService imageProcessingService,
+                            BulkIngestService bulkIngestService) {
         this.configurationService = configurationService;
         this.recognizableObjectService = recognizableObjectService;
+        this.imageProcessingService = imageProcessingService;
+        this.bulkIngestService = bulkIngestService;
     }
 
     /**
      * Create an object in the database.
-     * Note: the image is automatically resized if its resolution is smaller than 200x200 pixels or
-     * if its file size is bigger than 2MB.
+     * Note: the image is normalized before being registered: it is reduced to the maximum resolution used by
+     * Image Search, its EXIF orientation is applied and its metadata removed.
      *
+     * @param thumbnailFile Optional thumbnail, generated from the image if missing.
      * @return Created object.
      */
     @RequestMapping(value = "/objects", method = RequestMethod.POST)
     public ObjectDTO create(@RequestPart("json") ObjectDTO objectDTO,
                             @RequestPart("imageFile") MultipartFile imageFile,
-                            @RequestPart("thumbnailFile") MultipartFile thumbnailFile)
+                            @RequestPart(name = "thumbnailFile", required = false) MultipartFile thumbnailFile)
             throws InvalidObjectException, InvalidImageException {
         LOGGER.info("Create the object (image name = '{}', image size = {}kB, thumbnail size = {}kB): {}",
-                imageFile.getOriginalFilename(), imageFile.getSize() / 1024, thumbnailFile.getSize() / 1024, objectDTO);
+                imageFile.getOriginalFilename(), imageFile.getSize() / 1024,
+                thumbnailFile == null ? 0 : thumbnailFile.getSize() / 1024, objectDTO);
 
         validateObject(objectDTO);
 
         RecognizableObject object = convertObjectDTOToModel(objectDTO);
-        object.setImageData(readImageFile(imageFile));
-        object.setThumbnailData(readImageFile(thumbnailFile));
+        object.setImageData(normalizeImage(readImageFile(imageFile), object.getImageType()));
+        object.setThumbnailData(thumbnailFile == null
+                ? createThumbnail(object.getImageData(), object.getImageType())
+                : readImageFile(thumbnailFile));
 
         RecognizableObject savedObject = recognizableObjectService.create(object);
         return convertModelObjectToDTO(savedObject);
     }
 
+    /**
+     * Create many objects from a ZIP archive sent as the request body (see {@link BulkIngestService} for its format).
+     * The archive is read as a stream while its images are processed.
+     *
+     * @return {@link HttpStatus#ACCEPTED} with the job status once the archive has been read.
+     */
+    @RequestMapping(value = "/objects/bulk", method = RequestMethod.POST,
+            consumes = {"application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<BulkIngestStatus> bulkCreate(HttpServletRequest request) throws IOException {
+        LOGGER.info("Create objects from an archive (size = {}kB).", request.getContentLengthLong() / 1024);
+
+        BulkIngestStatus status = bulkIngestService.ingest(request.getInputStream());
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .location(URI.create("/objects/bulk/" + status.getJobId()))
+                .body(status);
+    }
+
+    /**
+     * @return Progress and item errors of a bulk creation job.
+     */
+    @RequestMapping(value = "/objects/bulk/{jobId}", method = RequestMethod.GET)
+    public ResponseEntity<BulkIngestStatus> findBulkCreateStatus(@PathVariable("jobId") String jobId) {
+        BulkIngestStatus status = bulkIngestService.findStatus(jobId);
+        return status == null ? new ResponseEntity<>(HttpStatus.NOT_FOUND) : ResponseEntity.ok(status);
+    }
+
     /**
      * Update an object in the database.
      * Note: the uuid and imageUrl cannot be modified.
@@ -162,28 +228,74 @@ public class ObjectController {
     }
 
     /**
-     * Find all objects that match the given image.
+     * Find a page of the objects that match the given image.
+     * The uploaded image is kept (reduced and encoded in JPEG) under the returned query session: the next searches of the same
+     * image (e.g. with another region) send this token instead of the image. The results are kept under the returned cursor: the next
+     * pages are requested with this cursor, so they are served without searching again.
+     * Note: the request thread is released while searching, the response is sent when the search is completed.
      *
-     * @param imageFile    Uploaded image file.
+     * @param imageFile    Uploaded image file, required without query session nor cursor.
+     * @param querySession Query session returned with a previous search, to search its image again.
      * @param objectRegion Updated crop image region
-     * @return Result page name.
+     * @param cursor       Cursor returned with the first page, to get another page of the same results.
+     * @param start        Position of the first result of the page.
+     * @param num          Maximum number of results in the page, up to "searchWindow.size".
+     * @return Future search result page, {@link HttpStatus#NOT_FOUND} if the query session or the results of the
+     * cursor expired.
      */
     @RequestMapping(value = "/objects/findAllBySimilarImage", method = RequestMethod.POST)
-    public ObjectSearchResponseDTO findAllBySimilarImage(@RequestParam("imageFile") MultipartFile imageFile, @RequestPart(name = "objectRegion", required = false) ImageRegion objectRegion)
-            throws InvalidImageException {
-        LOGGER.info("Find all objects similar to the given image (name = '{}', size = {}kB).",
-                imageFile.getOriginalFilename(), imageFile.getSize() / 1024);
-
-        ObjectSearchResponse response = recognizableObjectService.findAllBySimilarImage(readImageFile(imageFile), objectRegion);
+    public CompletableFuture<ResponseEntity<ObjectSearchResponseDTO>> findAllBySimilarImage(
+            @RequestParam(name = "imageFile", required = false) MultipartFile imageFile,
+            @RequestParam(name = "querySession", required = false) String querySession,
+            @RequestPart(name = "objectRegion", required = false) ImageRegion objectRegion,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "start", defaultValue = "0") int start,
+            @RequestParam(name = "num", defaultValue = "20") int num)
+            throws InvalidImageException, InvalidSearchRequestException {
+        if (start < 0) {
+            throw new InvalidSearchRequestException("The start cannot be negative.");
+        }
+        if (num < 1) {
+            throw new InvalidSearchRequestException("The num must be positive.");
+        }
+        if (num > searchWindowSize) {
+            throw new InvalidSearchRequestException("The num cannot be greater than " + searchWindowSize + ".");
+        }
 
-        boolean hasResultFromOSS = response.getAuctions().stream().anyMatch(it -> it.getImageStoreType() == ImageStoreType.OSS);
-        String ossBaseUrl = hasResultFromOSS ? configurationService.load().getOssBaseUrl() : "";
+        if (cursor != null) {
+            LOGGER.debug("Find the objects similar to a previous image (cursor = {}, start = {}, num = {}).", cursor, start, num);
+            return recognizableObjectService.findAllByCursorAsync(cursor, start, num)
+                    .thenApply(response -> response == null
+                            ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                            : ResponseEntity.ok(convertSearchResponseToDTO(response)));
+        }
 
-        List<ObjectWithScoreDTO> objectWithScores = response.getAuctions().stream()
-                .map(auction -> new ObjectWithScoreDTO(convertModelObjectToDTO(auction, ossBaseUrl), auction.getSimilarityScore()))
-                .collect(Collectors.toList());
+        if (imageFile != null) {
+            LOGGER.info("Find all objects similar to the given image (name = '{}', size = {}kB).",
+                    imageFile.getOriginalFilename(), imageFile.getSize() / 1024);
+            // The image is decoded only once: its reduced version is searched, and kept for the next searches
+            return reduceImageAsync(readImageFile(imageFile)).thenCompose(image -> {
+                String newQuerySession = recognizableObjectService.openQuerySession(image);
+                return recognizableObjectService.findAllBySimilarImageAsync(image, objectRegion, start, num)
+                        .thenApply(response -> convertSearchResponseToResponseEntity(response, newQuerySession));
+            });
+        }
+        if (querySession != null) {
+            LOGGER.info("Find all objects similar to the image of a query session (querySession = {}, objectRegion = {}).",
+                    querySession, objectRegion);
+            return recognizableObjectService.findAllByQuerySessionAsync(querySession, objectRegion, start, num)
+                    .thenApply(response -> response == null
+                            ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                            : convertSearchResponseToResponseEntity(response, querySession));
+        }
+        throw new InvalidSearchRequestException("The imageFile is required to start a search without query session nor cursor.");
+    }
 
-        return new ObjectSearchResponseDTO(objectWithScores, response.getRawImageSearchResponseJson(), response.getObjectRegion());
+    private ResponseEntity<ObjectSearchResponseDTO> convertSearchResponseToResponseEntity(ObjectSearchResponse response,
+                                                                                          String querySession) {
+        ObjectSearchResponseDTO responseDTO = convertSearchResponseToDTO(response);
+        responseDTO.setQuerySession(querySession);
+        return ResponseEntity.ok(responseDTO);
     }
 
     /**
@@ -192,13 +304,13 @@ public class ObjectController {
      * @return Image associated to the object with the given uuid.
      */
     @RequestMapping(value = "/objects/{uuid}/image", method = RequestMethod.GET)
-    public ResponseEntity<byte[]> findObjectImageByUuid(@PathVariable("uuid") String uuid) throws InvalidObjectException {
+    public ResponseEntity<Resource> findObjectImageByUuid(@PathVariable("uuid") String uuid) throws InvalidObjectException {
         LOGGER.debug("Find the object image with the uuid: {}", uuid);
 
         validateUuid(uuid);
 
-        RecognizableObject object = recognizableObjectService.findByUuid(uuid);
-        return wrapImageDataIntoResponseEntity(object.getImageData(), object.getImageType());
+        ObjectImage image = recognizableObjectService.findImage(uuid, ObjectImageVariant.IMAGE);
+        return wrapImageIntoResponseEntity(image);
     }
 
     /**
@@ -207,13 +319,13 @@ public class ObjectController {
      * @return Thumbnail image associated to the object with the given uuid.
      */
     @RequestMapping(value = "/objects/{uuid}/thumbnail", method = RequestMethod.GET)
-    public ResponseEntity<byte[]> findObjectThumbnailByUuid(@PathVariable("uuid") String uuid) throws InvalidObjectException {
+    public ResponseEntity<Resource> findObjectThumbnailByUuid(@PathVariable("uuid") String uuid) throws InvalidObjectException {
         LOGGER.debug("Find the object image thumbnail with the uuid: {}", uuid);
 
         validateUuid(uuid);
 
-        RecognizableObject object = recognizableObjectService.findByUuid(uuid);
-        return wrapImageDataIntoResponseEntity(object.getThumbnailData(), object.getImageType());
+        ObjectImage image = recognizableObjectService.findImage(uuid, ObjectImageVariant.THUMBNAIL);
+        return wrapImageIntoResponseEntity(image);
     }
 
     private void validateObject(ObjectDTO object) throws InvalidObjectException {
@@ -246,14 +358,18 @@ public class ObjectController {
         }
     }
 
-    private ResponseEntity<byte[]> wrapImageDataIntoResponseEntity(byte[] imageData, ObjectImageType imageType) {
-        if (imageData == null) {
+    private ResponseEntity<Resource> wrapImageIntoResponseEntity(ObjectImage image) {
+        if (image == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         } else {
+            // The resource provides the Content-Length, then its data is copied to the response by chunks.
+            // Conditional requests matching the ETag get a 304 response without the resource being opened.
             return ResponseEntity
                     .status(HttpStatus.OK)
-                    .contentType(imageType == ObjectImageType.JPEG ? MediaType.IMAGE_JPEG : MediaType.IMAGE_PNG)
-                    .body(imageData);
+                    .contentType(image.getImageType() == ObjectImageType.JPEG ? MediaType.IMAGE_JPEG : MediaType.IMAGE_PNG)
+                    .eTag(image.getHash())
+                    .header(HttpHeaders.CACHE_CONTROL, IMAGE_CACHE_CONTROL)
+                    .body(new ObjectImageResource(image));
         }
     }
 
@@ -265,14 +381,34 @@ public class ObjectController {
                 objectDTO.getImageType());
     }
 
+    private ObjectSearchResponseDTO convertSearchResponseToDTO(ObjectSearchResponse response) {
+        boolean hasResultFromOSS = response.getAuctions().stream().anyMatch(it -> it.getImageStoreType() == ImageStoreType.OSS);
+        String ossBaseUrl = hasResultFromOSS ? configurationService.load().getOssBaseUrl() : "";
+
+        List<ObjectWithScoreDTO> objectWithScores = response.getAuctions().stream()
+                .map(auction -> new ObjectWithScoreDTO(convertModelObjectToDTO(auction, ossBaseUrl), auction.getSimilarityScore()))
+                .collect(Collectors.toList());
+
+        ObjectSearchResponseDTO responseDTO =
+                new ObjectSearchResponseDTO(objectWithScores, response.getRawImageSearchResponseJson(), response.getObjectRegion());
+        responseDTO.setPartial(response.isPartial());
+        responseDTO.setCursor(response.getCursor());
+        responseDTO.setStart(response.getStart());
+        responseDTO.setTotal(response.getTotal());
+        return responseDTO;
+    }
+
     private ObjectDTO convertModelObjectToDTO(RecognizableObject object) {
-        return new ObjectDTO(
+        ObjectDTO objectDTO = new ObjectDTO(
                 object.getUuid(),
                 object.getName(),
                 object.getCategory(),
                 object.getImageType(),
                 "/objects/" + object.getUuid() + "/image",
                 "/objects/" + object.getUuid() + "/thumbnail");
+        // Objects without status have been registered before they were saved
+        objectDTO.setSyncStatus(object.getSyncStatus() == null ? ObjectSyncStatus.SYNCED : object.getSyncStatus());
+        return objectDTO;
     }
 
     private ObjectDTO convertModelObjectToDTO(AugmentedAuction auction, String ossBaseUrl) {
@@ -301,6 +437,35 @@ public class ObjectController {
                 thumbnailUrl);
     }
 
+    private byte[] normalizeImage(byte[] imageData, ObjectImageType imageType) throws InvalidImageException {
+        try {
+            return imageProcessingService.normalize(imageData, imageType);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidImageException("Unable to read the imageFile: " + e.getMessage(), e);
+        }
+    }
+
+    private CompletableFuture<ReducedImage> reduceImageAsync(byte[] imageData) {
+        return imageProcessingService.reduceAsync(imageData).handle((image, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            if (cause == null) {
+                return image;
+            }
+            throw new CompletionException(cause instanceof IllegalArgumentException
+                    ? new InvalidImageException("Unable to read the imageFile: " + cause.getMessage(), cause)
+                    : cause);
+        });
+    }
+
+    private byte[] createThumbnail(byte[] imageData, ObjectImageType imageType) throws InvalidImageException {
+        try {
+            return imageProcessingService.createThumbnail(imageData, imageType);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidImageException("Unable to create a thumbnail from the imageFile: " + e.getMessage(), e);
+        }
+    }
+
     private byte[] readImageFile(MultipartFile imageFile) throws InvalidImageException {
         try {
             return imageFile.getBytes();
@@ -308,4 +473,35 @@ public class ObjectController {
             throw new InvalidImageException("Unable to read the imageFile: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Expose an {@link ObjectImage} with its known length, so that it can be streamed without being buffered.
+     */
+    private static final class ObjectImageResource extends AbstractResource {
+        private final ObjectImage image;
+
+        ObjectImageResource(ObjectImage image) {
+            this.image = image;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Object image [" + image + "]";
+        }
+
+        @Override
+        public boolean exists() {
+            return true; // Avoid opening the stream only to check it
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return image.getData().getInputStream();
+        }
+
+        @Override
+        public long contentLength() {
+            return image.getContentLength();
+        }
+    }
 }
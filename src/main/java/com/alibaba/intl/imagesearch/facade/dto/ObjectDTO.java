@@ -16,6 +16,7 @@ package com.alibaba.intl.imagesearch.facade.dto;
 
 import com.alibaba.intl.imagesearch.model.ObjectCategory;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
 
 /**
  * @author Alibaba Cloud
@@ -28,6 +29,7 @@ public class ObjectDTO {
     private ObjectImageType imageType;
     private String imageUrl;
     private String thumbnailUrl;
+    private ObjectSyncStatus syncStatus;
 
     public ObjectDTO() {
     }
@@ -89,6 +91,17 @@ public class ObjectDTO {
         this.thumbnailUrl = thumbnailUrl;
     }
 
+    /**
+     * @return State of the registration of the object in the Image Search API, null in search results.
+     */
+    public ObjectSyncStatus getSyncStatus() {
+        return syncStatus;
+    }
+
+    public void setSyncStatus(ObjectSyncStatus syncStatus) {
+        this.syncStatus = syncStatus;
+    }
+
     @Override
     public String toString() {
         return "ObjectDTO{" +
@@ -98,6 +111,7 @@ public class ObjectDTO {
                 ", imageType=" + imageType +
                 ", imageUrl='" + imageUrl + '\'' +
                 ", thumbnailUrl='" + thumbnailUrl + '\'' +
+                ", syncStatus=" + syncStatus +
                 '}';
     }
 }
@@ -28,6 +28,26 @@ public class ObjectSearchResponseDTO {
     private List<ObjectWithScoreDTO> objectWithScores;
     private String rawImageSearchResponseJson;
     private ImageRegion objectRegion;
+    /**
+     * True when some Image Search instances did not answer, so some results may be missing.
+     */
+    private boolean partial;
+    /**
+     * Token to fetch the other pages of the same results without searching again.
+     */
+    private String cursor;
+    /**
+     * Position of the first result of this page in the results.
+     */
+    private int start;
+    /**
+     * Number of results that can be paged through with the cursor.
+     */
+    private int total;
+    /**
+     * Token to search the same image again (e.g. with another region) without uploading it.
+     */
+    private String querySession;
 
     public ObjectSearchResponseDTO() {
     }
@@ -62,12 +82,57 @@ public class ObjectSearchResponseDTO {
         this.objectRegion = objectRegion;
     }
 
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public String getQuerySession() {
+        return querySession;
+    }
+
+    public void setQuerySession(String querySession) {
+        this.querySession = querySession;
+    }
+
     @Override
     public String toString() {
         return "ObjectSearchResponseDTO{" +
                 "objectWithScores=" + objectWithScores +
                 ", rawImageSearchResponseJson='" + rawImageSearchResponseJson + '\'' +
                 ", objectRegion=" + objectRegion +
+                ", partial=" + partial +
+                ", cursor='" + cursor + '\'' +
+                ", start=" + start +
+                ", total=" + total +
+                ", querySession='" + querySession + '\'' +
                 '}';
     }
 }
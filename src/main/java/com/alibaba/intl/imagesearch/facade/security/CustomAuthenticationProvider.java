@@ -14,8 +14,15 @@
 
 package com.alibaba.intl.imagesearch.facade.security;
 
+import com.alibaba.intl.imagesearch.events.ConfigurationSavedEvent;
 import com.alibaba.intl.imagesearch.model.Configuration;
 import com.alibaba.intl.imagesearch.services.ConfigurationService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -24,21 +31,60 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Authenticate users by checking the configuration.
+ * <p>
+ * Because HTTP Basic authentication sends the password with every request, successful verifications are cached for
+ * a short time in order to avoid running BCrypt each time. Cache keys are keyed hashes of the presented password
+ * (the key is random and never leaves the process) and cache values are the BCrypt hash they have been verified
+ * against, so that a password change invalidates them.
  *
  * @author Alibaba Cloud
  */
 @Component
 public class CustomAuthenticationProvider implements AuthenticationProvider {
 
+    private static final String CREDENTIAL_HASH_ALGORITHM = "HmacSHA256";
+
+    @Value("${security.credentialCache.expireAfterWrite}")
+    private long credentialCacheExpireAfterWrite;
+
+    @Value("${security.credentialCache.maximumSize}")
+    private long credentialCacheMaximumSize;
+
     private final ConfigurationService configurationService;
+    private final MeterRegistry meterRegistry;
     private PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final SecretKeySpec credentialHashKey;
+    private Cache<String, String> verifiedCredentialCache;
 
-    public CustomAuthenticationProvider(ConfigurationService configurationService) {
+    public CustomAuthenticationProvider(ConfigurationService configurationService, MeterRegistry meterRegistry) {
         this.configurationService = configurationService;
+        this.meterRegistry = meterRegistry;
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.credentialHashKey = new SecretKeySpec(key, CREDENTIAL_HASH_ALGORITHM);
+    }
+
+    @PostConstruct
+    public void createVerifiedCredentialCache() {
+        verifiedCredentialCache = Caffeine.newBuilder()
+                .expireAfterWrite(credentialCacheExpireAfterWrite, TimeUnit.MILLISECONDS)
+                .maximumSize(credentialCacheMaximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedCredentialCache, "verifiedCredentialCache");
     }
 
     @Override
@@ -54,8 +100,17 @@ public class CustomAuthenticationProvider implements AuthenticationProvider {
             return buildAdminToken();
         }
 
+        // Check if the same password has recently been verified against the current one
+        String presentedPassword = authentication.getCredentials().toString();
+        String credentialHash = hashCredential(presentedPassword);
+        String verifiedPasswordHash = verifiedCredentialCache.getIfPresent(credentialHash);
+        if (verifiedPasswordHash != null && verifiedPasswordHash.equals(configuration.getPassword())) {
+            return buildAdminToken();
+        }
+
         // Compare the password
-        if (passwordEncoder.matches(authentication.getCredentials().toString(), configuration.getPassword())) {
+        if (passwordEncoder.matches(presentedPassword, configuration.getPassword())) {
+            verifiedCredentialCache.put(credentialHash, configuration.getPassword());
             return buildAdminToken();
         }
 
@@ -67,6 +122,24 @@ public class CustomAuthenticationProvider implements AuthenticationProvider {
         return authentication.equals(UsernamePasswordAuthenticationToken.class);
     }
 
+    /**
+     * Forget all verified credentials when the configuration (and potentially the password) changes.
+     */
+    @EventListener
+    public void onConfigurationSaved(ConfigurationSavedEvent event) {
+        verifiedCredentialCache.invalidateAll();
+    }
+
+    private String hashCredential(String credential) {
+        try {
+            Mac mac = Mac.getInstance(CREDENTIAL_HASH_ALGORITHM);
+            mac.init(credentialHashKey);
+            return Base64.getEncoder().encodeToString(mac.doFinal(credential.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to hash the credential: " + e.getMessage(), e);
+        }
+    }
+
     private Authentication buildAdminToken() {
         return new UsernamePasswordAuthenticationToken("admin", "",
                 Collections.singletonList(new SimpleGrantedAuthority("ADMIN")));
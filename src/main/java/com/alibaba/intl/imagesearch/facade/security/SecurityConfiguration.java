@@ -43,7 +43,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
         http.httpBasic()
                 .and()
                 .authorizeRequests()
-                .antMatchers("/configuration/**").hasAnyAuthority("ADMIN")
+                .antMatchers("/configuration/**", "/actuator/metrics/**").hasAnyAuthority("ADMIN")
                 .antMatchers("/**").permitAll()
                 .and()
                 .csrf().disable()
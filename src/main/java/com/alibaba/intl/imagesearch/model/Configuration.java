@@ -37,6 +37,17 @@ public class Configuration {
     private String imageSearchDomain;
     private String imageSearchNamespace;
     private String ossBaseUrl;
+    /**
+     * Optional secondary Image Search instance that holds the same catalog, used for hedged searches. The region and
+     * domain are the primary ones when they are not set.
+     */
+    private String secondaryImageSearchInstanceName;
+    private String secondaryRegionId;
+    private String secondaryImageSearchDomain;
+    /**
+     * Incremented each time the configuration is saved.
+     */
+    private Long version;
 
     public Configuration() {
     }
@@ -53,6 +64,19 @@ public class Configuration {
         this.ossBaseUrl = ossBaseUrl;
     }
 
+    /**
+     * Copy constructor.
+     */
+    public Configuration(Configuration configuration) {
+        this(configuration.id, configuration.password, configuration.accessKeyId, configuration.accessKeySecret,
+                configuration.regionId, configuration.imageSearchInstanceName, configuration.imageSearchDomain,
+                configuration.imageSearchNamespace, configuration.ossBaseUrl);
+        this.secondaryImageSearchInstanceName = configuration.secondaryImageSearchInstanceName;
+        this.secondaryRegionId = configuration.secondaryRegionId;
+        this.secondaryImageSearchDomain = configuration.secondaryImageSearchDomain;
+        this.version = configuration.version;
+    }
+
     public String getId() {
         return id;
     }
@@ -125,6 +149,38 @@ public class Configuration {
         this.ossBaseUrl = ossBaseUrl;
     }
 
+    public String getSecondaryImageSearchInstanceName() {
+        return secondaryImageSearchInstanceName;
+    }
+
+    public void setSecondaryImageSearchInstanceName(String secondaryImageSearchInstanceName) {
+        this.secondaryImageSearchInstanceName = secondaryImageSearchInstanceName;
+    }
+
+    public String getSecondaryRegionId() {
+        return secondaryRegionId;
+    }
+
+    public void setSecondaryRegionId(String secondaryRegionId) {
+        this.secondaryRegionId = secondaryRegionId;
+    }
+
+    public String getSecondaryImageSearchDomain() {
+        return secondaryImageSearchDomain;
+    }
+
+    public void setSecondaryImageSearchDomain(String secondaryImageSearchDomain) {
+        this.secondaryImageSearchDomain = secondaryImageSearchDomain;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -155,6 +211,10 @@ public class Configuration {
                 ", imageSearchDomain='" + imageSearchDomain + '\'' +
                 ", imageSearchNamespace='" + imageSearchNamespace + '\'' +
                 ", ossBaseUrl='" + ossBaseUrl + '\'' +
+                ", secondaryImageSearchInstanceName='" + secondaryImageSearchInstanceName + '\'' +
+                ", secondaryRegionId='" + secondaryRegionId + '\'' +
+                ", secondaryImageSearchDomain='" + secondaryImageSearchDomain + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.model;
+
+/**
+ * Change to apply to the Image Search API for an {@link ObjectSyncTask}.
+ *
+ * @author Alibaba Cloud
+ */
+public enum ObjectSyncOperation {
+    /**
+     * Add the object image to the Image Search instance.
+     */
+    REGISTER,
+
+    /**
+     * Delete the object image from the Image Search instance.
+     */
+    UNREGISTER
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.model;
+
+import javax.persistence.*;
+
+/**
+ * Pending change of the Image Search catalog (transactional outbox), saved in the same transaction as the
+ * {@link RecognizableObject} it applies to and deleted once the Image Search API has acknowledged it.
+ *
+ * @author Alibaba Cloud
+ */
+@Entity
+@Table(name = "OBJECT_SYNC_TASK", indexes = @Index(name = "IDX_OBJECT_SYNC_TASK_NEXT_ATTEMPT", columnList = "nextAttemptTime"))
+public class ObjectSyncTask {
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String objectUuid;
+    private ObjectSyncOperation operation;
+    private int attempts;
+    /**
+     * Time in milliseconds since the epoch before which the task must not be processed.
+     */
+    private long nextAttemptTime;
+    private long creationTime;
+    @Column(length = MAX_ERROR_LENGTH)
+    private String lastError;
+
+    public ObjectSyncTask() {
+    }
+
+    public ObjectSyncTask(String objectUuid, ObjectSyncOperation operation) {
+        this.objectUuid = objectUuid;
+        this.operation = operation;
+        this.creationTime = System.currentTimeMillis();
+        this.nextAttemptTime = creationTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getObjectUuid() {
+        return objectUuid;
+    }
+
+    public void setObjectUuid(String objectUuid) {
+        this.objectUuid = objectUuid;
+    }
+
+    public ObjectSyncOperation getOperation() {
+        return operation;
+    }
+
+    public void setOperation(ObjectSyncOperation operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * @return Number of failed attempts.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    public void setNextAttemptTime(long nextAttemptTime) {
+        this.nextAttemptTime = nextAttemptTime;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * @return Message of the last failed attempt, or null if the task has never failed.
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError == null || lastError.length() <= MAX_ERROR_LENGTH
+                ? lastError
+                : lastError.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectSyncTask{" +
+                "id=" + id +
+                ", objectUuid='" + objectUuid + '\'' +
+                ", operation=" + operation +
+                ", attempts=" + attempts +
+                ", nextAttemptTime=" + nextAttemptTime +
+                ", creationTime=" + creationTime +
+                ", lastError='" + lastError + '\'' +
+                '}';
+    }
+}
@@ -30,6 +30,16 @@ import java.util.Objects;
 @Table(name = "RECOGNIZABLE_OBJECT")
 public class RecognizableObject {
 
+    /**
+     * Format of the object UUIDs (version 4).
+     */
+    public static final String UUID_REGEX = "^[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$";
+
+    /**
+     * Characters allowed in the object names.
+     */
+    public static final String NAME_REGEX = "^[a-zA-Z0-9 .\\-_()]+$";
+
     @Id
     private String uuid;
     private String name;
@@ -39,6 +49,12 @@ public class RecognizableObject {
     private byte[] imageData;
     @Lob
     private byte[] thumbnailData;
+    private String imageHash;
+    private String thumbnailHash;
+    /**
+     * Null for objects created before the registrations were asynchronous: they are registered.
+     */
+    private ObjectSyncStatus syncStatus;
 
     public RecognizableObject(String uuid, String name, ObjectCategory category, ObjectImageType imageType, byte[] imageData, byte[] thumbnailData) {
         this.uuid = uuid;
@@ -56,6 +72,11 @@ public class RecognizableObject {
         this(uuid, name, category, imageType, null, null);
     }
 
+    public RecognizableObject(String uuid, String name, ObjectCategory category, ObjectImageType imageType, ObjectSyncStatus syncStatus) {
+        this(uuid, name, category, imageType, null, null);
+        this.syncStatus = syncStatus;
+    }
+
     public String getUuid() {
         return uuid;
     }
@@ -104,6 +125,36 @@ public class RecognizableObject {
         this.thumbnailData = thumbnailData;
     }
 
+    /**
+     * @return Hexadecimal MD5 hash of {@link #getImageData()}.
+     */
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    /**
+     * @return Hexadecimal MD5 hash of {@link #getThumbnailData()}.
+     */
+    public String getThumbnailHash() {
+        return thumbnailHash;
+    }
+
+    public void setThumbnailHash(String thumbnailHash) {
+        this.thumbnailHash = thumbnailHash;
+    }
+
+    public ObjectSyncStatus getSyncStatus() {
+        return syncStatus;
+    }
+
+    public void setSyncStatus(ObjectSyncStatus syncStatus) {
+        this.syncStatus = syncStatus;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -130,6 +181,9 @@ public class RecognizableObject {
                 ", imageType=" + imageType +
                 ", imageData=" + Arrays.toString(imageData) +
                 ", thumbnailData=" + Arrays.toString(thumbnailData) +
+                ", imageHash='" + imageHash + '\'' +
+                ", thumbnailHash='" + thumbnailHash + '\'' +
+                ", syncStatus=" + syncStatus +
                 '}';
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Progress of the reconciliation between the catalog and the Image Search instances, so that a restarted
+ * application continues the current cycle instead of starting it again.
+ *
+ * @author Alibaba Cloud
+ */
+@Entity
+@Table(name = "RECONCILIATION_CHECKPOINT")
+public class ReconciliationCheckpoint {
+
+    @Id
+    private String id;
+    /**
+     * UUID of the last reconciled object, null when a new cycle must start from the first object.
+     */
+    private String lastUuid;
+    /**
+     * Time in milliseconds since the epoch when the last complete cycle ended, null if there was none.
+     */
+    private Long lastCycleEndTime;
+
+    public ReconciliationCheckpoint() {
+    }
+
+    public ReconciliationCheckpoint(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLastUuid() {
+        return lastUuid;
+    }
+
+    public void setLastUuid(String lastUuid) {
+        this.lastUuid = lastUuid;
+    }
+
+    public Long getLastCycleEndTime() {
+        return lastCycleEndTime;
+    }
+
+    public void setLastCycleEndTime(Long lastCycleEndTime) {
+        this.lastCycleEndTime = lastCycleEndTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconciliationCheckpoint{" +
+                "id='" + id + '\'' +
+                ", lastUuid='" + lastUuid + '\'' +
+                ", lastCycleEndTime=" + lastCycleEndTime +
+                '}';
+    }
+}
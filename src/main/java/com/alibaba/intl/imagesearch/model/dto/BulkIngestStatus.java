@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.model.dto;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Progress of a bulk ingestion job.
+ *
+ * @author Alibaba Cloud
+ */
+public class BulkIngestStatus {
+
+    private final String jobId;
+    private final State state;
+    private final String error;
+    private final Date startTime;
+    private final Date endTime;
+    private final int totalItems;
+    private final int succeededItems;
+    private final int failedItems;
+    private final List<ItemError> itemErrors;
+
+    public BulkIngestStatus(String jobId, State state, String error, Date startTime, Date endTime, int totalItems,
+                            int succeededItems, int failedItems, List<ItemError> itemErrors) {
+        this.jobId = jobId;
+        this.state = state;
+        this.error = error;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.totalItems = totalItems;
+        this.succeededItems = succeededItems;
+        this.failedItems = failedItems;
+        this.itemErrors = itemErrors;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Reason why the archive could not be read until the end, or null.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return Time when the last item has been processed, or null if the job is running.
+     */
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return Number of items found in the manifest and in the archive so far.
+     */
+    public int getTotalItems() {
+        return totalItems;
+    }
+
+    /**
+     * @return Number of objects created (their registration in the Image Search API is asynchronous).
+     */
+    public int getSucceededItems() {
+        return succeededItems;
+    }
+
+    public int getFailedItems() {
+        return failedItems;
+    }
+
+    /**
+     * @return Errors of the first failed items.
+     */
+    public List<ItemError> getItemErrors() {
+        return itemErrors;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkIngestStatus{" +
+                "jobId='" + jobId + '\'' +
+                ", state=" + state +
+                ", error='" + error + '\'' +
+                ", startTime=" + startTime +
+                ", endTime=" + endTime +
+                ", totalItems=" + totalItems +
+                ", succeededItems=" + succeededItems +
+                ", failedItems=" + failedItems +
+                ", itemErrors=" + itemErrors +
+                '}';
+    }
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        /**
+         * The archive could not be read until the end, the items read before the error have been processed.
+         */
+        FAILED
+    }
+
+    /**
+     * Reason why an item of the archive has not been created.
+     */
+    public static class ItemError {
+        private final String entryName;
+        private final String uuid;
+        private final String message;
+
+        public ItemError(String entryName, String uuid, String message) {
+            this.entryName = entryName;
+            this.uuid = uuid;
+            this.message = message;
+        }
+
+        /**
+         * @return Name of the image in the archive, or null if the image is missing.
+         */
+        public String getEntryName() {
+            return entryName;
+        }
+
+        /**
+         * @return Object UUID, or null if it is unknown.
+         */
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "ItemError{" +
+                    "entryName='" + entryName + '\'' +
+                    ", uuid='" + uuid + '\'' +
+                    ", message='" + message + '\'' +
+                    '}';
+        }
+    }
+}
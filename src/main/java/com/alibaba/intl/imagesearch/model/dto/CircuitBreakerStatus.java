@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.model.dto;
+
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Status of the circuit breaker that protects an {@link ImageSearchOperation} on an Image Search instance.
+ *
+ * @author Alibaba Cloud
+ */
+public class CircuitBreakerStatus {
+
+    private final ImageSearchOperation operation;
+    private final String instanceName;
+    private final State state;
+    private final int numberOfCalls;
+    private final float failureRate;
+    private final float slowCallRate;
+    private final List<Transition> transitions;
+
+    public CircuitBreakerStatus(ImageSearchOperation operation, String instanceName, State state, int numberOfCalls,
+                                float failureRate, float slowCallRate, List<Transition> transitions) {
+        this.operation = operation;
+        this.instanceName = instanceName;
+        this.state = state;
+        this.numberOfCalls = numberOfCalls;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.transitions = transitions;
+    }
+
+    public ImageSearchOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return Name of the Image Search instance protected by the circuit breaker.
+     */
+    public String getInstanceName() {
+        return instanceName;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Number of calls in the sliding window.
+     */
+    public int getNumberOfCalls() {
+        return numberOfCalls;
+    }
+
+    /**
+     * @return Percentage of failed calls in the sliding window.
+     */
+    public float getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * @return Percentage of slow calls in the sliding window.
+     */
+    public float getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    /**
+     * @return Most recent state transitions, the latest one last.
+     */
+    public List<Transition> getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * State of a circuit breaker.
+     */
+    public enum State {
+        /**
+         * Calls are allowed.
+         */
+        CLOSED,
+
+        /**
+         * Calls are rejected without reaching the Image Search API.
+         */
+        OPEN,
+
+        /**
+         * A few trial calls are allowed to decide if the circuit breaker must be closed or opened again.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Change of state.
+     */
+    public static class Transition {
+        private final State fromState;
+        private final State toState;
+        private final Date date;
+
+        public Transition(State fromState, State toState, Date date) {
+            this.fromState = fromState;
+            this.toState = toState;
+            this.date = date;
+        }
+
+        public State getFromState() {
+            return fromState;
+        }
+
+        public State getToState() {
+            return toState;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+    }
+}
@@ -35,6 +35,13 @@ public class ImageRegion {
         this.height = height;
     }
 
+    /**
+     * Copy constructor.
+     */
+    public ImageRegion(ImageRegion region) {
+        this(region.x, region.y, region.width, region.height);
+    }
+
     public int getX() {
         return x;
     }
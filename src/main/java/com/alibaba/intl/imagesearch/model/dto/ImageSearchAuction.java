@@ -14,6 +14,7 @@
 
 package com.alibaba.intl.imagesearch.model.dto;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -49,6 +50,14 @@ public class ImageSearchAuction {
         this.customContent = customContent;
     }
 
+    /**
+     * Copy constructor.
+     */
+    public ImageSearchAuction(ImageSearchAuction auction) {
+        this(auction.itemId, auction.catId, auction.picName, auction.imageStoreType, auction.similarityScore,
+                auction.customContent == null ? null : new LinkedHashMap<>(auction.customContent));
+    }
+
     public String getItemId() {
         return itemId;
     }
@@ -15,6 +15,7 @@
 package com.alibaba.intl.imagesearch.model.dto;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Result of a search by similar image.
@@ -26,6 +27,10 @@ public class ImageSearchResponse {
     private List<ImageSearchAuction> imageSearchAuctions;
     private String rawImageSearchResponseJson;
     private ImageRegion objectRegion;
+    /**
+     * True when some Image Search instances did not answer, so some results may be missing.
+     */
+    private boolean partial;
 
     public ImageSearchResponse() {
     }
@@ -36,6 +41,18 @@ public class ImageSearchResponse {
         this.objectRegion = objectRegion;
     }
 
+    /**
+     * Deep copy constructor.
+     */
+    public ImageSearchResponse(ImageSearchResponse response) {
+        this(response.imageSearchAuctions == null ? null : response.imageSearchAuctions.stream()
+                        .map(ImageSearchAuction::new)
+                        .collect(Collectors.toList()),
+                response.rawImageSearchResponseJson,
+                response.objectRegion == null ? null : new ImageRegion(response.objectRegion));
+        this.partial = response.partial;
+    }
+
     public List<ImageSearchAuction> getImageSearchAuctions() {
         return imageSearchAuctions;
     }
@@ -60,12 +77,21 @@ public class ImageSearchResponse {
         this.objectRegion = objectRegion;
     }
 
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
     @Override
     public String toString() {
         return "ImageSearchResponse{" +
                 "imageSearchAuctions=" + imageSearchAuctions +
                 ", rawImageSearchResponseJson='" + rawImageSearchResponseJson + '\'' +
                 ", objectRegion=" + objectRegion +
+                ", partial=" + partial +
                 '}';
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.model.dto;
+
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * Image or thumbnail of an object, with its data available as a stream.
+ *
+ * @author Alibaba Cloud
+ */
+public class ObjectImage {
+
+    private ObjectImageType imageType;
+    private long contentLength;
+    /**
+     * Hash of the image data, that changes only if the data changes.
+     */
+    private String hash;
+    /**
+     * Each call to {@link InputStreamSource#getInputStream()} opens a new stream that must be closed by the caller.
+     */
+    private InputStreamSource data;
+
+    public ObjectImage() {
+    }
+
+    public ObjectImage(ObjectImageType imageType, long contentLength, String hash, InputStreamSource data) {
+        this.imageType = imageType;
+        this.contentLength = contentLength;
+        this.hash = hash;
+        this.data = data;
+    }
+
+    public ObjectImageType getImageType() {
+        return imageType;
+    }
+
+    public void setImageType(ObjectImageType imageType) {
+        this.imageType = imageType;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public InputStreamSource getData() {
+        return data;
+    }
+
+    public void setData(InputStreamSource data) {
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectImage{" +
+                "imageType=" + imageType +
+                ", contentLength=" + contentLength +
+                ", hash='" + hash + '\'' +
+                '}';
+    }
+}
@@ -12,6 +12,22 @@ public class ObjectSearchResponse {
     private List<AugmentedAuction> auctions;
     private String rawImageSearchResponseJson;
     private ImageRegion objectRegion;
+    /**
+     * True when some Image Search instances did not answer, so some results may be missing.
+     */
+    private boolean partial;
+    /**
+     * Token to fetch the other pages of the same results without searching again.
+     */
+    private String cursor;
+    /**
+     * Position of the first result of this page in the results.
+     */
+    private int start;
+    /**
+     * Number of results that can be paged through with the cursor.
+     */
+    private int total;
 
     public ObjectSearchResponse() {
     }
@@ -46,12 +62,48 @@ public class ObjectSearchResponse {
         this.objectRegion = objectRegion;
     }
 
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
     @Override
     public String toString() {
         return "ObjectSearchResponse{" +
                 "auctions=" + auctions +
                 ", rawImageSearchResponseJson='" + rawImageSearchResponseJson + '\'' +
                 ", objectRegion=" + objectRegion +
+                ", partial=" + partial +
+                ", cursor='" + cursor + '\'' +
+                ", start=" + start +
+                ", total=" + total +
                 '}';
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.model.dto;
+
+/**
+ * Image prepared for a search: a region of the original image, reduced in size.
+ *
+ * @author Alibaba Cloud
+ */
+public class QueryImage {
+
+    private byte[] imageData;
+    /**
+     * Region of the original image that has been kept.
+     */
+    private ImageRegion region;
+    /**
+     * Ratio between the size of {@link #imageData} and the size of the region.
+     */
+    private double scale;
+
+    public QueryImage() {
+    }
+
+    public QueryImage(byte[] imageData, ImageRegion region, double scale) {
+        this.imageData = imageData;
+        this.region = region;
+        this.scale = scale;
+    }
+
+    /**
+     * Convert a region located on {@link #getImageData()} into the coordinates of the original image.
+     */
+    public ImageRegion toOriginalRegion(ImageRegion queryImageRegion) {
+        return new ImageRegion(
+                region.getX() + (int) Math.round(queryImageRegion.getX() / scale),
+                region.getY() + (int) Math.round(queryImageRegion.getY() / scale),
+                (int) Math.round(queryImageRegion.getWidth() / scale),
+                (int) Math.round(queryImageRegion.getHeight() / scale));
+    }
+
+    public byte[] getImageData() {
+        return imageData;
+    }
+
+    public void setImageData(byte[] imageData) {
+        this.imageData = imageData;
+    }
+
+    public ImageRegion getRegion() {
+        return region;
+    }
+
+    public void setRegion(ImageRegion region) {
+        this.region = region;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryImage{" +
+                "imageDataLength=" + (imageData == null ? 0 : imageData.length) +
+                ", region=" + region +
+                ", scale=" + scale +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.model.dto;
+
+/**
+ * Image reduced to the maximum resolution used by Image Search, kept to crop several regions without decoding the
+ * original image again.
+ * Note: the reduced image is kept encoded in JPEG, that is many times smaller than its decoded pixels.
+ *
+ * @author Alibaba Cloud
+ */
+public class ReducedImage {
+
+    /**
+     * JPEG image, with the EXIF orientation of the original image already applied. Must not be modified.
+     */
+    private byte[] imageData;
+    private int width;
+    private int height;
+    /**
+     * Ratio between the size of {@link #imageData} and the size of the original image.
+     */
+    private double scale;
+
+    public ReducedImage() {
+    }
+
+    public ReducedImage(byte[] imageData, int width, int height, double scale) {
+        this.imageData = imageData;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+    }
+
+    public byte[] getImageData() {
+        return imageData;
+    }
+
+    public void setImageData(byte[] imageData) {
+        this.imageData = imageData;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    @Override
+    public String toString() {
+        return "ReducedImage{" +
+                "width=" + width +
+                ", height=" + height +
+                ", size=" + (imageData == null ? 0 : imageData.length) +
+                ", scale=" + scale +
+                '}';
+    }
+}
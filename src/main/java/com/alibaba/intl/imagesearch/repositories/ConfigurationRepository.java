@@ -16,6 +16,9 @@ package com.alibaba.intl.imagesearch.repositories;
 
 import com.alibaba.intl.imagesearch.model.Configuration;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * {@link Configuration} repository.
@@ -23,4 +26,24 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * @author Alibaba Cloud
  */
 public interface ConfigurationRepository extends JpaRepository<Configuration, String> {
+
+    /**
+     * Cheap alternative to {@link #findById(Object)} that only reads the configuration version.
+     *
+     * @return Version of the configuration (0 if it has never been versioned), or null if it doesn't exist.
+     */
+    @Query("select coalesce(c.version, 0) from Configuration c where c.id = :id")
+    Long findVersionById(@Param("id") String id);
+
+    /**
+     * Take the next version of the configuration, unless another application instance has saved it since its version
+     * has been read. The configuration row stays locked until the end of the current transaction.
+     *
+     * @param expectedVersion Version read before saving (as returned by {@link #findVersionById(String)}).
+     * @return 1 if the version has been incremented, 0 if it is not the expected one anymore.
+     */
+    @Modifying
+    @Query("update Configuration c set c.version = coalesce(c.version, 0L) + 1 " +
+            "where c.id = :id and coalesce(c.version, 0L) = :expectedVersion")
+    int incrementVersion(@Param("id") String id, @Param("expectedVersion") long expectedVersion);
 }
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.repositories;
+
+import com.alibaba.intl.imagesearch.model.ObjectSyncTask;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * {@link ObjectSyncTask} repository.
+ *
+ * @author Alibaba Cloud
+ */
+public interface ObjectSyncTaskRepository extends JpaRepository<ObjectSyncTask, Long> {
+
+    /**
+     * Find the tasks that can be processed now, in the order they have been created.
+     *
+     * @param now      Current time in milliseconds since the epoch.
+     * @param pageable Maximum number of tasks to return.
+     * @return Tasks sorted by ID.
+     */
+    @Query("select t from ObjectSyncTask t where t.nextAttemptTime <= :now order by t.id")
+    List<ObjectSyncTask> findDueTasks(@Param("now") long now, Pageable pageable);
+
+    /**
+     * @return true if a change of the given object has not been applied to the Image Search API yet.
+     */
+    boolean existsByObjectUuid(String objectUuid);
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.repositories;
+
+import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Default implementation of {@link RecognizableObjectBatchRepository}.
+ *
+ * @author Alibaba Cloud
+ */
+public class RecognizableObjectBatchRepositoryImpl implements RecognizableObjectBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RecognizableObjectBatchRepositoryImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void insertAll(List<RecognizableObject> objects) {
+        // Note: the enums are persisted with their ordinal (default JPA enum mapping)
+        jdbcTemplate.batchUpdate(
+                "insert into RECOGNIZABLE_OBJECT (UUID, NAME, CATEGORY, IMAGE_TYPE, IMAGE_DATA, THUMBNAIL_DATA, " +
+                        "IMAGE_HASH, THUMBNAIL_HASH, SYNC_STATUS) values (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                objects, objects.size(),
+                (statement, object) -> {
+                    statement.setString(1, object.getUuid());
+                    statement.setString(2, object.getName());
+                    setOrdinal(statement, 3, object.getCategory());
+                    setOrdinal(statement, 4, object.getImageType());
+                    statement.setBytes(5, object.getImageData());
+                    statement.setBytes(6, object.getThumbnailData());
+                    statement.setString(7, object.getImageHash());
+                    statement.setString(8, object.getThumbnailHash());
+                    setOrdinal(statement, 9, object.getSyncStatus());
+                });
+    }
+
+    private static void setOrdinal(PreparedStatement statement, int index, Enum<?> value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, value.ordinal());
+        }
+    }
+}
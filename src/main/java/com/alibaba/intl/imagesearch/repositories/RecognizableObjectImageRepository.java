@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.repositories;
+
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
+import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
+
+/**
+ * Read the images of {@link RecognizableObject}s without loading the entities.
+ *
+ * @author Alibaba Cloud
+ */
+public interface RecognizableObjectImageRepository {
+
+    /**
+     * Find the image of an object. Only the image metadata are read immediately, the image data is read from the
+     * database when the returned stream source is opened.
+     * Note: the image hash is computed and stored if it is missing (objects created before hashes were introduced).
+     *
+     * @param uuid    Object UUID.
+     * @param variant Image to find.
+     * @return Found image, or null if the object or its image doesn't exist.
+     */
+    ObjectImage findImage(String uuid, ObjectImageVariant variant);
+}
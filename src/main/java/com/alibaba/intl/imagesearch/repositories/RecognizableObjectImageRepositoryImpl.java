@@ -0,0 +1,205 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.repositories;
+
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.DigestUtils;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Default implementation of {@link RecognizableObjectImageRepository}.
+ * <p>
+ * The image columns are read with plain JDBC: the metadata query only computes the data length. Images up to
+ * "objectImage.streamingThreshold" bytes are then read in memory, so that the pooled connection is released before
+ * they are sent to the client. Only larger images are streamed from a dedicated connection that stays open until the
+ * returned stream is closed.
+ *
+ * @author Alibaba Cloud
+ */
+public class RecognizableObjectImageRepositoryImpl implements RecognizableObjectImageRepository {
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final long streamingThreshold;
+
+    public RecognizableObjectImageRepositoryImpl(DataSource dataSource,
+                                                 @Value("${objectImage.streamingThreshold}") long streamingThreshold) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    @Override
+    public ObjectImage findImage(String uuid, ObjectImageVariant variant) {
+        String column = getDataColumn(variant);
+        String hashColumn = getHashColumn(variant);
+
+        // Note: the image type is persisted with its ordinal (default JPA enum mapping)
+        List<ObjectImage> images = jdbcTemplate.query(
+                "select IMAGE_TYPE, LENGTH(" + column + "), " + hashColumn + " " +
+                        "from RECOGNIZABLE_OBJECT where UUID = ? and " + column + " is not null",
+                (rs, rowNum) -> {
+                    int imageTypeOrdinal = rs.getInt(1);
+                    ObjectImageType imageType = rs.wasNull() ? null : ObjectImageType.values()[imageTypeOrdinal];
+                    long contentLength = rs.getLong(2);
+                    InputStreamSource data = contentLength > streamingThreshold
+                            ? () -> openImageData(uuid, column)
+                            : () -> readImageData(uuid, column);
+                    return new ObjectImage(imageType, contentLength, rs.getString(3), data);
+                },
+                uuid);
+        if (images.isEmpty()) {
+            return null;
+        }
+
+        ObjectImage image = images.get(0);
+        if (image.getHash() == null) {
+            image.setHash(computeAndStoreHash(uuid, column, hashColumn));
+        }
+        return image;
+    }
+
+    private String computeAndStoreHash(String uuid, String column, String hashColumn) {
+        String hash = jdbcTemplate.query(
+                "select " + column + " from RECOGNIZABLE_OBJECT where UUID = ?",
+                rs -> {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    try (InputStream data = rs.getBinaryStream(1)) {
+                        return data == null ? null : DigestUtils.md5DigestAsHex(data);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to hash the image data of the object " + uuid + ".", e);
+                    }
+                },
+                uuid);
+        if (hash != null) {
+            jdbcTemplate.update(
+                    "update RECOGNIZABLE_OBJECT set " + hashColumn + " = ? where UUID = ? and " + hashColumn + " is null",
+                    hash, uuid);
+        }
+        return hash;
+    }
+
+    private InputStream readImageData(String uuid, String column) throws IOException {
+        List<byte[]> data;
+        try {
+            data = jdbcTemplate.query(
+                    "select " + column + " from RECOGNIZABLE_OBJECT where UUID = ?",
+                    (rs, rowNum) -> rs.getBytes(1),
+                    uuid);
+        } catch (DataAccessException e) {
+            throw new IOException("Unable to read the image data of the object " + uuid + ": " + e.getMessage(), e);
+        }
+        if (data.isEmpty() || data.get(0) == null) {
+            throw new IOException("The image data of the object " + uuid + " doesn't exist anymore.");
+        }
+        return new ByteArrayInputStream(data.get(0));
+    }
+
+    private InputStream openImageData(String uuid, String column) throws IOException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = dataSource.getConnection();
+            statement = connection.prepareStatement("select " + column + " from RECOGNIZABLE_OBJECT where UUID = ?");
+            statement.setString(1, uuid);
+            resultSet = statement.executeQuery();
+            InputStream data = resultSet.next() ? resultSet.getBinaryStream(1) : null;
+            if (data == null) {
+                throw new IOException("The image data of the object " + uuid + " doesn't exist anymore.");
+            }
+            return new JdbcResourceInputStream(data, connection, statement, resultSet);
+        } catch (SQLException e) {
+            closeQuietly(connection, statement, resultSet);
+            throw new IOException("Unable to read the image data of the object " + uuid + ": " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(connection, statement, resultSet);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        JdbcUtils.closeConnection(connection);
+    }
+
+    private static String getHashColumn(ObjectImageVariant variant) {
+        switch (variant) {
+            case IMAGE:
+                return "IMAGE_HASH";
+            case THUMBNAIL:
+                return "THUMBNAIL_HASH";
+            default:
+                throw new IllegalArgumentException("Unsupported image variant: " + variant);
+        }
+    }
+
+    private static String getDataColumn(ObjectImageVariant variant) {
+        switch (variant) {
+            case IMAGE:
+                return "IMAGE_DATA";
+            case THUMBNAIL:
+                return "THUMBNAIL_DATA";
+            default:
+                throw new IllegalArgumentException("Unsupported image variant: " + variant);
+        }
+    }
+
+    /**
+     * Stream that releases the JDBC resources it reads from when it is closed.
+     */
+    private static final class JdbcResourceInputStream extends FilterInputStream {
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+
+        JdbcResourceInputStream(InputStream in, Connection connection, PreparedStatement statement, ResultSet resultSet) {
+            super(in);
+            this.connection = connection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                closeQuietly(connection, statement, resultSet);
+            }
+        }
+    }
+}
@@ -14,13 +14,64 @@
 
 package com.alibaba.intl.imagesearch.repositories;
 
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
 import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * {@link RecognizableObject} repository.
  *
  * @author Alibaba Cloud
  */
-public interface RecognizableObjectRepository extends JpaRepository<RecognizableObject, String> {
+public interface RecognizableObjectRepository extends JpaRepository<RecognizableObject, String>,
+        RecognizableObjectImageRepository, RecognizableObjectBatchRepository {
+
+    /**
+     * Find all objects without reading their image and thumbnail data.
+     *
+     * @return Objects with null {@link RecognizableObject#getImageData()} and {@link RecognizableObject#getThumbnailData()}.
+     */
+    @Query("select new com.alibaba.intl.imagesearch.model.RecognizableObject(o.uuid, o.name, o.category, o.imageType, o.syncStatus) " +
+            "from RecognizableObject o")
+    List<RecognizableObject> findAllWithoutImageData();
+
+    /**
+     * Find the objects with the given UUIDs without reading their image and thumbnail data.
+     *
+     * @param uuids Non-empty collection of UUIDs.
+     * @return Objects with null {@link RecognizableObject#getImageData()} and {@link RecognizableObject#getThumbnailData()}.
+     */
+    @Query("select new com.alibaba.intl.imagesearch.model.RecognizableObject(o.uuid, o.name, o.category, o.imageType, o.syncStatus) " +
+            "from RecognizableObject o where o.uuid in :uuids")
+    List<RecognizableObject> findAllWithoutImageDataByUuidIn(@Param("uuids") Collection<String> uuids);
+
+    /**
+     * Find the objects that follow the given UUID in alpha-numeric order, without reading their image and thumbnail
+     * data. Used to walk the whole catalog by chunks without the cost of an offset.
+     *
+     * @param afterUuid Exclusive lower bound, empty string to start from the first object.
+     * @param pageable  Maximum number of objects to return (the page number must be 0).
+     * @return Objects sorted by UUID.
+     */
+    @Query("select new com.alibaba.intl.imagesearch.model.RecognizableObject(o.uuid, o.name, o.category, o.imageType, o.syncStatus) " +
+            "from RecognizableObject o where o.uuid > :afterUuid order by o.uuid")
+    List<RecognizableObject> findChunkWithoutImageData(@Param("afterUuid") String afterUuid, Pageable pageable);
+
+    /**
+     * Update the synchronization status of an object without loading it.
+     *
+     * @return Number of updated objects (0 if the object doesn't exist anymore).
+     */
+    @Modifying
+    @Transactional
+    @Query("update RecognizableObject o set o.syncStatus = :syncStatus where o.uuid = :uuid")
+    int updateSyncStatus(@Param("uuid") String uuid, @Param("syncStatus") ObjectSyncStatus syncStatus);
 }
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services;
+
+import com.alibaba.intl.imagesearch.model.dto.BulkIngestStatus;
+
+import java.io.InputStream;
+
+/**
+ * Create many objects from a ZIP archive.
+ * <p>
+ * The archive must start with a manifest, "manifest.csv" (columns: uuid, name, category, with an optional header) or
+ * "manifest.json" (array of objects with the same attributes). Each following entry is the JPEG or PNG image of the
+ * object whose UUID is the entry file name without extension.
+ *
+ * @author Alibaba Cloud
+ */
+public interface BulkIngestService {
+
+    /**
+     * Read the archive and start to create its objects. The archive is read as a stream: its entries are handed to
+     * a bounded pipeline that validates, normalizes and saves them, and reading is paused while the pipeline is full.
+     * Note: the objects are registered in the Image Search API in background, like the ones created one by one.
+     *
+     * @param zipInputStream ZIP archive, not closed by this method.
+     * @return Status of the job when the whole archive has been read, the last items may still be processed.
+     */
+    BulkIngestStatus ingest(InputStream zipInputStream);
+
+    /**
+     * @return Status of a recent job started by this application instance, or null if it is unknown.
+     */
+    BulkIngestStatus findStatus(String jobId);
+}
@@ -31,8 +31,15 @@ public interface ConfigurationService {
 
     /**
      * Load the configuration.
+     * Note: the configuration is served from memory, callers are free to modify the returned copy.
      *
      * @return return null if there is no configuration yet
      */
     Configuration load();
+
+    /**
+     * Reload the configuration if its version in the database is different from the one in memory
+     * (e.g. when it has been saved by another application instance).
+     */
+    void refresh();
 }
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.QueryImage;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transform images on a dedicated bounded pool of threads.
+ * The images of search queries are transformed asynchronously, so that the request threads never wait for the pool.
+ *
+ * @author Alibaba Cloud
+ */
+public interface ImageProcessingService {
+
+    /**
+     * Create a thumbnail that fits in a square of "imageProcessing.thumbnailMaxSize" pixels, with the same aspect
+     * ratio as the image. The full resolution image is never decoded: it is subsampled while being read.
+     *
+     * @param imageData Image to reduce.
+     * @param imageType Type of the image and the thumbnail.
+     * @return Thumbnail data, or the image data if the image is already small enough.
+     * @throws IllegalArgumentException   if the image cannot be decoded.
+     * @throws UpstreamUnavailableException if too many images are already being processed.
+     */
+    byte[] createThumbnail(byte[] imageData, ObjectImageType imageType);
+
+    /**
+     * Prepare an image before it is registered and stored: reduce it to "imageProcessing.maxImageSize" pixels (the
+     * maximum resolution used by Image Search), apply its EXIF orientation and remove its metadata.
+     *
+     * @param imageData Uploaded image.
+     * @param imageType Type of the image.
+     * @return Re-encoded image, or the given image data if it is already normalized.
+     * @throws IllegalArgumentException   if the image cannot be decoded.
+     * @throws UpstreamUnavailableException if too many images are already being processed.
+     */
+    byte[] normalize(byte[] imageData, ObjectImageType imageType);
+
+    /**
+     * Prepare a search query image: keep only the given region and reduce it to "imageProcessing.maxImageSize"
+     * pixels. Only the region is decoded, with subsampling.
+     *
+     * @param imageData Uploaded image.
+     * @param region    Region where the object to search is located, clipped to the image bounds.
+     * @return Future JPEG image of the region, failed with an {@link IllegalArgumentException} if the image cannot be
+     * decoded or if the region is outside of the image, or with an {@link UpstreamUnavailableException} if too many
+     * images are already being processed.
+     */
+    CompletableFuture<QueryImage> cropAndReduceAsync(byte[] imageData, ImageRegion region);
+
+    /**
+     * Reduce an image to "imageProcessing.maxImageSize" pixels and apply its EXIF orientation, so that several
+     * regions can be cropped from it without decoding the original image again. The reduced image is encoded in JPEG,
+     * so that it can be kept cheaply.
+     *
+     * @param imageData Uploaded image.
+     * @return Future reduced image and its scale, failed with an {@link IllegalArgumentException} if the image cannot
+     * be decoded, or with an {@link UpstreamUnavailableException} if too many images are already being processed.
+     */
+    CompletableFuture<ReducedImage> reduceAsync(byte[] imageData);
+
+    /**
+     * Prepare a search query image from a reduced image: keep only the given region. Only the small reduced image is
+     * decoded, and nothing at all when the whole image is kept.
+     *
+     * @param image  Image returned by {@link #reduceAsync(byte[])}.
+     * @param region Region of the original image where the object to search is located, clipped to the image
+     *               bounds, or null to keep the whole image.
+     * @return Future JPEG image of the region, failed with an {@link IllegalArgumentException} if the region is
+     * outside of the image, or with an {@link UpstreamUnavailableException} if too many images are already being
+     * processed.
+     */
+    CompletableFuture<QueryImage> cropAsync(ReducedImage image, ImageRegion region);
+
+    /**
+     * Compute a perceptual hash (difference hash) of an image: images that look the same, even if they have been
+     * resized or re-encoded, usually have the same hash.
+     *
+     * @return Future 64-bit hash, failed with an {@link IllegalArgumentException} if the image cannot be decoded, or
+     * with an {@link UpstreamUnavailableException} if too many images are already being processed.
+     */
+    CompletableFuture<Long> computePerceptualHashAsync(byte[] imageData);
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services;
+
+/**
+ * Operations sent to the Image Search API.
+ *
+ * @author Alibaba Cloud
+ */
+public enum ImageSearchOperation {
+    /**
+     * Search items by similar image.
+     */
+    SEARCH,
+
+    /**
+     * Add an item.
+     */
+    REGISTER,
+
+    /**
+     * Delete an item.
+     */
+    DELETE,
+
+    /**
+     * Fake search request that checks a configuration.
+     */
+    CHECK,
+
+    /**
+     * Background search that checks an item is registered, see the reconciliation between the catalog and Image
+     * Search. It has its own limit and circuit breaker, so that it cannot compete with nor fail the interactive
+     * searches.
+     */
+    RECONCILE
+}
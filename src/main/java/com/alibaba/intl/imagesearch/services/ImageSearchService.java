@@ -17,8 +17,14 @@ package com.alibaba.intl.imagesearch.services;
 import com.alibaba.intl.imagesearch.exceptions.InvalidConfigurationException;
 import com.alibaba.intl.imagesearch.model.Configuration;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus;
 import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
 import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Provide services from the image search API.
@@ -44,13 +50,40 @@ public interface ImageSearchService {
     void unregister(String uuid);
 
     /**
-     * Find all images similar to the given one.
+     * Find all images similar to the given one, without blocking the caller during the calls to the API.
      *
      * @param imageData    Image to match with registered ones in the search instance.
      * @param objectRegion object region to search.
-     * @return Found images UUIDs and raw response.
+     * @return Future found images UUIDs and raw response.
+     */
+    CompletableFuture<ImageSearchResponse> findAllBySimilarImageAsync(byte[] imageData, ImageRegion objectRegion);
+
+    /**
+     * Find all images similar to an image already decoded and reduced (e.g. kept in a query session), without decoding
+     * the original image again nor blocking the caller during the calls to the API.
+     *
+     * @param image        Reduced image to match with registered ones in the search instance.
+     * @param objectRegion Object region to search, in the coordinates of the original image.
+     * @return Future found images UUIDs and raw response, with a region in the coordinates of the original image,
+     * failed with an {@link IllegalArgumentException} if the region is outside of the image.
+     */
+    CompletableFuture<ImageSearchResponse> findAllBySimilarImageAsync(ReducedImage image, ImageRegion objectRegion);
+
+    /**
+     * Search the images similar to the given one in the instance that holds the given item, without cache nor
+     * hedging. Used to check that an item is registered: searching with its own image must find it. These searches
+     * have their own limit and circuit breaker ({@link ImageSearchOperation#RECONCILE}).
+     *
+     * @param imageData Image of the item.
+     * @param uuid      Unique identifier of the item.
+     * @return Found images.
+     */
+    List<ImageSearchAuction> findAllInInstanceOf(byte[] imageData, String uuid);
+
+    /**
+     * @return Status of the circuit breakers that protect the calls to the image search API.
      */
-    ImageSearchResponse findAllBySimilarImage(byte[] imageData, ImageRegion objectRegion);
+    List<CircuitBreakerStatus> getCircuitBreakerStatuses();
 
     /**
      * Check the image search configuration is correct by making a fake search request.
@@ -14,11 +14,15 @@
 
 package com.alibaba.intl.imagesearch.services;
 
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
 import com.alibaba.intl.imagesearch.model.RecognizableObject;
 import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
 import com.alibaba.intl.imagesearch.model.dto.ObjectSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Provide methods to find and manage {@link RecognizableObject}s.
@@ -29,12 +33,22 @@ public interface RecognizableObjectService {
 
     /**
      * Create an object in the database.
-     * Note: the image is automatically resized
+     * Note: the image is automatically resized, then registered in the Image Search API in background
+     * (see {@link RecognizableObject#getSyncStatus()}).
      *
      * @return Created object.
      */
     RecognizableObject create(RecognizableObject object);
 
+    /**
+     * Create several objects in the database at once: either all the objects are created or none of them.
+     * Note: the images must already be normalized and the thumbnails created, the objects are registered in the
+     * Image Search API in background.
+     *
+     * @param objects Objects to create.
+     */
+    void createAll(List<RecognizableObject> objects);
+
     /**
      * Update an object in the database.
      * Note: the id and image file cannot be modified.
@@ -45,6 +59,7 @@ public interface RecognizableObjectService {
 
     /**
      * Delete the object with the given uuid.
+     * Note: the image is unregistered from the Image Search API in background.
      *
      * @return true if the object has been deleted successfully, false if the object doesn't exist.
      */
@@ -55,17 +70,74 @@ public interface RecognizableObjectService {
      */
     RecognizableObject findByUuid(String uuid);
 
+    /**
+     * Find the image or thumbnail of an object without loading the object itself.
+     * Note: the image data is only read when the returned stream source is opened.
+     *
+     * @return Found image, or null if the object or its image doesn't exist.
+     */
+    ObjectImage findImage(String uuid, ObjectImageVariant variant);
+
     /**
      * Find all objects sorted in alpha-numeric order.
+     * Note: the image and thumbnail data are not loaded.
      *
      * @return All registered objects.
      */
     List<RecognizableObject> findAll();
 
     /**
-     * Find all objects that match the given image.
+     * Find all objects that match the given image, without blocking the caller during the search nor the database
+     * queries.
+     * Note: the image and thumbnail data of the found objects are not loaded.
+     *
+     * @return Future found objects with their score.
+     */
+    CompletableFuture<ObjectSearchResponse> findAllBySimilarImageAsync(byte[] imageData, ImageRegion objectRegion);
+
+    /**
+     * Find a page of the objects that match the given image, and keep all the results under a cursor so that the
+     * other pages can be read with {@link #findAllByCursorAsync(String, int, int)}.
+     * Note: only the objects of the page are loaded from the database, without their image and thumbnail data.
+     *
+     * @param image        Query image, reduced by the {@link ImageProcessingService}.
+     * @param objectRegion Object region to search, in the coordinates of the original image.
+     * @param start        Position of the first result of the page.
+     * @param num          Maximum number of results in the page.
+     * @return Future page of found objects with their score, and the cursor of the results.
+     */
+    CompletableFuture<ObjectSearchResponse> findAllBySimilarImageAsync(ReducedImage image, ImageRegion objectRegion, int start, int num);
+
+    /**
+     * Read a page of the results kept under the given cursor, without searching again.
+     * Note: the raw response of the Image Search API is only returned with the first page.
+     *
+     * @param cursor Cursor returned with the first page.
+     * @param start  Position of the first result of the page.
+     * @param num    Maximum number of results in the page.
+     * @return Future page of found objects with their score, or null if the results expired.
+     */
+    CompletableFuture<ObjectSearchResponse> findAllByCursorAsync(String cursor, int start, int num);
+
+    /**
+     * Keep the given query image, so that it can be searched again (e.g. with another region) without being
+     * uploaded again.
+     *
+     * @param image Query image, reduced by the {@link ImageProcessingService}.
+     * @return Token of the query session.
+     */
+    String openQuerySession(ReducedImage image);
+
+    /**
+     * Find a page of the objects that match the image of the given query session, like
+     * {@link #findAllBySimilarImageAsync(ReducedImage, ImageRegion, int, int)}.
      *
-     * @return Found objects with their score.
+     * @param querySession Query session returned with a previous search.
+     * @param objectRegion Object region to search, in the coordinates of the original image.
+     * @param start        Position of the first result of the page.
+     * @param num          Maximum number of results in the page.
+     * @return Future page of found objects with their score, and the cursor of the results, or null if the session
+     * expired.
      */
-    ObjectSearchResponse findAllBySimilarImage(byte[] imageData, ImageRegion objectRegion);
+    CompletableFuture<ObjectSearchResponse> findAllByQuerySessionAsync(String querySession, ImageRegion objectRegion, int start, int num);
 }
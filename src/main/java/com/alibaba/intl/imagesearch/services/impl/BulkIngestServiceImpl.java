@@ -0,0 +1,525 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.ObjectCategory;
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import com.alibaba.intl.imagesearch.model.dto.BulkIngestStatus;
+import com.alibaba.intl.imagesearch.services.BulkIngestService;
+import com.alibaba.intl.imagesearch.services.ImageProcessingService;
+import com.alibaba.intl.imagesearch.services.RecognizableObjectService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Default implementation of {@link BulkIngestService}.
+ * <p>
+ * The archive is read by the calling thread, one entry at a time. Each image is handed to a bounded pool of threads
+ * that validates it, normalizes it and creates its thumbnail, then the prepared objects are inserted by batches.
+ * A semaphore limits the number of images read but not processed yet, so the memory used by a job doesn't depend on
+ * the archive size. Job statuses are kept in memory, only the most recent ones are kept.
+ *
+ * @author Alibaba Cloud
+ */
+@Service
+public class BulkIngestServiceImpl implements BulkIngestService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkIngestServiceImpl.class);
+    private static final Pattern UUID_PATTERN = Pattern.compile(RecognizableObject.UUID_REGEX);
+    private static final Pattern NAME_PATTERN = Pattern.compile(RecognizableObject.NAME_REGEX);
+    private static final String CSV_MANIFEST_NAME = "manifest.csv";
+    private static final String JSON_MANIFEST_NAME = "manifest.json";
+
+    @Value("${bulkIngest.poolSize}")
+    private int poolSize;
+
+    @Value("${bulkIngest.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${bulkIngest.batchSize}")
+    private int batchSize;
+
+    @Value("${bulkIngest.maxEntrySize}")
+    private int maxEntrySize;
+
+    @Value("${bulkIngest.maxItemErrors}")
+    private int maxItemErrors;
+
+    @Value("${bulkIngest.jobHistorySize}")
+    private int jobHistorySize;
+
+    private final RecognizableObjectService recognizableObjectService;
+    private final ImageProcessingService imageProcessingService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Job> jobById = new LinkedHashMap<String, Job>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+            return size() > jobHistorySize;
+        }
+    };
+    private final ReentrantLock jobByIdLock = new ReentrantLock(); // Requests may run on virtual threads, which synchronized would pin
+    private ExecutorService executorService;
+    private Semaphore pendingImagePermits;
+    private Counter succeededItemCounter;
+    private Counter failedItemCounter;
+
+    public BulkIngestServiceImpl(RecognizableObjectService recognizableObjectService,
+                                 ImageProcessingService imageProcessingService,
+                                 MeterRegistry meterRegistry) {
+        this.recognizableObjectService = recognizableObjectService;
+        this.imageProcessingService = imageProcessingService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bulk-ingest-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executorService = ExecutorServiceMetrics.monitor(meterRegistry, threadPoolExecutor, "bulkIngestExecutor");
+        pendingImagePermits = new Semaphore(poolSize + queueCapacity);
+        succeededItemCounter = Counter.builder("bulkIngest.items")
+                .description("Items of the bulk ingestion jobs")
+                .tag("result", "succeeded")
+                .register(meterRegistry);
+        failedItemCounter = Counter.builder("bulkIngest.items")
+                .description("Items of the bulk ingestion jobs")
+                .tag("result", "failed")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public BulkIngestStatus ingest(InputStream zipInputStream) {
+        Job job = new Job(UUID.randomUUID().toString());
+        jobByIdLock.lock();
+        try {
+            jobById.put(job.jobId, job);
+        } finally {
+            jobByIdLock.unlock();
+        }
+        LOGGER.info("Start the bulk ingestion job {}.", job.jobId);
+
+        try {
+            ZipInputStream zip = new ZipInputStream(new CloseShieldInputStream(zipInputStream));
+            Map<String, Map<String, String>> itemByUuid = readManifest(zip, job);
+
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!isIgnored(entry)) {
+                    readImage(zip, entry, itemByUuid, job);
+                }
+            }
+
+            // Objects without image
+            itemByUuid.forEach((uuid, item) -> job.onItemFailed(null, uuid, "No image found in the archive."));
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Unable to read the archive of the bulk ingestion job {}: {}", job.jobId, e.getMessage());
+            job.error = "Unable to read the archive: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.error = "The ingestion has been interrupted.";
+        } finally {
+            job.onReadingCompleted();
+        }
+
+        return job.toStatus();
+    }
+
+    @Override
+    public BulkIngestStatus findStatus(String jobId) {
+        Job job;
+        jobByIdLock.lock();
+        try {
+            job = jobById.get(jobId);
+        } finally {
+            jobByIdLock.unlock();
+        }
+        return job == null ? null : job.toStatus();
+    }
+
+    /**
+     * Read the first entry of the archive.
+     *
+     * @return Manifest items by UUID, valid or not.
+     */
+    private Map<String, Map<String, String>> readManifest(ZipInputStream zip, Job job) throws IOException {
+        ZipEntry entry = zip.getNextEntry();
+        while (entry != null && isIgnored(entry)) {
+            entry = zip.getNextEntry();
+        }
+        String entryName = entry == null ? null : getFileName(entry.getName()).toLowerCase();
+        List<Map<String, String>> items;
+        if (CSV_MANIFEST_NAME.equals(entryName)) {
+            items = readCsvManifest(zip);
+        } else if (JSON_MANIFEST_NAME.equals(entryName)) {
+            items = objectMapper.readValue(new CloseShieldInputStream(zip), new TypeReference<List<Map<String, String>>>() {
+            });
+        } else {
+            throw new IllegalArgumentException(
+                    "The first entry must be a " + CSV_MANIFEST_NAME + " or " + JSON_MANIFEST_NAME + " file.");
+        }
+
+        Map<String, Map<String, String>> itemByUuid = new HashMap<>();
+        for (Map<String, String> item : items) {
+            job.totalItems.incrementAndGet();
+            String uuid = item.get("uuid");
+            if (StringUtils.isBlank(uuid)) {
+                job.onItemFailed(null, null, "The manifest contains an item without uuid.");
+            } else if (itemByUuid.putIfAbsent(uuid, item) != null) {
+                job.onItemFailed(null, uuid, "The uuid is duplicated in the manifest.");
+            }
+        }
+        return itemByUuid;
+    }
+
+    private static List<Map<String, String>> readCsvManifest(ZipInputStream zip) throws IOException {
+        // Note: the names cannot contain commas or quotes, so the lines are simply split
+        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+        List<Map<String, String>> items = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (StringUtils.isBlank(line) || (items.isEmpty() && line.trim().toLowerCase().startsWith("uuid,"))) {
+                continue;
+            }
+            String[] columns = line.split(",", -1);
+            Map<String, String> item = new HashMap<>();
+            item.put("uuid", columns[0].trim());
+            item.put("name", columns.length > 1 ? columns[1].trim() : null);
+            item.put("category", columns.length > 2 ? columns[2].trim() : null);
+            items.add(item);
+        }
+        return items;
+    }
+
+    private void readImage(ZipInputStream zip, ZipEntry entry, Map<String, Map<String, String>> itemByUuid, Job job)
+            throws IOException, InterruptedException {
+        String fileName = getFileName(entry.getName());
+        int extensionIndex = fileName.lastIndexOf('.');
+        String uuid = extensionIndex == -1 ? fileName : fileName.substring(0, extensionIndex);
+        Map<String, String> item = itemByUuid.remove(uuid);
+        if (item == null) {
+            job.totalItems.incrementAndGet();
+            job.onItemFailed(entry.getName(), uuid, "The image doesn't match any uuid of the manifest, or the uuid has already an image.");
+            return;
+        }
+
+        ObjectImageType imageType = findImageType(extensionIndex == -1 ? "" : fileName.substring(extensionIndex + 1));
+        if (imageType == null) {
+            job.onItemFailed(entry.getName(), uuid, "Unsupported file type, the supported extensions are: jpg, jpeg, png.");
+            return;
+        }
+        byte[] imageData = readEntry(zip);
+        if (imageData == null) {
+            job.onItemFailed(entry.getName(), uuid, "The image is larger than " + maxEntrySize / 1024 + "kB.");
+            return;
+        }
+
+        // Wait for the pipeline to have room for the image
+        pendingImagePermits.acquire();
+        job.onItemSubmitted();
+        try {
+            executorService.execute(() -> processImage(entry.getName(), item, imageType, imageData, job));
+        } catch (RejectedExecutionException e) {
+            pendingImagePermits.release();
+            job.onItemFailed(entry.getName(), uuid, "The application is shutting down.");
+            job.onItemProcessed();
+        }
+    }
+
+    /**
+     * @return Entry data, or null if it is larger than the limit.
+     */
+    private byte[] readEntry(ZipInputStream zip) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = zip.read(buffer)) != -1) {
+            if (outputStream.size() + length > maxEntrySize) {
+                return null; // The rest of the entry is skipped by the next call to getNextEntry()
+            }
+            outputStream.write(buffer, 0, length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private void processImage(String entryName, Map<String, String> item, ObjectImageType imageType, byte[] imageData, Job job) {
+        String uuid = item.get("uuid");
+        List<PreparedItem> batch = null;
+        try {
+            RecognizableObject object = new RecognizableObject(
+                    uuid, item.get("name"), parseCategory(item.get("category")), imageType);
+            validate(object);
+            object.setImageData(imageProcessingService.normalize(imageData, imageType));
+            object.setThumbnailData(imageProcessingService.createThumbnail(object.getImageData(), imageType));
+            batch = job.onItemPrepared(new PreparedItem(entryName, object));
+        } catch (RuntimeException e) {
+            job.onItemFailed(entryName, uuid, e.getMessage());
+        } finally {
+            pendingImagePermits.release();
+        }
+
+        try {
+            if (batch != null) {
+                insert(batch, job);
+            }
+        } finally {
+            job.onItemProcessed();
+        }
+    }
+
+    private void insert(List<PreparedItem> batch, Job job) {
+        List<RecognizableObject> objects = new ArrayList<>(batch.size());
+        batch.forEach(preparedItem -> objects.add(preparedItem.object));
+        try {
+            recognizableObjectService.createAll(objects);
+            batch.forEach(preparedItem -> job.onItemSucceeded());
+        } catch (RuntimeException e) {
+            // Insert the objects one by one to find the failing ones (for example an existing UUID)
+            LOGGER.debug("Unable to insert a batch of objects, insert them one by one: {}", e.getMessage());
+            for (PreparedItem preparedItem : batch) {
+                try {
+                    recognizableObjectService.createAll(Collections.singletonList(preparedItem.object));
+                    job.onItemSucceeded();
+                } catch (RuntimeException itemException) {
+                    job.onItemFailed(preparedItem.entryName, preparedItem.object.getUuid(),
+                            "Unable to save the object: " + itemException.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void validate(RecognizableObject object) {
+        if (!UUID_PATTERN.matcher(object.getUuid()).matches()) {
+            throw new IllegalArgumentException("The uuid is invalid. It must respect the regex /" + RecognizableObject.UUID_REGEX + "/.");
+        }
+        if (object.getName() == null || !NAME_PATTERN.matcher(object.getName()).matches()) {
+            throw new IllegalArgumentException("The name is invalid. It must respect the regex /" + RecognizableObject.NAME_REGEX + "/.");
+        }
+    }
+
+    private static ObjectCategory parseCategory(String category) {
+        try {
+            return ObjectCategory.valueOf(StringUtils.defaultString(category).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The category '" + category + "' is invalid.", e);
+        }
+    }
+
+    private static ObjectImageType findImageType(String extension) {
+        switch (extension.toLowerCase()) {
+            case "jpg":
+            case "jpeg":
+                return ObjectImageType.JPEG;
+            case "png":
+                return ObjectImageType.PNG;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true for directories and files added by archivers (for example "__MACOSX/" or ".DS_Store").
+     */
+    private static boolean isIgnored(ZipEntry entry) {
+        return entry.isDirectory() || entry.getName().startsWith("__MACOSX/") || getFileName(entry.getName()).startsWith(".");
+    }
+
+    private static String getFileName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Image ready to be inserted.
+     */
+    private static final class PreparedItem {
+        private final String entryName;
+        private final RecognizableObject object;
+
+        PreparedItem(String entryName, RecognizableObject object) {
+            this.entryName = entryName;
+            this.object = object;
+        }
+    }
+
+    /**
+     * State of a running or completed job.
+     */
+    private final class Job {
+        private final String jobId;
+        private final Date startTime = new Date();
+        private final AtomicInteger totalItems = new AtomicInteger();
+        private final AtomicInteger succeededItems = new AtomicInteger();
+        private final AtomicInteger failedItems = new AtomicInteger();
+        private final List<BulkIngestStatus.ItemError> itemErrors = new ArrayList<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private List<PreparedItem> batch = new ArrayList<>();
+        private int pendingItems;
+        private boolean readingCompleted;
+        private volatile String error;
+        private volatile Date endTime;
+
+        Job(String jobId) {
+            this.jobId = jobId;
+        }
+
+        void onItemSubmitted() {
+            lock.lock();
+            try {
+                pendingItems++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return Full batch to insert, or null if the batch is not full yet.
+         */
+        List<PreparedItem> onItemPrepared(PreparedItem preparedItem) {
+            lock.lock();
+            try {
+                batch.add(preparedItem);
+                return batch.size() >= batchSize ? swapBatch() : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onItemProcessed() {
+            List<PreparedItem> lastBatch;
+            lock.lock();
+            try {
+                pendingItems--;
+                if (pendingItems > 0 || !readingCompleted) {
+                    return;
+                }
+                lastBatch = swapBatch();
+            } finally {
+                lock.unlock();
+            }
+            complete(lastBatch);
+        }
+
+        void onReadingCompleted() {
+            List<PreparedItem> lastBatch;
+            lock.lock();
+            try {
+                readingCompleted = true;
+                if (pendingItems > 0) {
+                    return;
+                }
+                lastBatch = swapBatch();
+            } finally {
+                lock.unlock();
+            }
+            complete(lastBatch);
+        }
+
+        private List<PreparedItem> swapBatch() {
+            List<PreparedItem> fullBatch = batch;
+            batch = new ArrayList<>();
+            return fullBatch;
+        }
+
+        private void complete(List<PreparedItem> lastBatch) {
+            if (!lastBatch.isEmpty()) {
+                insert(lastBatch, this);
+            }
+            endTime = new Date();
+            LOGGER.info("The bulk ingestion job {} is completed: {} object(s) created, {} error(s).",
+                    jobId, succeededItems.get(), failedItems.get());
+        }
+
+        void onItemSucceeded() {
+            succeededItems.incrementAndGet();
+            succeededItemCounter.increment();
+        }
+
+        void onItemFailed(String entryName, String uuid, String message) {
+            failedItems.incrementAndGet();
+            failedItemCounter.increment();
+            lock.lock();
+            try {
+                if (itemErrors.size() < maxItemErrors) {
+                    itemErrors.add(new BulkIngestStatus.ItemError(entryName, uuid, message));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        BulkIngestStatus toStatus() {
+            Date completionTime = endTime;
+            BulkIngestStatus.State state;
+            if (completionTime == null) {
+                state = BulkIngestStatus.State.RUNNING;
+            } else {
+                state = error == null ? BulkIngestStatus.State.COMPLETED : BulkIngestStatus.State.FAILED;
+            }
+            List<BulkIngestStatus.ItemError> errors;
+            lock.lock();
+            try {
+                errors = new ArrayList<>(itemErrors);
+            } finally {
+                lock.unlock();
+            }
+            return new BulkIngestStatus(jobId, state, error, startTime, completionTime, totalItems.get(),
+                    succeededItems.get(), failedItems.get(), errors);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.ObjectSyncOperation;
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
+import com.alibaba.intl.imagesearch.model.ObjectSyncTask;
+import com.alibaba.intl.imagesearch.model.ReconciliationCheckpoint;
+import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.repositories.ObjectSyncTaskRepository;
+import com.alibaba.intl.imagesearch.repositories.ReconciliationCheckpointRepository;
+import com.alibaba.intl.imagesearch.repositories.RecognizableObjectRepository;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.alibaba.intl.imagesearch.services.ImageSearchService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Detect and repair the drift between the catalog and the Image Search instances, for example after a registration
+ * that has been abandoned.
+ * <p>
+ * The catalog is walked in UUID order by chunks, and the position is saved in a {@link ReconciliationCheckpoint}
+ * after each chunk. Objects whose registration failed or got lost are registered again. Registered objects are
+ * checked by searching their own image in their instance; if they are not found they are registered again, and the
+ * database items found in their place that are not in the catalog anymore are deleted. Repairs go through the
+ * {@link ObjectSyncWorker} outbox.
+ * <p>
+ * At most one object is checked every "reconciliation.checkInterval" milliseconds. The checks are
+ * {@link ImageSearchOperation#RECONCILE} searches, with their own small concurrency limit and circuit breaker: they
+ * neither take the slots of the interactive searches nor count in their failure rate. They are postponed when their
+ * limit or circuit breaker rejects them, and while the interactive searches use more than
+ * "reconciliation.maxSearchLoad" of the search concurrency limit, because both spend the QPS quota of the instances.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+@Profile("!dummy")
+public class CatalogReconciler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogReconciler.class);
+    private static final String CHECKPOINT_ID = "CATALOG";
+
+    @Value("${reconciliation.enabled}")
+    private boolean enabled;
+
+    @Value("${reconciliation.chunkSize}")
+    private int chunkSize;
+
+    @Value("${reconciliation.cycleInterval}")
+    private long cycleInterval;
+
+    @Value("${reconciliation.maxSearchLoad}")
+    private double maxSearchLoad;
+
+    private final ImageSearchService imageSearchService;
+    private final RecognizableObjectRepository recognizableObjectRepository;
+    private final ObjectSyncTaskRepository objectSyncTaskRepository;
+    private final ReconciliationCheckpointRepository reconciliationCheckpointRepository;
+    private final ImageSearchConcurrencyLimiter imageSearchConcurrencyLimiter;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+    private final Deque<RecognizableObject> chunk = new ArrayDeque<>();
+    private Counter consistentCounter;
+    private Counter reregisteredCounter;
+    private Counter orphanCounter;
+    private Counter postponedCounter;
+
+    public CatalogReconciler(ImageSearchService imageSearchService,
+                             RecognizableObjectRepository recognizableObjectRepository,
+                             ObjectSyncTaskRepository objectSyncTaskRepository,
+                             ReconciliationCheckpointRepository reconciliationCheckpointRepository,
+                             ImageSearchConcurrencyLimiter imageSearchConcurrencyLimiter,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry) {
+        this.imageSearchService = imageSearchService;
+        this.recognizableObjectRepository = recognizableObjectRepository;
+        this.objectSyncTaskRepository = objectSyncTaskRepository;
+        this.reconciliationCheckpointRepository = reconciliationCheckpointRepository;
+        this.imageSearchConcurrencyLimiter = imageSearchConcurrencyLimiter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        consistentCounter = createCounter("consistent");
+        reregisteredCounter = createCounter("reregistered");
+        orphanCounter = createCounter("orphanDeleted");
+        postponedCounter = createCounter("postponed");
+    }
+
+    private Counter createCounter(String result) {
+        return Counter.builder("reconciliation.objects")
+                .description("Objects checked by the reconciliation between the catalog and Image Search")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${reconciliation.checkInterval}")
+    public void scheduledReconciliation() {
+        if (enabled) {
+            reconcileNext();
+        }
+    }
+
+    /**
+     * Reconcile the next object of the catalog, unless the interactive searches need the Image Search quota or the
+     * Image Search API rejects the check. Does nothing if an object is already being reconciled.
+     *
+     * @return true if an object has been reconciled.
+     */
+    public boolean reconcileNext() {
+        if (!reconcileLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            return reconcileNextObject();
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    private boolean reconcileNextObject() {
+        if (chunk.isEmpty() && !loadNextChunk()) {
+            return false;
+        }
+        if (isSearchBusy()) {
+            postponedCounter.increment();
+            return false;
+        }
+
+        RecognizableObject object = chunk.peekFirst();
+        try {
+            reconcile(object);
+        } catch (UpstreamUnavailableException e) {
+            // The Image Search API is protecting itself, try the same object again later
+            postponedCounter.increment();
+            return false;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to reconcile the object {}, skip it: {}", object.getUuid(), e.getMessage());
+        }
+
+        chunk.pollFirst();
+        if (chunk.isEmpty()) {
+            ReconciliationCheckpoint checkpoint = loadCheckpoint();
+            checkpoint.setLastUuid(object.getUuid());
+            reconciliationCheckpointRepository.save(checkpoint);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if objects have been loaded, false if the current cycle is completed or the next one is not due.
+     */
+    private boolean loadNextChunk() {
+        ReconciliationCheckpoint checkpoint = loadCheckpoint();
+        if (checkpoint.getLastUuid() == null && checkpoint.getLastCycleEndTime() != null &&
+                System.currentTimeMillis() < checkpoint.getLastCycleEndTime() + cycleInterval) {
+            return false;
+        }
+
+        List<RecognizableObject> objects = recognizableObjectRepository.findChunkWithoutImageData(
+                checkpoint.getLastUuid() == null ? "" : checkpoint.getLastUuid(), PageRequest.of(0, chunkSize));
+        if (objects.isEmpty()) {
+            LOGGER.info("The reconciliation between the catalog and Image Search is completed.");
+            checkpoint.setLastUuid(null);
+            checkpoint.setLastCycleEndTime(System.currentTimeMillis());
+            reconciliationCheckpointRepository.save(checkpoint);
+            return false;
+        }
+
+        chunk.addAll(objects);
+        return true;
+    }
+
+    private ReconciliationCheckpoint loadCheckpoint() {
+        return reconciliationCheckpointRepository.findById(CHECKPOINT_ID).orElseGet(() -> new ReconciliationCheckpoint(CHECKPOINT_ID));
+    }
+
+    private boolean isSearchBusy() {
+        int limit = imageSearchConcurrencyLimiter.getLimit(ImageSearchOperation.SEARCH);
+        return limit > 0 && imageSearchConcurrencyLimiter.getInFlight(ImageSearchOperation.SEARCH) >= limit * maxSearchLoad;
+    }
+
+    private void reconcile(RecognizableObject object) {
+        String uuid = object.getUuid();
+        if (objectSyncTaskRepository.existsByObjectUuid(uuid)) {
+            return; // A change is being applied
+        }
+
+        if (object.getSyncStatus() == ObjectSyncStatus.FAILED || object.getSyncStatus() == ObjectSyncStatus.PENDING) {
+            LOGGER.info("The registration of the object {} is {}, register it again.", uuid, object.getSyncStatus());
+            enqueueRegistration(uuid);
+            return;
+        }
+
+        RecognizableObject fullObject = recognizableObjectRepository.findById(uuid).orElse(null);
+        if (fullObject == null) {
+            return; // Deleted in the meantime
+        }
+        List<ImageSearchAuction> auctions = imageSearchService.findAllInInstanceOf(fullObject.getImageData(), uuid);
+        if (auctions.stream().anyMatch(auction -> uuid.equals(auction.getItemId()))) {
+            consistentCounter.increment();
+        } else {
+            LOGGER.info("The object {} is not registered in Image Search, register it again.", uuid);
+            enqueueRegistration(uuid);
+        }
+
+        // Items stored by this application that are not in the catalog anymore
+        Set<String> itemIds = auctions.stream()
+                .filter(auction -> auction.getImageStoreType() == ImageStoreType.DATABASE && !uuid.equals(auction.getItemId()))
+                .map(ImageSearchAuction::getItemId)
+                .collect(Collectors.toSet());
+        if (!itemIds.isEmpty()) {
+            recognizableObjectRepository.findAllWithoutImageDataByUuidIn(itemIds)
+                    .forEach(existingObject -> itemIds.remove(existingObject.getUuid()));
+            for (String itemId : itemIds) {
+                if (!objectSyncTaskRepository.existsByObjectUuid(itemId)) {
+                    LOGGER.info("The item {} is not in the catalog anymore, delete it from Image Search.", itemId);
+                    objectSyncTaskRepository.save(new ObjectSyncTask(itemId, ObjectSyncOperation.UNREGISTER));
+                    orphanCounter.increment();
+                }
+            }
+        }
+    }
+
+    private void enqueueRegistration(String uuid) {
+        transactionTemplate.execute(status -> {
+            recognizableObjectRepository.updateSyncStatus(uuid, ObjectSyncStatus.PENDING);
+            return objectSyncTaskRepository.save(new ObjectSyncTask(uuid, ObjectSyncOperation.REGISTER));
+        });
+        reregisteredCounter.increment();
+    }
+}
@@ -14,29 +14,53 @@
 
 package com.alibaba.intl.imagesearch.services.impl;
 
+import com.alibaba.intl.imagesearch.events.ConfigurationSavedEvent;
 import com.alibaba.intl.imagesearch.model.Configuration;
 import com.alibaba.intl.imagesearch.repositories.ConfigurationRepository;
 import com.alibaba.intl.imagesearch.services.ConfigurationService;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Default implementation of {@link ConfigurationService}.
+ * <p>
+ * The configuration is kept in memory as an immutable versioned snapshot: it is swapped when the configuration is
+ * saved, and a periodic version check against the database picks up changes made by other application instances.
+ * The version is incremented in the database with an optimistic check, so that concurrent saves from several
+ * instances never write the same version.
  *
  * @author Alibaba Cloud
  */
 @Service
 public class ConfigurationServiceImpl implements ConfigurationService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationServiceImpl.class);
     private static final String CONFIGURATION_ID = "MAIN_CONFIGURATION";
+    private static final int MAX_SAVE_ATTEMPTS = 3;
 
     private final ConfigurationRepository configurationRepository;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicReference<ConfigurationSnapshot> snapshot = new AtomicReference<>();
     private PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
-    public ConfigurationServiceImpl(ConfigurationRepository configurationRepository) {
+    public ConfigurationServiceImpl(ConfigurationRepository configurationRepository,
+                                    ApplicationEventPublisher applicationEventPublisher,
+                                    PlatformTransactionManager transactionManager) {
         this.configurationRepository = configurationRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     @Override
@@ -50,11 +74,108 @@ public class ConfigurationServiceImpl implements ConfigurationService {
             configuration.setPassword(passwordEncoder.encode(configuration.getPassword()));
         }
 
-        return configurationRepository.save(configuration);
+        Configuration savedConfiguration = saveWithNextVersion(configuration);
+        snapshot.set(new ConfigurationSnapshot(new Configuration(savedConfiguration)));
+        applicationEventPublisher.publishEvent(new ConfigurationSavedEvent(this, new Configuration(savedConfiguration)));
+        return savedConfiguration;
     }
 
     @Override
     public Configuration load() {
-        return configurationRepository.findById(CONFIGURATION_ID).orElse(null);
+        ConfigurationSnapshot currentSnapshot = snapshot.get();
+        if (currentSnapshot == null) {
+            currentSnapshot = reloadSnapshot();
+        }
+
+        Configuration configuration = currentSnapshot.getConfiguration();
+        return configuration == null ? null : new Configuration(configuration);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${configuration.versionPollInterval}")
+    public void refresh() {
+        ConfigurationSnapshot currentSnapshot = snapshot.get();
+        if (currentSnapshot == null) {
+            return; // Nothing loaded yet
+        }
+
+        Long version = configurationRepository.findVersionById(CONFIGURATION_ID);
+        if (Objects.equals(version, currentSnapshot.getVersion())) {
+            return;
+        }
+
+        LOGGER.info("The configuration has been modified in the database (version {} -> {}), reload it.",
+                currentSnapshot.getVersion(), version);
+        ConfigurationSnapshot newSnapshot = reloadSnapshot();
+        if (newSnapshot != currentSnapshot && newSnapshot.getConfiguration() != null) {
+            applicationEventPublisher.publishEvent(
+                    new ConfigurationSavedEvent(this, new Configuration(newSnapshot.getConfiguration())));
+        }
+    }
+
+    /**
+     * Save the configuration with the version that follows the one in the database. When another application instance
+     * saves the configuration between the version read and the increment, try again with its version.
+     */
+    private Configuration saveWithNextVersion(Configuration configuration) {
+        for (int attempt = 1; ; attempt++) {
+            Configuration savedConfiguration = transactionTemplate.execute(status -> {
+                Long currentVersion = configurationRepository.findVersionById(CONFIGURATION_ID);
+                if (currentVersion == null) {
+                    configuration.setVersion(1L);
+                } else if (configurationRepository.incrementVersion(CONFIGURATION_ID, currentVersion) == 1) {
+                    configuration.setVersion(currentVersion + 1);
+                } else {
+                    return null;
+                }
+                return configurationRepository.save(configuration);
+            });
+            if (savedConfiguration != null) {
+                return savedConfiguration;
+            }
+            if (attempt >= MAX_SAVE_ATTEMPTS) {
+                throw new IllegalStateException("Unable to save the configuration: it has been modified concurrently " +
+                        MAX_SAVE_ATTEMPTS + " times, please retry later.");
+            }
+            LOGGER.info("The configuration has been saved concurrently by another instance, retry.");
+        }
+    }
+
+    private ConfigurationSnapshot reloadSnapshot() {
+        Configuration configuration = configurationRepository.findById(CONFIGURATION_ID).orElse(null);
+        ConfigurationSnapshot loadedSnapshot = new ConfigurationSnapshot(configuration);
+
+        // Do not replace a more recent snapshot set by a concurrent save
+        return snapshot.accumulateAndGet(loadedSnapshot, (current, loaded) ->
+                current != null && loaded.getVersion() != null && current.getVersion() != null
+                        && current.getVersion() > loaded.getVersion() ? current : loaded);
+    }
+
+    /**
+     * Immutable copy of the configuration with its version.
+     */
+    private static final class ConfigurationSnapshot {
+        private final Configuration configuration;
+        private final Long version;
+
+        ConfigurationSnapshot(Configuration configuration) {
+            this.configuration = configuration;
+            if (configuration == null) {
+                this.version = null;
+            } else {
+                this.version = configuration.getVersion() == null ? 0L : configuration.getVersion();
+            }
+        }
+
+        /**
+         * @return Configuration that must never be modified, or null if there is no configuration yet.
+         */
+        Configuration getConfiguration() {
+            return configuration;
+        }
+
+        Long getVersion() {
+            return version;
+        }
     }
 }
@@ -16,26 +16,35 @@ package com.alibaba.intl.imagesearch.services.impl;
 
 import com.alibaba.intl.imagesearch.model.ObjectCategory;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
 import com.alibaba.intl.imagesearch.model.RecognizableObject;
 import com.alibaba.intl.imagesearch.model.dto.AugmentedAuction;
 import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
 import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
 import com.alibaba.intl.imagesearch.model.dto.ObjectSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
 import com.alibaba.intl.imagesearch.services.RecognizableObjectService;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -48,6 +57,7 @@ import java.util.stream.Collectors;
 public class DummyRecognizableObjectServiceImpl implements RecognizableObjectService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DummyRecognizableObjectServiceImpl.class);
+    private static final String CURSOR = "dummy-cursor";
 
     private List<RecognizableObject> objects = new ArrayList<>(Arrays.asList(
             new RecognizableObject("2f2431d9-f4ce-48c6-990c-44221ef102d6", "Object A", ObjectCategory.OTHERS, ObjectImageType.JPEG,
@@ -69,6 +79,7 @@ public class DummyRecognizableObjectServiceImpl implements RecognizableObjectSer
                     loadResource("samples/f328d358-6cf0-4aff-855a-f2c0d7fa55d9.jpg"),
                     loadResource("samples/f328d358-6cf0-4aff-855a-f2c0d7fa55d9.jpg"))
     ));
+    private final Map<String, ReducedImage> imageByQuerySession = new ConcurrentHashMap<>();
 
     @Override
     public RecognizableObject create(RecognizableObject object) {
@@ -85,6 +96,11 @@ public class DummyRecognizableObjectServiceImpl implements RecognizableObjectSer
         return object;
     }
 
+    @Override
+    public void createAll(List<RecognizableObject> objects) {
+        objects.forEach(this::create);
+    }
+
     @Override
     public RecognizableObject update(RecognizableObject object) {
         objects.remove(object);
@@ -105,13 +121,62 @@ public class DummyRecognizableObjectServiceImpl implements RecognizableObjectSer
                 .orElse(null);
     }
 
+    @Override
+    public ObjectImage findImage(String uuid, ObjectImageVariant variant) {
+        RecognizableObject object = findByUuid(uuid);
+        if (object == null) {
+            return null;
+        }
+        byte[] data = variant == ObjectImageVariant.THUMBNAIL ? object.getThumbnailData() : object.getImageData();
+        return data == null ? null : new ObjectImage(
+                object.getImageType(), data.length, DigestUtils.md5DigestAsHex(data), new ByteArrayResource(data));
+    }
+
     @Override
     public List<RecognizableObject> findAll() {
         return objects;
     }
 
     @Override
-    public ObjectSearchResponse findAllBySimilarImage(byte[] imageData, ImageRegion objectRegion) {
+    public CompletableFuture<ObjectSearchResponse> findAllBySimilarImageAsync(byte[] imageData, ImageRegion objectRegion) {
+        return CompletableFuture.completedFuture(findAllBySimilarImage());
+    }
+
+    @Override
+    public CompletableFuture<ObjectSearchResponse> findAllBySimilarImageAsync(ReducedImage image, ImageRegion objectRegion, int start, int num) {
+        return CompletableFuture.completedFuture(findPage(start, num));
+    }
+
+    @Override
+    public CompletableFuture<ObjectSearchResponse> findAllByCursorAsync(String cursor, int start, int num) {
+        // The results are always the same, so a single cursor never expires
+        return CompletableFuture.completedFuture(CURSOR.equals(cursor) ? findPage(start, num) : null);
+    }
+
+    @Override
+    public String openQuerySession(ReducedImage image) {
+        String querySession = UUID.randomUUID().toString();
+        imageByQuerySession.put(querySession, image);
+        return querySession;
+    }
+
+    @Override
+    public CompletableFuture<ObjectSearchResponse> findAllByQuerySessionAsync(String querySession, ImageRegion objectRegion,
+                                                                              int start, int num) {
+        return CompletableFuture.completedFuture(imageByQuerySession.containsKey(querySession) ? findPage(start, num) : null);
+    }
+
+    private ObjectSearchResponse findPage(int start, int num) {
+        ObjectSearchResponse response = findAllBySimilarImage();
+        List<AugmentedAuction> auctions = response.getAuctions();
+        response.setAuctions(auctions.stream().skip(start).limit(num).collect(Collectors.toList()));
+        response.setCursor(CURSOR);
+        response.setStart(start);
+        response.setTotal(auctions.size());
+        return response;
+    }
+
+    private ObjectSearchResponse findAllBySimilarImage() {
         return new ObjectSearchResponse(objects.stream()
                 .map(o -> new AugmentedAuction(o.getUuid(), o.getCategory().getId(), o.getName(), ImageStoreType.DATABASE, 4.2F, null, o))
                 .collect(Collectors.toList()), "", new ImageRegion(0, 0, 100, 100));
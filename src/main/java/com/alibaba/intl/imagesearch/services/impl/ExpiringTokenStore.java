@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep values under random tokens given to the clients. A value expires when it has not been read for a while, or
+ * earlier when the values exceed a maximum weight.
+ *
+ * @param <V> Type of the values, they must not be modified once stored.
+ * @author Alibaba Cloud
+ */
+final class ExpiringTokenStore<V> {
+
+    private final Cache<String, V> valueByToken;
+
+    /**
+     * @param cacheName     Name of the cache in the metrics.
+     * @param maximumWeight Maximum weight of all the values.
+     * @param timeToIdle    Duration in milliseconds after which a value that has not been read expires.
+     * @param weigher       Estimation of the weight of a value and its token.
+     * @param meterRegistry Registry of the cache metrics.
+     */
+    ExpiringTokenStore(String cacheName, long maximumWeight, long timeToIdle, Weigher<String, V> weigher,
+                       MeterRegistry meterRegistry) {
+        valueByToken = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(weigher)
+                .expireAfterAccess(timeToIdle, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, valueByToken, cacheName);
+    }
+
+    /**
+     * Keep the given value.
+     *
+     * @return Token of the value.
+     */
+    String put(V value) {
+        String token = UUID.randomUUID().toString();
+        valueByToken.put(token, value);
+        return token;
+    }
+
+    /**
+     * @return Value kept under the given token, or null if it expired.
+     */
+    V get(String token) {
+        return valueByToken.getIfPresent(token);
+    }
+}
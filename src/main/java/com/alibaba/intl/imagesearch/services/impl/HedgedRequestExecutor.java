@@ -0,0 +1,308 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Send hedged requests: when the primary call has not answered after a delay that follows a percentile of its recent
+ * latencies (or when it failed), the same request is sent to a secondary target and the first answer is used.
+ * <p>
+ * Hedged requests are budgeted: each primary call earns "hedging.budgetRatio" token and each hedged request costs one,
+ * so that they never exceed this fraction of the traffic.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class HedgedRequestExecutor {
+
+    @Value("${hedging.delayPercentile}")
+    private double delayPercentile;
+
+    @Value("${hedging.latencyWindowSize}")
+    private int latencyWindowSize;
+
+    @Value("${hedging.initialDelay}")
+    private long initialDelay;
+
+    @Value("${hedging.minDelay}")
+    private long minDelay;
+
+    @Value("${hedging.budgetRatio}")
+    private double budgetRatio;
+
+    @Value("${hedging.maxBudget}")
+    private double maxBudget;
+
+    private final MeterRegistry meterRegistry;
+    private final ScheduledThreadPoolExecutor hedgeScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "hedged-request-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private LatencyWindow latencyWindow;
+    private HedgeBudget hedgeBudget;
+    private Counter hedgeCounter;
+    private Counter hedgeWinCounter;
+    private Counter hedgeOverBudgetCounter;
+
+    public HedgedRequestExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Most hedge timers are cancelled, they must not keep their request until their delay expires
+        hedgeScheduler.setRemoveOnCancelPolicy(true);
+        latencyWindow = new LatencyWindow(latencyWindowSize, delayPercentile,
+                TimeUnit.MILLISECONDS.toNanos(initialDelay), TimeUnit.MILLISECONDS.toNanos(minDelay));
+        hedgeBudget = new HedgeBudget(budgetRatio, maxBudget);
+
+        Gauge.builder("imageSearch.hedging.delay", latencyWindow, window -> window.getHedgeDelayNanos() / 1e6)
+                .description("Delay in milliseconds before sending a hedged request")
+                .register(meterRegistry);
+        hedgeCounter = Counter.builder("imageSearch.hedging.requests")
+                .description("Hedged requests sent to the secondary target")
+                .register(meterRegistry);
+        hedgeWinCounter = Counter.builder("imageSearch.hedging.wins")
+                .description("Hedged requests that answered before the primary call")
+                .register(meterRegistry);
+        hedgeOverBudgetCounter = Counter.builder("imageSearch.hedging.overBudget")
+                .description("Hedged requests not sent because the budget was exhausted")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeScheduler.shutdownNow();
+    }
+
+    /**
+     * Execute the primary call, hedged by the secondary one if necessary. No thread waits for the hedge delay nor for
+     * the calls.
+     *
+     * @param primaryCall   Function that starts the call to the primary target.
+     * @param secondaryCall Function that starts the same call to the secondary target, or null to only execute the
+     *                      primary call.
+     * @return Future first successful result. Cancelling it cancels the calls in progress.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> primaryCall,
+                                                 Supplier<CompletableFuture<T>> secondaryCall) {
+        if (secondaryCall != null) {
+            hedgeBudget.deposit();
+        }
+        long startTime = System.nanoTime();
+        CompletableFuture<T> primaryFuture = start(primaryCall);
+        primaryFuture.whenComplete((result, throwable) -> {
+            // Slow calls are sampled whatever their outcome, otherwise the hedge delay would drift low: the latency of
+            // a cancelled call (e.g. the hedged request won) is a lower bound. Calls rejected without being sent
+            // (e.g. by the circuit breaker) say nothing about the latency of the primary target.
+            if (!(throwable instanceof UpstreamUnavailableException)) {
+                latencyWindow.record(System.nanoTime() - startTime);
+            }
+        });
+        if (secondaryCall == null) {
+            return primaryFuture;
+        }
+
+        CompletableFuture<T> firstResult = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> secondaryFutureRef = new AtomicReference<>();
+        ScheduledFuture<?> hedgeTimer = hedgeScheduler.schedule(
+                () -> hedge(primaryFuture, secondaryCall, secondaryFutureRef, firstResult),
+                latencyWindow.getHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        primaryFuture.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                firstResult.complete(result);
+            } else if (hedgeTimer.cancel(false)) {
+                // The primary call failed before the hedge delay, hedge it now
+                hedge(primaryFuture, secondaryCall, secondaryFutureRef, firstResult);
+            }
+        });
+        firstResult.whenComplete((result, throwable) -> {
+            hedgeTimer.cancel(false);
+            primaryFuture.cancel(true);
+            CompletableFuture<T> secondaryFuture = secondaryFutureRef.get();
+            if (secondaryFuture != null) {
+                secondaryFuture.cancel(true);
+            }
+        });
+        return firstResult;
+    }
+
+    private <T> void hedge(CompletableFuture<T> primaryFuture, Supplier<CompletableFuture<T>> secondaryCall,
+                           AtomicReference<CompletableFuture<T>> secondaryFutureRef, CompletableFuture<T> firstResult) {
+        if (firstResult.isDone()) {
+            return;
+        }
+
+        CompletableFuture<T> secondaryFuture = null;
+        if (!hedgeBudget.tryWithdraw()) {
+            hedgeOverBudgetCounter.increment();
+        } else {
+            try {
+                secondaryFuture = secondaryCall.get();
+                hedgeCounter.increment();
+            } catch (RuntimeException e) {
+                // For example rejected by the concurrency limiter, wait for the primary call
+            }
+        }
+        if (secondaryFuture == null) {
+            primaryFuture.whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    firstResult.completeExceptionally(throwable);
+                }
+            });
+            return;
+        }
+
+        secondaryFutureRef.set(secondaryFuture);
+        if (firstResult.isDone()) {
+            secondaryFuture.cancel(true);
+            return;
+        }
+        CompletableFuture<T> hedgedFuture = secondaryFuture;
+        primaryFuture.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                // Wait for the hedged request, but report the primary error if it fails too
+                hedgedFuture.whenComplete((secondaryResult, secondaryThrowable) -> {
+                    if (secondaryThrowable == null) {
+                        firstResult.complete(secondaryResult);
+                    } else {
+                        firstResult.completeExceptionally(throwable);
+                    }
+                });
+            }
+        });
+        hedgedFuture.thenAccept(result -> {
+            if (!firstResult.isDone()) {
+                // Note: counted first because the caller may be notified as soon as the result is completed
+                hedgeWinCounter.increment();
+                firstResult.complete(result);
+            }
+        });
+    }
+
+    private static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            // For example rejected by the circuit breaker, handled like a failed call so that it can be hedged
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Recent latencies of the primary calls, used to compute the hedge delay.
+     */
+    static final class LatencyWindow {
+        private static final int RECOMPUTE_INTERVAL = 16;
+
+        private final long[] latencies;
+        private final double percentile;
+        private final long minDelayNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int nextIndex;
+        private int size;
+        private int recordsSinceRecompute;
+        private volatile long hedgeDelayNanos;
+
+        LatencyWindow(int windowSize, double percentile, long initialDelayNanos, long minDelayNanos) {
+            this.latencies = new long[windowSize];
+            this.percentile = percentile;
+            this.minDelayNanos = minDelayNanos;
+            this.hedgeDelayNanos = initialDelayNanos;
+        }
+
+        void record(long latencyNanos) {
+            lock.lock();
+            try {
+                latencies[nextIndex] = latencyNanos;
+                nextIndex = (nextIndex + 1) % latencies.length;
+                size = Math.min(size + 1, latencies.length);
+
+                // Sorting the window for each call would be wasteful, the percentile moves slowly anyway
+                if (++recordsSinceRecompute >= RECOMPUTE_INTERVAL && size >= RECOMPUTE_INTERVAL) {
+                    recordsSinceRecompute = 0;
+                    long[] sortedLatencies = Arrays.copyOf(latencies, size);
+                    Arrays.sort(sortedLatencies);
+                    int index = (int) Math.ceil(percentile / 100 * size) - 1;
+                    hedgeDelayNanos = Math.max(minDelayNanos, sortedLatencies[Math.max(0, Math.min(size - 1, index))]);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long getHedgeDelayNanos() {
+            return hedgeDelayNanos;
+        }
+    }
+
+    /**
+     * Token bucket that limits the fraction of hedged requests.
+     */
+    static final class HedgeBudget {
+        private final double ratio;
+        private final double maxTokens;
+        private final ReentrantLock lock = new ReentrantLock();
+        private double tokens;
+
+        HedgeBudget(double ratio, double maxTokens) {
+            this.ratio = ratio;
+            this.maxTokens = maxTokens;
+        }
+
+        void deposit() {
+            lock.lock();
+            try {
+                tokens = Math.min(maxTokens, tokens + ratio);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean tryWithdraw() {
+            lock.lock();
+            try {
+                if (tokens < 1) {
+                    return false;
+                }
+                tokens--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.exceptions.ServerException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport of the calls to the Image Search API through a non-blocking HTTP client: the requests are signed here
+ * instead of by the SDK, and no thread waits while they are in progress.
+ * <p>
+ * Connections are pooled and kept alive like the ones of the SDK client ("httpClient.*" properties), and all the
+ * connections are handled by "imageSearch.http.ioThreads" I/O threads.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+@ConditionalOnProperty(name = "imageSearch.transport", havingValue = "http")
+public class HttpImageSearchTransport implements ImageSearchTransport {
+
+    private static final String API_VERSION = "2018-06-11";
+    private static final String CONTENT_TYPE = "application/octet-stream;charset=utf-8";
+    private static final String SEARCH_PICTURE_NAME = "searchPic";
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    @Value("${imageSearch.http.protocol}")
+    private String protocol;
+
+    @Value("${imageSearch.http.ioThreads}")
+    private int ioThreads;
+
+    @Value("${httpClient.maxConnections}")
+    private int maxConnections;
+
+    @Value("${httpClient.maxConnectionsPerHost}")
+    private int maxConnectionsPerHost;
+
+    @Value("${httpClient.keepAliveDuration}")
+    private long keepAliveDuration;
+
+    private final ImageSearchTimeouts imageSearchTimeouts;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CloseableHttpAsyncClient httpClient;
+
+    public HttpImageSearchTransport(ImageSearchTimeouts imageSearchTimeouts) {
+        this.imageSearchTimeouts = imageSearchTimeouts;
+    }
+
+    @PostConstruct
+    public void init() throws IOReactorException {
+        AtomicInteger threadIndex = new AtomicInteger();
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setSoKeepAlive(true)
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig, runnable -> {
+                    Thread thread = new Thread(runnable, "image-search-http-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveDuration) : keepAliveDuration;
+                })
+                .build();
+        httpClient.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        httpClient.close();
+    }
+
+    @Override
+    public CompletableFuture<ImageSearchResults.InstanceResult> searchItem(Configuration configuration, String instanceName,
+                                                                           ImageSearchQuery query, ImageSearchOperation operation) {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("s", "0");
+        content.put("n", String.valueOf(query.getNum()));
+        if (configuration.getImageSearchNamespace() != null) {
+            content.put("fc", "str_attr=\"" + configuration.getImageSearchNamespace() + "\""); // Allow us to share the same instance for multiple environments
+        }
+        content.put("pic_list", SEARCH_PICTURE_NAME);
+        content.put(SEARCH_PICTURE_NAME, Base64.getEncoder().encodeToString(query.getImageData()));
+        if (query.getCrop() != null) {
+            content.put("crop", query.getCrop().toString());
+        }
+        if (query.getRegion() != null) {
+            content.put("region", query.getRegion());
+        }
+
+        return send(configuration, "/item/search", instanceName, content, operation).thenApply(response -> {
+            checkSuccess(operation, response);
+            return new ImageSearchResults.InstanceResult(response, buildAuctions(response),
+                    ImageSearchResults.parseRegion(getText(response.path("PicInfo"), "Region")));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> addItem(Configuration configuration, String instanceName, String itemId,
+                                           String pictureName, byte[] imageData) {
+        String encodedPictureName = Base64.getEncoder().encodeToString(pictureName.getBytes(StandardCharsets.UTF_8));
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("item_id", itemId);
+        content.put("cust_content", "{\"dbStore\": true}");
+        if (configuration.getImageSearchNamespace() != null) {
+            content.put("str_attr", configuration.getImageSearchNamespace()); // Allow us to re-use the same Image Search instance for several environments
+        }
+        content.put("pic_list", encodedPictureName);
+        content.put(encodedPictureName, Base64.getEncoder().encodeToString(imageData));
+
+        return send(configuration, "/item/add", instanceName, content, ImageSearchOperation.REGISTER)
+                .thenAccept(response -> checkSuccess(ImageSearchOperation.REGISTER, response));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteItem(Configuration configuration, String instanceName, String itemId) {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("item_id", itemId);
+
+        return send(configuration, "/item/delete", instanceName, content, ImageSearchOperation.DELETE)
+                .thenAccept(response -> checkSuccess(ImageSearchOperation.DELETE, response));
+    }
+
+    /**
+     * Sign and send a request.
+     *
+     * @return Future JSON response, failed with a {@link ClientException} if the API cannot be reached or returns an
+     * error. Cancelling it aborts the request.
+     */
+    private CompletableFuture<JsonNode> send(Configuration configuration, String path, String instanceName,
+                                             Map<String, String> content, ImageSearchOperation operation) {
+        byte[] body = encodeContent(content);
+        Map<String, String> queryParameters = Collections.singletonMap("instanceName", instanceName);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Content-MD5", Base64.getEncoder().encodeToString(DigestUtils.md5Digest(body)));
+        headers.put("Content-Type", CONTENT_TYPE);
+        headers.put("Date", DATE_FORMATTER.format(Instant.now()));
+        headers.put("x-acs-signature-method", RoaRequestSigner.SIGNATURE_METHOD);
+        headers.put("x-acs-signature-nonce", UUID.randomUUID().toString());
+        headers.put("x-acs-signature-version", RoaRequestSigner.SIGNATURE_VERSION);
+        headers.put("x-acs-version", API_VERSION);
+        headers.put("x-acs-region-id", configuration.getRegionId());
+        String authorization = RoaRequestSigner.buildAuthorization("POST", path, queryParameters, headers,
+                configuration.getAccessKeyId(), configuration.getAccessKeySecret());
+
+        HttpPost request = new HttpPost(protocol + "://" + configuration.getImageSearchDomain() + path +
+                "?instanceName=" + urlEncode(instanceName));
+        headers.forEach(request::setHeader);
+        request.setHeader("Authorization", authorization);
+        request.setEntity(new ByteArrayEntity(body));
+        request.setConfig(RequestConfig.custom()
+                .setConnectTimeout(imageSearchTimeouts.getConnectTimeout(operation))
+                .setConnectionRequestTimeout(imageSearchTimeouts.getConnectTimeout(operation))
+                .setSocketTimeout(imageSearchTimeouts.getReadTimeout(operation))
+                .build());
+
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        Future<HttpResponse> execution = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    future.complete(parseResponse(response));
+                } catch (ClientException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                // Same error code as the SDK, so that network errors are classified the same way
+                ClientException clientException = new ClientException("SDK.ServerUnreachable",
+                        "Unable to reach the Image Search API: " + e.getMessage());
+                clientException.initCause(e);
+                future.completeExceptionally(clientException);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled()) {
+                execution.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private JsonNode parseResponse(HttpResponse response) throws ClientException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        JsonNode json;
+        try {
+            byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+            json = body.length == 0 ? null : objectMapper.readTree(body);
+        } catch (IOException e) {
+            json = null;
+        }
+
+        if (statusCode >= 200 && statusCode < 300) {
+            if (json == null || !json.isObject()) {
+                throw new ClientException("SDK.InvalidResponse",
+                        "Unable to parse the response of the Image Search API (HTTP status " + statusCode + ").");
+            }
+            return json;
+        }
+
+        // Error returned by the API, e.g. {"Code": "InvalidAccessKeyId.NotFound", "Message": "...", "RequestId": "..."}
+        String code = json == null ? null : getText(json, "Code");
+        String message = json == null ? null : getText(json, "Message");
+        String errorMessage = (message == null ? response.getStatusLine().getReasonPhrase() : message) +
+                " (HTTP status " + statusCode + ", request ID = " + (json == null ? null : getText(json, "RequestId")) + ")";
+        if (statusCode >= 500) {
+            throw new ServerException(code == null ? "InternalError" : code, errorMessage);
+        }
+        throw new ClientException(code == null ? "InvalidRequest" : code, errorMessage);
+    }
+
+    private static void checkSuccess(ImageSearchOperation operation, JsonNode response) {
+        JsonNode success = response.get("Success");
+        ImageSearchResults.checkSuccess(operation, success == null || success.isNull() ? null : success.asBoolean(),
+                getText(response, "RequestId"), getText(response, "Code"), getText(response, "Message"));
+    }
+
+    private static List<ImageSearchAuction> buildAuctions(JsonNode response) {
+        JsonNode auctionNodes = response.path("Auctions");
+        if (auctionNodes.has("Auction")) {
+            auctionNodes = auctionNodes.get("Auction"); // List wrapped in an object by some API versions
+        }
+
+        List<ImageSearchAuction> auctions = new ArrayList<>();
+        for (JsonNode auction : auctionNodes) {
+            auctions.add(ImageSearchResults.buildAuction(getText(auction, "ItemId"), getText(auction, "CatId"),
+                    getText(auction, "PicName"), getText(auction, "CustContent"), getText(auction, "SortExprValues")));
+        }
+        return auctions;
+    }
+
+    private static String getText(JsonNode node, String fieldName) {
+        JsonNode field = node.get(fieldName);
+        return field == null || field.isNull() ? null : field.asText();
+    }
+
+    /**
+     * Encode the parameters like the SDK: a header with the lengths of each key and value ("k1,v1#k2,v2^"), followed
+     * by the keys and values themselves.
+     */
+    static byte[] encodeContent(Map<String, String> content) {
+        StringBuilder meta = new StringBuilder();
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, String> parameter : content.entrySet()) {
+            if (meta.length() > 0) {
+                meta.append('#');
+            }
+            meta.append(parameter.getKey().length()).append(',').append(parameter.getValue().length());
+            body.append(parameter.getKey()).append(parameter.getValue());
+        }
+        meta.append('^');
+        return (meta.toString() + body.toString()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
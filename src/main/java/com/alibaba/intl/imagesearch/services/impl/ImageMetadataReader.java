@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read the metadata of JPEG and PNG files from their headers, without decoding the images.
+ *
+ * @author Alibaba Cloud
+ */
+final class ImageMetadataReader {
+
+    /**
+     * EXIF orientation of an image that doesn't need to be transformed.
+     */
+    static final int NORMAL_ORIENTATION = 1;
+
+    private static final int JPEG_SOS_MARKER = 0xDA;
+    private static final int JPEG_APP1_MARKER = 0xE1;
+    private static final int JPEG_APP15_MARKER = 0xEF;
+    private static final int JPEG_COM_MARKER = 0xFE;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int PNG_SIGNATURE_LENGTH = 8;
+
+    private ImageMetadataReader() {
+    }
+
+    /**
+     * @return true if the image contains metadata that is not necessary to display it (EXIF, XMP, ICC profiles,
+     * comments, text chunks...).
+     */
+    static boolean hasMetadata(byte[] imageData, ObjectImageType imageType) {
+        return imageType == ObjectImageType.JPEG ? hasJpegMetadata(imageData) : hasPngMetadata(imageData);
+    }
+
+    /**
+     * @return EXIF orientation (between 1 and 8) of a JPEG image, or {@link #NORMAL_ORIENTATION} if unknown.
+     */
+    static int readExifOrientation(byte[] jpegData) {
+        int offset = 2;
+        while (offset + 4 <= jpegData.length && (jpegData[offset] & 0xFF) == 0xFF) {
+            int marker = jpegData[offset + 1] & 0xFF;
+            int segmentLength = readUnsignedShort(jpegData, offset + 2, false);
+            if (marker == JPEG_SOS_MARKER) {
+                break;
+            }
+            if (marker == JPEG_APP1_MARKER && isExifSegment(jpegData, offset + 4)) {
+                return readTiffOrientation(jpegData, offset + 10, offset + 2 + segmentLength);
+            }
+            offset += 2 + segmentLength;
+        }
+        return NORMAL_ORIENTATION;
+    }
+
+    private static boolean hasJpegMetadata(byte[] jpegData) {
+        int offset = 2;
+        while (offset + 4 <= jpegData.length && (jpegData[offset] & 0xFF) == 0xFF) {
+            int marker = jpegData[offset + 1] & 0xFF;
+            if (marker == JPEG_SOS_MARKER) {
+                break;
+            }
+            if ((marker >= JPEG_APP1_MARKER && marker <= JPEG_APP15_MARKER) || marker == JPEG_COM_MARKER) {
+                return true;
+            }
+            offset += 2 + readUnsignedShort(jpegData, offset + 2, false);
+        }
+        return false;
+    }
+
+    private static boolean hasPngMetadata(byte[] pngData) {
+        int offset = PNG_SIGNATURE_LENGTH;
+        while (offset + 8 <= pngData.length) {
+            long chunkLength = readInt(pngData, offset, false) & 0xFFFFFFFFL;
+            if (chunkLength > pngData.length) {
+                return false; // Corrupted file
+            }
+            String chunkType = new String(pngData, offset + 4, 4, StandardCharsets.US_ASCII);
+            switch (chunkType) {
+                case "IDAT":
+                    return false;
+                case "tEXt":
+                case "zTXt":
+                case "iTXt":
+                case "eXIf":
+                case "tIME":
+                case "iCCP":
+                    return true;
+                default:
+                    offset += 12 + chunkLength;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isExifSegment(byte[] data, int offset) {
+        return offset + 6 <= data.length
+                && data[offset] == 'E' && data[offset + 1] == 'x' && data[offset + 2] == 'i' && data[offset + 3] == 'f'
+                && data[offset + 4] == 0 && data[offset + 5] == 0;
+    }
+
+    private static int readTiffOrientation(byte[] data, int tiffOffset, int segmentEnd) {
+        int end = Math.min(segmentEnd, data.length);
+        if (tiffOffset + 8 > end) {
+            return NORMAL_ORIENTATION;
+        }
+        boolean littleEndian = data[tiffOffset] == 'I' && data[tiffOffset + 1] == 'I';
+        long ifdOffset = tiffOffset + (readInt(data, tiffOffset + 4, littleEndian) & 0xFFFFFFFFL);
+        if (ifdOffset + 2 > end) {
+            return NORMAL_ORIENTATION;
+        }
+
+        int nbEntries = readUnsignedShort(data, (int) ifdOffset, littleEndian);
+        for (int i = 0; i < nbEntries; i++) {
+            int entryOffset = (int) ifdOffset + 2 + i * 12;
+            if (entryOffset + 12 > end) {
+                break;
+            }
+            if (readUnsignedShort(data, entryOffset, littleEndian) == EXIF_ORIENTATION_TAG) {
+                int orientation = readUnsignedShort(data, entryOffset + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : NORMAL_ORIENTATION;
+            }
+        }
+        return NORMAL_ORIENTATION;
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset, boolean littleEndian) {
+        if (offset + 2 > data.length) {
+            return 0;
+        }
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int high = readUnsignedShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        int low = readUnsignedShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.QueryImage;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
+import com.alibaba.intl.imagesearch.services.ImageProcessingService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default implementation of {@link ImageProcessingService} based on Java ImageIO.
+ * <p>
+ * Image decoding is CPU and memory intensive, so it runs on its own fixed-size pool with a bounded queue instead of
+ * on the web server threads: when the queue is full, new tasks are rejected instead of piling up.
+ *
+ * @author Alibaba Cloud
+ */
+@Service
+public class ImageProcessingServiceImpl implements ImageProcessingService {
+
+    private static final int PERCEPTUAL_HASH_WIDTH = 8;
+    private static final int PERCEPTUAL_HASH_HEIGHT = 8;
+    private static final int PERCEPTUAL_HASH_SAMPLE_SIZE = 32;
+
+    @Value("${imageProcessing.poolSize}")
+    private int poolSize;
+
+    @Value("${imageProcessing.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${imageProcessing.thumbnailMaxSize}")
+    private int thumbnailMaxSize;
+
+    @Value("${imageProcessing.maxImageSize}")
+    private int maxImageSize;
+
+    @Value("${imageProcessing.jpegQuality}")
+    private float jpegQuality;
+
+    @Value("${imageProcessing.retryAfter}")
+    private long retryAfter;
+
+    private final MeterRegistry meterRegistry;
+    private ExecutorService executorService;
+
+    public ImageProcessingServiceImpl(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void createExecutorService() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-processing-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executorService = ExecutorServiceMetrics.monitor(meterRegistry, executor, "imageProcessingExecutor");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public byte[] createThumbnail(byte[] imageData, ObjectImageType imageType) {
+        return execute(() -> {
+            BufferedImage image = readSubsampledImage(imageData, thumbnailMaxSize);
+            if (image == null) {
+                return imageData; // Already small enough
+            }
+
+            // Keep the aspect ratio
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int targetWidth = width > height ? thumbnailMaxSize : Math.max(1, width * thumbnailMaxSize / height);
+            int targetHeight = width > height ? Math.max(1, height * thumbnailMaxSize / width) : thumbnailMaxSize;
+
+            return writeImage(resize(image, targetWidth, targetHeight, imageType), imageType);
+        });
+    }
+
+    @Override
+    public byte[] normalize(byte[] imageData, ObjectImageType imageType) {
+        return execute(() -> {
+            Dimension size = readImageSize(imageData);
+            int orientation = imageType == ObjectImageType.JPEG
+                    ? ImageMetadataReader.readExifOrientation(imageData)
+                    : ImageMetadataReader.NORMAL_ORIENTATION;
+            boolean tooLarge = size.width > maxImageSize || size.height > maxImageSize;
+            if (!tooLarge && orientation == ImageMetadataReader.NORMAL_ORIENTATION
+                    && !ImageMetadataReader.hasMetadata(imageData, imageType)) {
+                return imageData;
+            }
+
+            // Re-encoding drops the metadata
+            BufferedImage image = tooLarge ? readSubsampledImage(imageData, maxImageSize) : readImage(imageData);
+            double scale = Math.min(1.0, (double) maxImageSize / Math.max(size.width, size.height));
+            int targetWidth = Math.max(1, (int) Math.round(size.width * scale));
+            int targetHeight = Math.max(1, (int) Math.round(size.height * scale));
+            BufferedImage normalizedImage = applyOrientation(
+                    resize(image, targetWidth, targetHeight, imageType), orientation, imageType);
+            return writeImage(normalizedImage, imageType);
+        });
+    }
+
+    private <T> T execute(Callable<T> task) {
+        CompletableFuture<T> future = executeAsync(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing an image.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Unable to process the image: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Run a task on the pool.
+     * Note: the returned future fails with an {@link UpstreamUnavailableException} when the pool is full, so that
+     * the clients back off like when the Image Search API is saturated.
+     */
+    private <T> CompletableFuture<T> executeAsync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executorService.execute(() -> {
+                if (future.isDone()) {
+                    return; // Cancelled while waiting in the queue
+                }
+                try {
+                    future.complete(task.call());
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                } catch (Exception e) {
+                    future.completeExceptionally(
+                            new IllegalStateException("Unable to process the image: " + e.getMessage(), e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new UpstreamUnavailableException(
+                    "Too many images are being processed, please retry later.", retryAfter));
+        }
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<QueryImage> cropAndReduceAsync(byte[] imageData, ImageRegion region) {
+        return executeAsync(() -> {
+            try (ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+                ImageReader reader = getImageReader(inputStream);
+                try {
+                    reader.setInput(inputStream, true, true);
+                    int rasterWidth = reader.getWidth(0);
+                    int rasterHeight = reader.getHeight(0);
+
+                    // The region is located on the displayed image, that may be rotated compared to the raster
+                    int orientation = readOrientation(reader, imageData);
+                    boolean swapDimensions = orientation >= 5;
+                    Rectangle displayedRegion = new Rectangle(region.getX(), region.getY(), region.getWidth(), region.getHeight())
+                            .intersection(new Rectangle(0, 0,
+                                    swapDimensions ? rasterHeight : rasterWidth, swapDimensions ? rasterWidth : rasterHeight));
+                    if (displayedRegion.isEmpty()) {
+                        throw new IllegalArgumentException("The region " + region + " is outside of the image.");
+                    }
+                    Rectangle sourceRegion = toRasterRegion(displayedRegion, orientation, rasterWidth, rasterHeight);
+
+                    int subsampling = Math.max(1, Math.max(sourceRegion.width, sourceRegion.height) / (2 * maxImageSize));
+                    ImageReadParam readParam = reader.getDefaultReadParam();
+                    readParam.setSourceRegion(sourceRegion);
+                    readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    BufferedImage image = reader.read(0, readParam);
+
+                    double scale = Math.min(1.0, (double) maxImageSize / Math.max(sourceRegion.width, sourceRegion.height));
+                    int targetWidth = Math.max(1, (int) Math.round(sourceRegion.width * scale));
+                    int targetHeight = Math.max(1, (int) Math.round(sourceRegion.height * scale));
+                    BufferedImage queryImage = applyOrientation(
+                            resize(image, targetWidth, targetHeight, ObjectImageType.JPEG), orientation, ObjectImageType.JPEG);
+                    byte[] queryImageData = writeImage(queryImage, ObjectImageType.JPEG);
+
+                    ImageRegion clippedRegion = new ImageRegion(
+                            displayedRegion.x, displayedRegion.y, displayedRegion.width, displayedRegion.height);
+                    return new QueryImage(queryImageData, clippedRegion, (double) queryImage.getWidth() / displayedRegion.width);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Unable to decode the image: " + e.getMessage(), e);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<ReducedImage> reduceAsync(byte[] imageData) {
+        return executeAsync(() -> {
+            try (ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+                ImageReader reader = getImageReader(inputStream);
+                try {
+                    reader.setInput(inputStream, true, true);
+                    int rasterWidth = reader.getWidth(0);
+                    int rasterHeight = reader.getHeight(0);
+                    int orientation = readOrientation(reader, imageData);
+
+                    int subsampling = Math.max(1, Math.max(rasterWidth, rasterHeight) / (2 * maxImageSize));
+                    ImageReadParam readParam = reader.getDefaultReadParam();
+                    readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    BufferedImage image = reader.read(0, readParam);
+
+                    double scale = Math.min(1.0, (double) maxImageSize / Math.max(rasterWidth, rasterHeight));
+                    int targetWidth = Math.max(1, (int) Math.round(rasterWidth * scale));
+                    int targetHeight = Math.max(1, (int) Math.round(rasterHeight * scale));
+                    BufferedImage reducedImage = applyOrientation(
+                            resize(image, targetWidth, targetHeight, ObjectImageType.JPEG), orientation, ObjectImageType.JPEG);
+                    return new ReducedImage(writeImage(reducedImage, ObjectImageType.JPEG),
+                            reducedImage.getWidth(), reducedImage.getHeight(), (double) targetWidth / rasterWidth);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Unable to decode the image: " + e.getMessage(), e);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<QueryImage> cropAsync(ReducedImage image, ImageRegion region) {
+        double scale = image.getScale();
+        Rectangle reducedBounds = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        Rectangle sourceRegion = reducedBounds;
+        if (region != null) {
+            // Keep all the pixels that overlap the region
+            int x1 = (int) Math.floor(region.getX() * scale);
+            int y1 = (int) Math.floor(region.getY() * scale);
+            int x2 = (int) Math.ceil((region.getX() + region.getWidth()) * scale);
+            int y2 = (int) Math.ceil((region.getY() + region.getHeight()) * scale);
+            sourceRegion = new Rectangle(x1, y1, x2 - x1, y2 - y1).intersection(reducedBounds);
+            if (sourceRegion.isEmpty()) {
+                return failedFuture(new IllegalArgumentException("The region " + region + " is outside of the image."));
+            }
+        }
+
+        ImageRegion clippedRegion = new ImageRegion(
+                (int) Math.round(sourceRegion.x / scale), (int) Math.round(sourceRegion.y / scale),
+                (int) Math.round(sourceRegion.width / scale), (int) Math.round(sourceRegion.height / scale));
+        if (sourceRegion.equals(reducedBounds)) {
+            // The whole reduced image is already encoded
+            return CompletableFuture.completedFuture(new QueryImage(image.getImageData(), clippedRegion, scale));
+        }
+
+        Rectangle croppedRegion = sourceRegion;
+        return executeAsync(() -> {
+            BufferedImage reducedImage = readImage(image.getImageData());
+            byte[] queryImageData = writeImage(reducedImage.getSubimage(
+                    croppedRegion.x, croppedRegion.y, croppedRegion.width, croppedRegion.height), ObjectImageType.JPEG);
+            return new QueryImage(queryImageData, clippedRegion, scale);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> computePerceptualHashAsync(byte[] imageData) {
+        return executeAsync(() -> {
+            BufferedImage image = readSubsampledImage(imageData, PERCEPTUAL_HASH_SAMPLE_SIZE);
+            if (image == null) {
+                image = readImage(imageData);
+            }
+
+            // Reduce the image to 9x8 gray pixels, then compare each pixel with its right neighbor
+            BufferedImage grayImage = new BufferedImage(
+                    PERCEPTUAL_HASH_WIDTH + 1, PERCEPTUAL_HASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D graphics = grayImage.createGraphics();
+            try {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, grayImage.getWidth(), grayImage.getHeight());
+                graphics.drawImage(image.getScaledInstance(grayImage.getWidth(), grayImage.getHeight(), Image.SCALE_AREA_AVERAGING), 0, 0, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            long hash = 0;
+            for (int y = 0; y < PERCEPTUAL_HASH_HEIGHT; y++) {
+                for (int x = 0; x < PERCEPTUAL_HASH_WIDTH; x++) {
+                    int left = grayImage.getRaster().getSample(x, y, 0);
+                    int right = grayImage.getRaster().getSample(x + 1, y, 0);
+                    hash = (hash << 1) | (left < right ? 1 : 0);
+                }
+            }
+            return hash;
+        });
+    }
+
+    private static Dimension readImageSize(byte[] imageData) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            ImageReader reader = getImageReader(inputStream);
+            try {
+                reader.setInput(inputStream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to decode the image: " + e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage readImage(byte[] imageData) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
+        if (image == null) {
+            throw new IllegalArgumentException("Unsupported image format.");
+        }
+        return image;
+    }
+
+    /**
+     * @return EXIF orientation of the image read by the given reader.
+     */
+    private static int readOrientation(ImageReader reader, byte[] imageData) throws IOException {
+        return "jpeg".equalsIgnoreCase(reader.getFormatName())
+                ? ImageMetadataReader.readExifOrientation(imageData)
+                : ImageMetadataReader.NORMAL_ORIENTATION;
+    }
+
+    private static ImageReader getImageReader(ImageInputStream inputStream) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+        if (!readers.hasNext()) {
+            throw new IllegalArgumentException("Unsupported image format.");
+        }
+        return readers.next();
+    }
+
+    /**
+     * Read an image with the largest subsampling that keeps both dimensions at least twice as large as the target
+     * size, so that the decoded raster stays small whatever the image resolution.
+     *
+     * @return Subsampled image, or null if the image already fits in the target size.
+     */
+    private static BufferedImage readSubsampledImage(byte[] imageData, int targetMaxSize) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            ImageReader reader = getImageReader(inputStream);
+            try {
+                reader.setInput(inputStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width <= targetMaxSize && height <= targetMaxSize) {
+                    return null;
+                }
+
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * targetMaxSize));
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, readParam);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to decode the image: " + e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, int targetWidth, int targetHeight, ObjectImageType imageType) {
+        int type = imageType == ObjectImageType.JPEG ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D graphics = resizedImage.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            if (imageType == ObjectImageType.JPEG) {
+                // JPEG has no transparency
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, targetWidth, targetHeight);
+            }
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resizedImage;
+    }
+
+    /**
+     * Rotate and / or flip an image according to its EXIF orientation.
+     */
+    private static BufferedImage applyOrientation(BufferedImage image, int orientation, ObjectImageType imageType) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform;
+        switch (orientation) {
+            case 2: // Flip horizontally
+                transform = new AffineTransform(-1, 0, 0, 1, width, 0);
+                break;
+            case 3: // Rotate 180 degrees
+                transform = new AffineTransform(-1, 0, 0, -1, width, height);
+                break;
+            case 4: // Flip vertically
+                transform = new AffineTransform(1, 0, 0, -1, 0, height);
+                break;
+            case 5: // Transpose
+                transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6: // Rotate 90 degrees clockwise
+                transform = new AffineTransform(0, 1, -1, 0, height, 0);
+                break;
+            case 7: // Transverse
+                transform = new AffineTransform(0, -1, -1, 0, height, width);
+                break;
+            case 8: // Rotate 90 degrees counterclockwise
+                transform = new AffineTransform(0, -1, 1, 0, 0, width);
+                break;
+            default:
+                return image;
+        }
+
+        boolean swapDimensions = orientation >= 5;
+        int type = imageType == ObjectImageType.JPEG ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage orientedImage = new BufferedImage(
+                swapDimensions ? height : width, swapDimensions ? width : height, type);
+        Graphics2D graphics = orientedImage.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return orientedImage;
+    }
+
+    /**
+     * Convert a region located on the displayed image into the coordinates of the raster stored with the given EXIF
+     * orientation (see {@link #applyOrientation(BufferedImage, int, ObjectImageType)}).
+     */
+    private static Rectangle toRasterRegion(Rectangle region, int orientation, int rasterWidth, int rasterHeight) {
+        switch (orientation) {
+            case 2: // Flip horizontally
+                return new Rectangle(rasterWidth - region.x - region.width, region.y, region.width, region.height);
+            case 3: // Rotate 180 degrees
+                return new Rectangle(rasterWidth - region.x - region.width, rasterHeight - region.y - region.height,
+                        region.width, region.height);
+            case 4: // Flip vertically
+                return new Rectangle(region.x, rasterHeight - region.y - region.height, region.width, region.height);
+            case 5: // Transpose
+                return new Rectangle(region.y, region.x, region.height, region.width);
+            case 6: // Rotate 90 degrees clockwise
+                return new Rectangle(region.y, rasterHeight - region.x - region.width, region.height, region.width);
+            case 7: // Transverse
+                return new Rectangle(rasterWidth - region.y - region.height, rasterHeight - region.x - region.width,
+                        region.height, region.width);
+            case 8: // Rotate 90 degrees counterclockwise
+                return new Rectangle(rasterWidth - region.y - region.height, region.x, region.height, region.width);
+            default:
+                return region;
+        }
+    }
+
+    private byte[] writeImage(BufferedImage image, ObjectImageType imageType) throws IOException {
+        String formatName = imageType == ObjectImageType.JPEG ? "jpeg" : "png";
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(formatName).next();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            writer.setOutput(imageOutputStream);
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            if (imageType == ObjectImageType.JPEG) {
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                writeParam.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus.State;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus.Transition;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.exceptions.ClientException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker per {@link ImageSearchOperation} and Image Search instance: when too many of the recent calls to the Image Search API failed
+ * or were slow, the following calls are rejected immediately with an {@link UpstreamUnavailableException} instead of
+ * waiting for the read timeout.
+ * <p>
+ * After "imageSearchCircuitBreaker.waitDurationInOpenState" milliseconds, a few trial calls decide if the circuit
+ * breaker is closed again.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class ImageSearchCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageSearchCircuitBreaker.class);
+
+    @Value("${imageSearchCircuitBreaker.slidingWindowSize}")
+    private int slidingWindowSize;
+
+    @Value("${imageSearchCircuitBreaker.minimumNumberOfCalls}")
+    private int minimumNumberOfCalls;
+
+    @Value("${imageSearchCircuitBreaker.failureRateThreshold}")
+    private float failureRateThreshold;
+
+    @Value("${imageSearchCircuitBreaker.slowCallRateThreshold}")
+    private float slowCallRateThreshold;
+
+    @Value("${imageSearchCircuitBreaker.search.slowCallDuration}")
+    private long searchSlowCallDuration;
+
+    @Value("${imageSearchCircuitBreaker.register.slowCallDuration}")
+    private long registerSlowCallDuration;
+
+    @Value("${imageSearchCircuitBreaker.delete.slowCallDuration}")
+    private long deleteSlowCallDuration;
+
+    @Value("${imageSearchCircuitBreaker.reconcile.slowCallDuration}")
+    private long reconcileSlowCallDuration;
+
+    @Value("${imageSearchCircuitBreaker.waitDurationInOpenState}")
+    private long waitDurationInOpenState;
+
+    @Value("${imageSearchCircuitBreaker.permittedCallsInHalfOpenState}")
+    private int permittedCallsInHalfOpenState;
+
+    @Value("${imageSearchCircuitBreaker.transitionHistorySize}")
+    private int transitionHistorySize;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<ImageSearchOperation, Long> slowCallDurationByOperation = new EnumMap<>(ImageSearchOperation.class);
+    private final ConcurrentMap<BreakerKey, Breaker> breakerByKey = new ConcurrentHashMap<>();
+
+    public ImageSearchCircuitBreaker(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        slowCallDurationByOperation.put(ImageSearchOperation.SEARCH, searchSlowCallDuration);
+        slowCallDurationByOperation.put(ImageSearchOperation.REGISTER, registerSlowCallDuration);
+        slowCallDurationByOperation.put(ImageSearchOperation.DELETE, deleteSlowCallDuration);
+        slowCallDurationByOperation.put(ImageSearchOperation.RECONCILE, reconcileSlowCallDuration);
+        // CHECK requests must reach the Image Search API, they are used to validate a new configuration
+    }
+
+    private Breaker createBreaker(BreakerKey key) {
+        Breaker breaker = new Breaker(key.operation, key.instanceName,
+                TimeUnit.MILLISECONDS.toNanos(slowCallDurationByOperation.get(key.operation)));
+        Gauge.builder("imageSearch.circuitBreaker.state", breaker, b -> b.getState().ordinal())
+                .tag("operation", key.operation.name().toLowerCase())
+                .tag("instance", key.instanceName)
+                .description("State of the circuit breaker (0 = closed, 1 = open, 2 = half-open)")
+                .register(meterRegistry);
+        return breaker;
+    }
+
+    /**
+     * Start an asynchronous call to the Image Search API if the circuit breaker of the operation and instance allows
+     * it. The outcome of the call is recorded when its future is completed.
+     *
+     * @param operation    Operation executed by the call.
+     * @param instanceName Image Search instance called, each one has its own circuit breaker.
+     * @param call         Function that starts the call to the Image Search API.
+     * @return Future result of the call.
+     * @throws UpstreamUnavailableException If the circuit breaker is open.
+     */
+    public <T> CompletableFuture<T> executeAsync(ImageSearchOperation operation, String instanceName,
+                                                 Supplier<CompletableFuture<T>> call) {
+        if (!slowCallDurationByOperation.containsKey(operation)) {
+            return call.get();
+        }
+        Breaker breaker = breakerByKey.computeIfAbsent(new BreakerKey(operation, instanceName), this::createBreaker);
+        long permission = acquirePermission(breaker, operation, instanceName);
+
+        long startTime = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (UpstreamUnavailableException e) {
+            breaker.releasePermission(permission);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            breaker.onResult(permission, System.nanoTime() - startTime, true);
+            throw e;
+        }
+        // Note: the original future is returned so that cancelling it (e.g. after a timeout) still aborts the call
+        future.whenComplete((result, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            if (cause instanceof CancellationException) {
+                // Abandoned by the caller (e.g. after a timeout), not a failure but its duration still tells if it was slow
+                breaker.onResult(permission, System.nanoTime() - startTime, false);
+            } else if (cause instanceof UpstreamUnavailableException) {
+                // Rejected before reaching the Image Search API, this call tells nothing about its health
+                breaker.releasePermission(permission);
+            } else if (cause instanceof ClientException) {
+                breaker.onResult(permission, System.nanoTime() - startTime,
+                        ImageSearchErrors.isUpstreamFailure((ClientException) cause));
+            } else {
+                breaker.onResult(permission, System.nanoTime() - startTime, cause != null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return Permission of the call, to give back with its outcome.
+     */
+    private long acquirePermission(Breaker breaker, ImageSearchOperation operation, String instanceName) {
+        long permission = breaker.tryAcquirePermission();
+        if (permission < 0) {
+            throw new UpstreamUnavailableException("The Image Search instance " + instanceName + " is failing, " +
+                    operation.name().toLowerCase() + " requests are suspended, please retry later.",
+                    TimeUnit.NANOSECONDS.toSeconds(breaker.getRemainingWaitNanos()) + 1);
+        }
+        return permission;
+    }
+
+    /**
+     * @return Status of the circuit breakers.
+     */
+    public List<CircuitBreakerStatus> getStatuses() {
+        List<CircuitBreakerStatus> statuses = new ArrayList<>();
+        for (Breaker breaker : breakerByKey.values()) {
+            statuses.add(breaker.getStatus());
+        }
+        statuses.sort(Comparator.comparing(CircuitBreakerStatus::getOperation)
+                .thenComparing(CircuitBreakerStatus::getInstanceName));
+        return statuses;
+    }
+
+    /**
+     * Operation and instance protected by a circuit breaker.
+     */
+    private static final class BreakerKey {
+        private final ImageSearchOperation operation;
+        private final String instanceName;
+
+        BreakerKey(ImageSearchOperation operation, String instanceName) {
+            this.operation = operation;
+            this.instanceName = instanceName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            BreakerKey that = (BreakerKey) o;
+            return operation == that.operation && Objects.equals(instanceName, that.instanceName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, instanceName);
+        }
+    }
+
+    /**
+     * Circuit breaker of one operation, with a count-based sliding window.
+     * <p>
+     * Each state transition starts a new generation. A permission is the generation in which it has been granted, so
+     * that the outcome of a call started in a previous state (e.g. a slow call started before the circuit breaker
+     * opened, that completes during the half-open state) is not counted as a trial call.
+     */
+    private final class Breaker {
+        private static final byte FAILED = 1;
+        private static final byte SLOW = 2;
+
+        private final ImageSearchOperation operation;
+        private final String instanceName;
+        private final long slowCallDurationNanos;
+        private final byte[] outcomes = new byte[slidingWindowSize];
+        private final Deque<Transition> transitions = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private State state = State.CLOSED;
+        private int nextOutcomeIndex;
+        private int numberOfCalls;
+        private int numberOfFailedCalls;
+        private int numberOfSlowCalls;
+        private long openedTime;
+        private int remainingHalfOpenPermissions;
+        private long generation;
+
+        Breaker(ImageSearchOperation operation, String instanceName, long slowCallDurationNanos) {
+            this.operation = operation;
+            this.instanceName = instanceName;
+            this.slowCallDurationNanos = slowCallDurationNanos;
+        }
+
+        /**
+         * @return Permission (the current generation) if the call is permitted, or -1 if it is not.
+         */
+        long tryAcquirePermission() {
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    if (getRemainingWaitNanos() > 0) {
+                        return -1;
+                    }
+                    transitionTo(State.HALF_OPEN);
+                }
+
+                if (state == State.HALF_OPEN) {
+                    if (remainingHalfOpenPermissions <= 0) {
+                        return -1;
+                    }
+                    remainingHalfOpenPermissions--;
+                }
+                return generation;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return Remaining time in nanoseconds before calls are permitted again.
+         */
+        long getRemainingWaitNanos() {
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    return TimeUnit.MILLISECONDS.toNanos(waitDurationInOpenState) - (System.nanoTime() - openedTime);
+                }
+                // All the trial calls are in progress
+                return TimeUnit.MILLISECONDS.toNanos(waitDurationInOpenState);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void releasePermission(long permission) {
+            lock.lock();
+            try {
+                if (permission == generation && state == State.HALF_OPEN) {
+                    remainingHalfOpenPermissions++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onResult(long permission, long durationNanos, boolean failed) {
+            lock.lock();
+            try {
+                if (permission != generation) {
+                    return; // Call started in a previous state
+                }
+
+                recordOutcome((byte) ((failed ? FAILED : 0) | (durationNanos > slowCallDurationNanos ? SLOW : 0)));
+
+                if (state == State.HALF_OPEN) {
+                    if (numberOfCalls >= permittedCallsInHalfOpenState) {
+                        transitionTo(isFailureThresholdExceeded() ? State.OPEN : State.CLOSED);
+                    }
+                } else if (numberOfCalls >= minimumNumberOfCalls && isFailureThresholdExceeded()) {
+                    transitionTo(State.OPEN);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        State getState() {
+            lock.lock();
+            try {
+                return state;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        CircuitBreakerStatus getStatus() {
+            lock.lock();
+            try {
+                return new CircuitBreakerStatus(operation, instanceName, state, numberOfCalls, getFailureRate(), getSlowCallRate(),
+                        new ArrayList<>(transitions));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void recordOutcome(byte outcome) {
+            if (numberOfCalls == outcomes.length) {
+                byte evictedOutcome = outcomes[nextOutcomeIndex];
+                numberOfCalls--;
+                numberOfFailedCalls -= evictedOutcome & FAILED;
+                numberOfSlowCalls -= (evictedOutcome & SLOW) >> 1;
+            }
+            outcomes[nextOutcomeIndex] = outcome;
+            nextOutcomeIndex = (nextOutcomeIndex + 1) % outcomes.length;
+            numberOfCalls++;
+            numberOfFailedCalls += outcome & FAILED;
+            numberOfSlowCalls += (outcome & SLOW) >> 1;
+        }
+
+        private boolean isFailureThresholdExceeded() {
+            return getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold;
+        }
+
+        private float getFailureRate() {
+            return numberOfCalls == 0 ? 0 : numberOfFailedCalls * 100f / numberOfCalls;
+        }
+
+        private float getSlowCallRate() {
+            return numberOfCalls == 0 ? 0 : numberOfSlowCalls * 100f / numberOfCalls;
+        }
+
+        private void transitionTo(State newState) {
+            LOGGER.warn("Circuit breaker of the Image Search {} operation on {}: {} -> {} (failure rate = {}%, slow call rate = {}%).",
+                    operation, instanceName, state, newState, getFailureRate(), getSlowCallRate());
+            transitions.addLast(new Transition(state, newState, new Date()));
+            while (transitions.size() > transitionHistorySize) {
+                transitions.removeFirst();
+            }
+
+            state = newState;
+            generation++;
+            // Each state evaluates its own calls
+            nextOutcomeIndex = 0;
+            numberOfCalls = 0;
+            numberOfFailedCalls = 0;
+            numberOfSlowCalls = 0;
+            if (newState == State.OPEN) {
+                openedTime = System.nanoTime();
+            } else if (newState == State.HALF_OPEN) {
+                remainingHalfOpenPermissions = permittedCallsInHalfOpenState;
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.events.ConfigurationSavedEvent;
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.aliyuncs.DefaultAcsClient;
+import com.aliyuncs.IAcsClient;
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.http.HttpClientConfig;
+import com.aliyuncs.http.HttpClientType;
+import com.aliyuncs.profile.DefaultProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keep one long-lived Image Search client per effective configuration, so that requests can re-use pooled
+ * keep-alive connections instead of paying for a new profile, TCP connection and TLS handshake each time.
+ * <p>
+ * The registry is atomically replaced when the configuration is saved; clients of the previous generation are
+ * shut down once their in-flight requests had enough time to complete.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class ImageSearchClientRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageSearchClientRegistry.class);
+
+    @Value("${httpClient.defaultConnectTimeout}")
+    private long defaultConnectTimeout;
+
+    @Value("${httpClient.defaultReadTimeout}")
+    private long defaultReadTimeout;
+
+    @Value("${httpClient.maxConnections}")
+    private int maxConnections;
+
+    @Value("${httpClient.maxConnectionsPerHost}")
+    private int maxConnectionsPerHost;
+
+    @Value("${httpClient.maxIdleConnections}")
+    private int maxIdleConnections;
+
+    @Value("${httpClient.keepAliveDuration}")
+    private long keepAliveDuration;
+
+    @Value("${httpClient.retiredClientShutdownDelay}")
+    private long retiredClientShutdownDelay;
+
+    private final AtomicReference<ConcurrentMap<ClientKey, IAcsClient>> clientByKey =
+            new AtomicReference<>(new ConcurrentHashMap<>());
+    private final ScheduledExecutorService retiredClientCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-search-client-closer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Find or create the client that matches the given configuration.
+     *
+     * @param configuration Effective configuration.
+     * @return Shared client, must not be shut down by the caller.
+     */
+    public IAcsClient getClient(Configuration configuration) {
+        return clientByKey.get().computeIfAbsent(new ClientKey(configuration), key -> createClient(configuration));
+    }
+
+    /**
+     * Create a client that is not registered, for example to check a configuration that is not saved yet.
+     *
+     * @param configuration Configuration to use.
+     * @return New client that must be shut down by the caller.
+     */
+    public IAcsClient createClient(Configuration configuration) {
+        DefaultProfile profile = DefaultProfile.getProfile(
+                configuration.getRegionId(), configuration.getAccessKeyId(), configuration.getAccessKeySecret());
+        try {
+            DefaultProfile.addEndpoint(configuration.getRegionId(), configuration.getRegionId(), "ImageSearch", configuration.getImageSearchDomain());
+        } catch (ClientException e) {
+            throw new IllegalStateException("Unable to initialize the Image Search client: " + e.getMessage(), e);
+        }
+
+        HttpClientConfig httpClientConfig = HttpClientConfig.getDefault();
+        httpClientConfig.setClientType(HttpClientType.ApacheHttpClient);
+        httpClientConfig.setMaxRequests(maxConnections);
+        httpClientConfig.setMaxRequestsPerHost(maxConnectionsPerHost);
+        httpClientConfig.setMaxIdleConnections(maxIdleConnections);
+        httpClientConfig.setKeepAliveDurationMillis(keepAliveDuration);
+        httpClientConfig.setConnectionTimeoutMillis(defaultConnectTimeout);
+        httpClientConfig.setReadTimeoutMillis(defaultReadTimeout);
+        profile.setHttpClientConfig(httpClientConfig);
+
+        LOGGER.info("Create an Image Search client (regionId = {}, domain = {}, accessKeyId = {}).",
+                configuration.getRegionId(), configuration.getImageSearchDomain(), configuration.getAccessKeyId());
+        return new DefaultAcsClient(profile);
+    }
+
+    /**
+     * Replace all the registered clients by a new empty generation when the configuration changes.
+     */
+    @EventListener
+    public void onConfigurationSaved(ConfigurationSavedEvent event) {
+        ConcurrentMap<ClientKey, IAcsClient> retiredClients = clientByKey.getAndSet(new ConcurrentHashMap<>());
+        if (retiredClients.isEmpty()) {
+            return;
+        }
+
+        LOGGER.info("The configuration has changed, retire {} Image Search client(s).", retiredClients.size());
+        retiredClientCloser.schedule(
+                () -> retiredClients.values().forEach(this::shutdownQuietly),
+                retiredClientShutdownDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retiredClientCloser.shutdownNow();
+        clientByKey.getAndSet(new ConcurrentHashMap<>()).values().forEach(this::shutdownQuietly);
+    }
+
+    private void shutdownQuietly(IAcsClient client) {
+        try {
+            client.shutdown();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to shutdown an Image Search client: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Configuration attributes that define a client. The instance name is a request parameter, so instances in the
+     * same region share the same client.
+     */
+    private static final class ClientKey {
+        private final String regionId;
+        private final String accessKeyId;
+        private final String accessKeySecret;
+        private final String imageSearchDomain;
+
+        ClientKey(Configuration configuration) {
+            this.regionId = configuration.getRegionId();
+            this.accessKeyId = configuration.getAccessKeyId();
+            this.accessKeySecret = configuration.getAccessKeySecret();
+            this.imageSearchDomain = configuration.getImageSearchDomain();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ClientKey that = (ClientKey) o;
+            return Objects.equals(regionId, that.regionId) &&
+                    Objects.equals(accessKeyId, that.accessKeyId) &&
+                    Objects.equals(accessKeySecret, that.accessKeySecret) &&
+                    Objects.equals(imageSearchDomain, that.imageSearchDomain);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(regionId, accessKeyId, accessKeySecret, imageSearchDomain);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.exceptions.ClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead around the calls to the Image Search API: each {@link ImageSearchOperation} has its own bounded number
+ * of concurrent calls, so that a slow Image Search API cannot hold all the request threads.
+ * <p>
+ * The limits adapt to the observed latency (AIMD): a limit grows by one after a fast call that used it, and shrinks
+ * by {@code backoffRatio} after a slow or failed call. A limit shrinks at most once per congestion event: the calls
+ * that were already in progress when it shrank do not shrink it again. Calls above the limit are rejected immediately
+ * with an {@link UpstreamUnavailableException}.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class ImageSearchConcurrencyLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageSearchConcurrencyLimiter.class);
+
+    @Value("${imageSearchLimiter.search.initialLimit}")
+    private int searchInitialLimit;
+
+    @Value("${imageSearchLimiter.search.maxLimit}")
+    private int searchMaxLimit;
+
+    @Value("${imageSearchLimiter.search.latencyThreshold}")
+    private long searchLatencyThreshold;
+
+    @Value("${imageSearchLimiter.register.initialLimit}")
+    private int registerInitialLimit;
+
+    @Value("${imageSearchLimiter.register.maxLimit}")
+    private int registerMaxLimit;
+
+    @Value("${imageSearchLimiter.register.latencyThreshold}")
+    private long registerLatencyThreshold;
+
+    @Value("${imageSearchLimiter.delete.initialLimit}")
+    private int deleteInitialLimit;
+
+    @Value("${imageSearchLimiter.delete.maxLimit}")
+    private int deleteMaxLimit;
+
+    @Value("${imageSearchLimiter.delete.latencyThreshold}")
+    private long deleteLatencyThreshold;
+
+    @Value("${imageSearchLimiter.reconcile.initialLimit}")
+    private int reconcileInitialLimit;
+
+    @Value("${imageSearchLimiter.reconcile.maxLimit}")
+    private int reconcileMaxLimit;
+
+    @Value("${imageSearchLimiter.reconcile.latencyThreshold}")
+    private long reconcileLatencyThreshold;
+
+    @Value("${imageSearchLimiter.minLimit}")
+    private int minLimit;
+
+    @Value("${imageSearchLimiter.backoffRatio}")
+    private double backoffRatio;
+
+    @Value("${imageSearchLimiter.retryAfter}")
+    private long retryAfter;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<ImageSearchOperation, AdaptiveLimit> limitByOperation = new EnumMap<>(ImageSearchOperation.class);
+    private final Map<ImageSearchOperation, Counter> rejectionCounterByOperation = new EnumMap<>(ImageSearchOperation.class);
+
+    public ImageSearchConcurrencyLimiter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        registerLimit(ImageSearchOperation.SEARCH, searchInitialLimit, searchMaxLimit, searchLatencyThreshold);
+        registerLimit(ImageSearchOperation.REGISTER, registerInitialLimit, registerMaxLimit, registerLatencyThreshold);
+        registerLimit(ImageSearchOperation.DELETE, deleteInitialLimit, deleteMaxLimit, deleteLatencyThreshold);
+        registerLimit(ImageSearchOperation.RECONCILE, reconcileInitialLimit, reconcileMaxLimit, reconcileLatencyThreshold);
+        // CHECK requests are rare administrator actions sent with their own client, they are not limited
+    }
+
+    private void registerLimit(ImageSearchOperation operation, int initialLimit, int maxLimit, long latencyThreshold) {
+        AdaptiveLimit limit = new AdaptiveLimit(initialLimit, minLimit, maxLimit, backoffRatio,
+                TimeUnit.MILLISECONDS.toNanos(latencyThreshold));
+        limitByOperation.put(operation, limit);
+
+        String tagValue = operation.name().toLowerCase();
+        Gauge.builder("imageSearch.limiter.limit", limit, AdaptiveLimit::getLimit)
+                .tag("operation", tagValue)
+                .description("Maximum number of concurrent calls to the Image Search API")
+                .register(meterRegistry);
+        Gauge.builder("imageSearch.limiter.inFlight", limit, AdaptiveLimit::getInFlight)
+                .tag("operation", tagValue)
+                .description("Number of calls to the Image Search API in progress")
+                .register(meterRegistry);
+        rejectionCounterByOperation.put(operation, Counter.builder("imageSearch.limiter.rejections")
+                .tag("operation", tagValue)
+                .description("Calls to the Image Search API rejected because the limit was reached")
+                .register(meterRegistry));
+    }
+
+    /**
+     * Start an asynchronous call to the Image Search API if the limit of the operation allows it. The call is in
+     * progress until its future is completed.
+     *
+     * @param operation Operation executed by the call.
+     * @param call      Function that starts the call to the Image Search API.
+     * @return Future result of the call.
+     * @throws UpstreamUnavailableException If too many calls of the same operation are in progress.
+     */
+    public <T> CompletableFuture<T> executeAsync(ImageSearchOperation operation, Supplier<CompletableFuture<T>> call) {
+        AdaptiveLimit limit = limitByOperation.get(operation);
+        if (limit == null) {
+            return call.get();
+        }
+
+        long permit = acquire(operation, limit);
+
+        long startTime = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException | Error e) {
+            limit.release(permit, System.nanoTime() - startTime, true);
+            throw e;
+        }
+        // Note: the original future is returned so that cancelling it (e.g. after a timeout) still aborts the call
+        future.whenComplete((result, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            boolean overloaded = cause != null && !(cause instanceof CancellationException) &&
+                    (!(cause instanceof ClientException) || ImageSearchErrors.isUpstreamFailure((ClientException) cause));
+            limit.release(permit, System.nanoTime() - startTime, overloaded);
+        });
+        return future;
+    }
+
+    private long acquire(ImageSearchOperation operation, AdaptiveLimit limit) {
+        long permit = limit.tryAcquire();
+        if (permit < 0) {
+            rejectionCounterByOperation.get(operation).increment();
+            LOGGER.debug("Reject a {} call to the Image Search API: limit of {} concurrent calls reached.",
+                    operation, limit.getLimit());
+            throw new UpstreamUnavailableException(
+                    "Too many concurrent calls to the Image Search API, please retry later.", retryAfter);
+        }
+        return permit;
+    }
+
+    /**
+     * @return Current limit of the given operation, or -1 if it is not limited.
+     */
+    public int getLimit(ImageSearchOperation operation) {
+        AdaptiveLimit limit = limitByOperation.get(operation);
+        return limit == null ? -1 : limit.getLimit();
+    }
+
+    /**
+     * @return Number of calls of the given operation in progress, or -1 if it is not limited.
+     */
+    public int getInFlight(ImageSearchOperation operation) {
+        AdaptiveLimit limit = limitByOperation.get(operation);
+        return limit == null ? -1 : limit.getInFlight();
+    }
+
+    /**
+     * Concurrency limit with additive increase and multiplicative decrease.
+     */
+    static final class AdaptiveLimit {
+        private final int minLimit;
+        private final int maxLimit;
+        private final double backoffRatio;
+        private final long latencyThresholdNanos;
+        private final ReentrantLock lock = new ReentrantLock(); // Unlike synchronized, does not pin virtual threads
+        private double limit;
+        private int inFlight;
+        /**
+         * Number of times the limit has been decreased, so that calls started before the last decrease can be
+         * recognized.
+         */
+        private long nbDecreases;
+
+        AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdNanos) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.backoffRatio = backoffRatio;
+            this.latencyThresholdNanos = latencyThresholdNanos;
+            this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        }
+
+        /**
+         * @return Permit to give back to {@link #release(long, long, boolean)}, or -1 if the limit is reached.
+         */
+        long tryAcquire() {
+            lock.lock();
+            try {
+                if (inFlight >= (int) limit) {
+                    return -1;
+                }
+                inFlight++;
+                return nbDecreases;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(long permit, long latencyNanos, boolean overloaded) {
+            lock.lock();
+            try {
+                int usedLimit = inFlight;
+                inFlight--;
+
+                if (overloaded || latencyNanos > latencyThresholdNanos) {
+                    // The calls started before the last decrease suffered from the same congestion, that decrease
+                    // already accounts for them
+                    if (permit == nbDecreases) {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                        nbDecreases++;
+                    }
+                } else if (usedLimit * 2 >= limit) {
+                    // Grow only when the limit is actually used, otherwise it would grow without bound when idle
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getLimit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getInFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
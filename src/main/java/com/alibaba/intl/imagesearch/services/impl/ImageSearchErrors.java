@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.exceptions.ServerException;
+
+/**
+ * Classification of the errors returned by the Image Search API.
+ *
+ * @author Alibaba Cloud
+ */
+final class ImageSearchErrors {
+
+    private ImageSearchErrors() {
+    }
+
+    /**
+     * Server errors and network errors (the SDK reports them with the "SDK." prefix, e.g. "SDK.ServerUnreachable")
+     * indicate that the Image Search API is struggling, unlike errors caused by the request itself.
+     */
+    static boolean isUpstreamFailure(ClientException e) {
+        return e instanceof ServerException || (e.getErrCode() != null && e.getErrCode().startsWith("SDK."));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+
+/**
+ * Parameters of a search on one Image Search instance.
+ *
+ * @author Alibaba Cloud
+ */
+final class ImageSearchQuery {
+
+    private final byte[] imageData;
+    private final Boolean crop;
+    private final String region;
+    private final int num;
+
+    private ImageSearchQuery(byte[] imageData, Boolean crop, String region, int num) {
+        this.imageData = imageData;
+        this.crop = crop;
+        this.region = region;
+        this.num = num;
+    }
+
+    /**
+     * Search with an image already cropped and reduced locally.
+     */
+    static ImageSearchQuery ofCroppedImage(byte[] imageData, int num) {
+        return new ImageSearchQuery(imageData, false, null, num);
+    }
+
+    /**
+     * Search with the original image: the API crops the given region, or detects the object itself if it is null.
+     */
+    static ImageSearchQuery ofImage(byte[] imageData, ImageRegion objectRegion, int num) {
+        if (objectRegion == null) {
+            return new ImageSearchQuery(imageData, null, null, num);
+        }
+        return new ImageSearchQuery(imageData, true, objectRegion.getX() + "," +
+                (objectRegion.getWidth() + objectRegion.getX()) + "," + objectRegion.getY() +
+                "," + (objectRegion.getHeight() + objectRegion.getY()), num);
+    }
+
+    byte[] getImageData() {
+        return imageData;
+    }
+
+    /**
+     * @return true if the API must crop the image, false if it must not, null to let it detect the object.
+     */
+    Boolean getCrop() {
+        return crop;
+    }
+
+    /**
+     * @return Region to crop, formatted as "x1,x2,y1,y2", or null.
+     */
+    String getRegion() {
+        return region;
+    }
+
+    int getNum() {
+        return num;
+    }
+}
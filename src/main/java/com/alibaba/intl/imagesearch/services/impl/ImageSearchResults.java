@@ -0,0 +1,240 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.model.dto.QueryImage;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Conversion of the search results returned by the Image Search instances, whatever the transport used to call them.
+ *
+ * @author Alibaba Cloud
+ */
+final class ImageSearchResults {
+
+    /**
+     * Number of results requested to the instance that holds an item, to check that the item is registered.
+     * Note: the searches of the clients request and merge "searchWindow.size" results instead.
+     */
+    static final int SEARCH_RESULT_SIZE = 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageSearchResults.class);
+    private static final String PRIMARY_IMG = "primaryImg";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private ImageSearchResults() {
+    }
+
+    /**
+     * @return Prefix of the error messages of the given operation.
+     */
+    static String getErrorMessagePrefix(ImageSearchOperation operation) {
+        switch (operation) {
+            case REGISTER:
+                return "Unable to add a new item to the Image Search API: ";
+            case DELETE:
+                return "Unable to delete an item from the Image Search API: ";
+            default:
+                return "Unable to search items from the Image Search API: ";
+        }
+    }
+
+    /**
+     * Check that the Image Search API answered that the call was successful.
+     *
+     * @throws IllegalStateException If the call was not successful.
+     */
+    static void checkSuccess(ImageSearchOperation operation, Boolean success, String requestId, Object code, String message) {
+        if (success == null || !success) {
+            throw new IllegalStateException(getErrorMessagePrefix(operation) +
+                    " request ID = " + requestId +
+                    ", code = " + code +
+                    ", message = " + message);
+        }
+    }
+
+    /**
+     * Convert an item found by the Image Search API.
+     *
+     * @param sortExprValues Semicolon-separated values, the first one is the similarity score.
+     * @param custContent    JSON object registered with the item, may be null.
+     */
+    @SuppressWarnings("unchecked")
+    static ImageSearchAuction buildAuction(String itemId, String catId, String picName, String custContent, String sortExprValues) {
+        double score = 0;
+        String[] sortExprValuesArray = sortExprValues == null ? new String[0] : sortExprValues.split(";");
+        if (sortExprValuesArray.length > 0) {
+            score = Double.parseDouble(sortExprValuesArray[0]);
+        }
+
+        Map<String, String> custContentMap = new HashMap<>();
+        if (custContent != null) {
+            try {
+                custContentMap = OBJECT_MAPPER.readValue(custContent, HashMap.class);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to parse the custom content of the item {}: {}", itemId, e.getMessage());
+            }
+        }
+
+        ImageStoreType type = custContentMap.get("dbStore") != null ? ImageStoreType.DATABASE : ImageStoreType.OSS;
+        String primaryImg = picName;
+        if (type == ImageStoreType.OSS) {
+            String customPrimaryImg = custContentMap.get(PRIMARY_IMG);
+            if (StringUtils.isNoneEmpty(customPrimaryImg) && !customPrimaryImg.equalsIgnoreCase(picName)) {
+                primaryImg = customPrimaryImg;
+            }
+        }
+        return new ImageSearchAuction(itemId, catId, primaryImg, type, score, custContentMap);
+    }
+
+    /**
+     * Convert the region detected by the Image Search API.
+     *
+     * @param region Region formatted as "x1,x2,y1,y2", may be null.
+     * @return Region, or null if there is none.
+     */
+    static ImageRegion parseRegion(String region) {
+        if (region == null) {
+            return null;
+        }
+
+        int[] regionNum = Arrays.stream(region.split(",")).mapToInt(Integer::parseInt).toArray();
+        return new ImageRegion(
+                regionNum[0],
+                regionNum[2],
+                regionNum[1] - regionNum[0],
+                regionNum[3] - regionNum[2]);
+    }
+
+    /**
+     * Merge the results of the instances (shards) that answered, and fail only if none of them did.
+     *
+     * @param instanceNames      Names of the searched instances.
+     * @param queryImage         Image sent instead of the original one, or null.
+     * @param results            One result per instance, in the same order as their names.
+     * @param maxResults         Maximum number of merged auctions.
+     * @param errorMessagePrefix Prefix of the error message when no instance answered.
+     * @return Merged search response, partial if some instances did not answer.
+     */
+    static ImageSearchResponse merge(List<String> instanceNames, QueryImage queryImage,
+                                     List<ScatterGatherExecutor.Result<InstanceResult>> results, int maxResults,
+                                     String errorMessagePrefix) {
+        List<InstanceResult> instanceResults = new ArrayList<>();
+        Exception firstError = null;
+        for (int i = 0; i < results.size(); i++) {
+            ScatterGatherExecutor.Result<InstanceResult> result = results.get(i);
+            if (result.isSuccessful()) {
+                instanceResults.add(result.getValue());
+            } else {
+                LOGGER.warn("The Image Search instance {} did not answer: {}", instanceNames.get(i), result.getError().getMessage());
+                firstError = firstError == null ? result.getError() : firstError;
+            }
+        }
+        if (instanceResults.isEmpty()) {
+            if (firstError instanceof RuntimeException) {
+                throw (RuntimeException) firstError;
+            }
+            throw new IllegalStateException(errorMessagePrefix + firstError.getMessage(), firstError);
+        }
+
+        // Convert the raw results to JSON
+        String rawImageSearchResponseJson;
+        List<Object> rawResponses = instanceResults.stream().map(InstanceResult::getRawResponse).collect(Collectors.toList());
+        try {
+            rawImageSearchResponseJson = OBJECT_MAPPER.writerWithDefaultPrettyPrinter()
+                    .writeValueAsString(rawResponses.size() == 1 ? rawResponses.get(0) : rawResponses);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Unable to convert the search response into JSON: " + e.getMessage(), e);
+            rawImageSearchResponseJson = "";
+        }
+
+        ImageRegion responseRegion = null;
+        for (int i = 0; i < instanceResults.size() && responseRegion == null; i++) {
+            responseRegion = instanceResults.get(i).getRegion();
+        }
+        if (queryImage != null) {
+            responseRegion = responseRegion == null ? queryImage.getRegion() : queryImage.toOriginalRegion(responseRegion);
+        }
+
+        // Merge the top results of each instance, the scores come from the same model so they can be compared. An item
+        // may be found in two instances after the list of instances changed: only its best result is kept.
+        Set<String> itemIds = new HashSet<>();
+        List<ImageSearchAuction> imageSearchAuctions = instanceResults.stream()
+                .flatMap(instanceResult -> instanceResult.getAuctions().stream())
+                .sorted(Comparator.comparingDouble(ImageSearchAuction::getSimilarityScore).reversed())
+                .filter(auction -> itemIds.add(auction.getItemId()))
+                .limit(maxResults)
+                .collect(Collectors.toList());
+
+        ImageSearchResponse imageSearchResponse = new ImageSearchResponse(
+                imageSearchAuctions,
+                rawImageSearchResponseJson,
+                responseRegion);
+        imageSearchResponse.setPartial(instanceResults.size() < results.size());
+        return imageSearchResponse;
+    }
+
+    /**
+     * Search result of one instance.
+     */
+    static final class InstanceResult {
+        private final Object rawResponse;
+        private final List<ImageSearchAuction> auctions;
+        private final ImageRegion region;
+
+        /**
+         * @param rawResponse Response as returned by the transport, converted to JSON for debugging.
+         * @param auctions    Found items.
+         * @param region      Region detected in the query image, or null.
+         */
+        InstanceResult(Object rawResponse, List<ImageSearchAuction> auctions, ImageRegion region) {
+            this.rawResponse = rawResponse;
+            this.auctions = auctions;
+            this.region = region;
+        }
+
+        Object getRawResponse() {
+            return rawResponse;
+        }
+
+        List<ImageSearchAuction> getAuctions() {
+            return auctions;
+        }
+
+        ImageRegion getRegion() {
+            return region;
+        }
+    }
+}
@@ -15,22 +15,20 @@
 package com.alibaba.intl.imagesearch.services.impl;
 
 import com.alibaba.intl.imagesearch.exceptions.InvalidConfigurationException;
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
 import com.alibaba.intl.imagesearch.model.Configuration;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus;
 import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
 import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
 import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
-import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.model.dto.QueryImage;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
 import com.alibaba.intl.imagesearch.services.ConfigurationService;
+import com.alibaba.intl.imagesearch.services.ImageProcessingService;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
 import com.alibaba.intl.imagesearch.services.ImageSearchService;
-import com.aliyuncs.DefaultAcsClient;
-import com.aliyuncs.IAcsClient;
 import com.aliyuncs.exceptions.ClientException;
-import com.aliyuncs.imagesearch.model.v20180611.*;
-import com.aliyuncs.profile.DefaultProfile;
-import com.aliyuncs.profile.IClientProfile;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -38,18 +36,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 /**
  * Default implementation of {@link ImageSearchService}.
+ * <p>
+ * The calls are sent through the {@link ImageSearchTransport} selected by the "imageSearch.transport" property.
+ * Searches are hedged and gathered without holding a thread per call.
  *
  * @author Alibaba Cloud
  */
@@ -58,23 +61,40 @@ public class ImageSearchServiceImpl implements ImageSearchService {
 
     private static final String ERROR_MESSAGE_PREFIX = "Unable to search items from the Image Search API: ";
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageSearchServiceImpl.class);
-    private static final String PRIMARY_IMG = "primaryImg";
-
-    @Value("${httpClient.defaultConnectTimeout}")
-    private String defaultConnectTimeout;
-
-    @Value("${httpClient.defaultReadTimeout}")
-    private String defaultReadTimeout;
 
     @Value("classpath:samples/2a5ddd8f-69fb-434c-b285-27ab57ea555d.jpg")
     private Resource imageForConfigurationCheckResource;
 
+    @Value("${searchWindow.size}")
+    private int searchWindowSize;
+
     private final ConfigurationService configurationService;
+    private final ImageSearchTransport imageSearchTransport;
+    private final ImageSearchConcurrencyLimiter imageSearchConcurrencyLimiter;
+    private final ImageSearchCircuitBreaker imageSearchCircuitBreaker;
+    private final HedgedRequestExecutor hedgedRequestExecutor;
+    private final ScatterGatherExecutor scatterGatherExecutor;
+    private final ImageProcessingService imageProcessingService;
+    private final SearchResultCache searchResultCache;
+    private final SingleFlight<String, ImageSearchResponse> searchSingleFlight = new SingleFlight<>();
     private byte[] imageForConfigurationCheckData;
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public ImageSearchServiceImpl(ConfigurationService configurationService) {
+    public ImageSearchServiceImpl(ConfigurationService configurationService,
+                                  ImageSearchTransport imageSearchTransport,
+                                  ImageSearchConcurrencyLimiter imageSearchConcurrencyLimiter,
+                                  ImageSearchCircuitBreaker imageSearchCircuitBreaker,
+                                  HedgedRequestExecutor hedgedRequestExecutor,
+                                  ScatterGatherExecutor scatterGatherExecutor,
+                                  ImageProcessingService imageProcessingService,
+                                  SearchResultCache searchResultCache) {
         this.configurationService = configurationService;
+        this.imageSearchTransport = imageSearchTransport;
+        this.imageSearchConcurrencyLimiter = imageSearchConcurrencyLimiter;
+        this.imageSearchCircuitBreaker = imageSearchCircuitBreaker;
+        this.hedgedRequestExecutor = hedgedRequestExecutor;
+        this.scatterGatherExecutor = scatterGatherExecutor;
+        this.imageProcessingService = imageProcessingService;
+        this.searchResultCache = searchResultCache;
     }
 
     @PostConstruct
@@ -88,206 +108,290 @@ public class ImageSearchServiceImpl implements ImageSearchService {
     public void register(byte[] imageData, ObjectImageType imageType, String uuid) {
         Configuration configuration = configurationService.load();
 
-        // Prepare the request
-        AddItemRequest request = new AddItemRequest();
-        request.setInstanceName(configuration.getImageSearchInstanceName());
-        request.setItemId(uuid);
-        if (configuration.getImageSearchNamespace() != null) {
-            request.setStrAttr(configuration.getImageSearchNamespace()); // Allow us to re-use the same Image Search instance for several environments
-        }
-        request.setCustContent("{\"dbStore\": true}");
-        request.addPicture(uuid + "." + imageType.getExtension(), imageData);
-        if (!request.buildPostContent()) {
-            throw new IllegalStateException("Unable to build the request to add an item to the Image Search API.");
-        }
-
-        // Send the request
-        IAcsClient isClient = getImageSearchClient(configuration);
-        AddItemResponse response;
+        // Add the item into the instance that holds it
+        String instanceName = ImageSearchShards.selectInstanceName(
+                ImageSearchShards.parseInstanceNames(configuration.getImageSearchInstanceName()), uuid);
         try {
-            response = isClient.getAcsResponse(request);
+            await(send(ImageSearchOperation.REGISTER, instanceName, () -> imageSearchTransport.addItem(
+                    configuration, instanceName, uuid, uuid + "." + imageType.getExtension(), imageData)));
         } catch (ClientException e) {
             throw new IllegalStateException("Unable to add a new item to the Image Search API: " + e.getMessage(), e);
         }
-
-        // Check the result
-        if (response.getSuccess() == null || !response.getSuccess()) {
-            throw new IllegalStateException("Unable to add a new item to the Image Search API: " +
-                    " request ID = " + response.getRequestId() +
-                    ", code = " + response.getCode() +
-                    ", message = " + response.getMessage());
-        }
     }
 
     @Override
     public void unregister(String uuid) {
         Configuration configuration = configurationService.load();
 
-        DeleteItemRequest request = new DeleteItemRequest();
-        request.setInstanceName(configuration.getImageSearchInstanceName());
-        request.setItemId(uuid);
-
-        if (!request.buildPostContent()) {
-            throw new IllegalStateException("Unable to build the request to delete an item from the Image Search API.");
+        // Delete the item from every instance, because it may still be in the instance that held it before the list of
+        // instances changed (the deletion is idempotent)
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (String instanceName : ImageSearchShards.parseInstanceNames(configuration.getImageSearchInstanceName())) {
+            deletions.add(send(ImageSearchOperation.DELETE, instanceName,
+                    () -> imageSearchTransport.deleteItem(configuration, instanceName, uuid)));
         }
-
-        IAcsClient isClient = getImageSearchClient(configuration);
-        DeleteItemResponse response;
         try {
-            response = isClient.getAcsResponse(request);
+            for (CompletableFuture<Void> deletion : deletions) {
+                await(deletion);
+            }
         } catch (ClientException e) {
             throw new IllegalStateException("Unable to delete an item from the Image Search API: " + e.getMessage(), e);
         }
+    }
 
-        // Check the result
-        if (response.getSuccess() == null || !response.getSuccess()) {
-            throw new IllegalStateException("Unable to delete an item from the Image Search API: " +
-                    " request ID = " + response.getRequestId() +
-                    ", code = " + response.getCode() +
-                    ", message = " + response.getMessage());
-        }
+    @Override
+    public CompletableFuture<ImageSearchResponse> findAllBySimilarImageAsync(byte[] imageData, ImageRegion objectRegion) {
+        Configuration configuration = configurationService.load();
+
+        // Identical searches received at the same time (e.g. the same promotional image) share a single execution.
+        // If the object region is null, the API detects the object and crops the image itself.
+        String searchKey = buildSearchKey(configuration, imageData, objectRegion);
+        return searchSingleFlight.executeAsync(searchKey, () -> prepareQueryImageAsync(imageData, objectRegion)
+                .thenCompose(queryImage -> searchCachedAsync(configuration, imageData, objectRegion, queryImage)));
     }
 
     @Override
-    public ImageSearchResponse findAllBySimilarImage(byte[] imageData, ImageRegion objectRegion) {
+    public CompletableFuture<ImageSearchResponse> findAllBySimilarImageAsync(ReducedImage image, ImageRegion objectRegion) {
         Configuration configuration = configurationService.load();
 
-        SearchItemRequest request = new SearchItemRequest();
-        request.setInstanceName(configuration.getImageSearchInstanceName());
-        request.setStart(0);
-        request.setNum(20);
-        request.setSearchPicture(imageData);
+        // Cropping the reduced image is cheap, the searches of the same region are identified by the cropped image
+        return imageProcessingService.cropAsync(image, objectRegion).thenCompose(queryImage -> {
+            String searchKey = buildSearchKey(configuration, queryImage.getImageData(), objectRegion);
+            return searchSingleFlight.executeAsync(searchKey, () ->
+                    searchCachedAsync(configuration, queryImage.getImageData(), objectRegion, queryImage));
+        });
+    }
 
-        if (configuration.getImageSearchNamespace() != null) {
-            request.setFilterClause("str_attr=\"" + configuration.getImageSearchNamespace() + "\""); // Allow us to share the same instance for multiple environments
+    private CompletableFuture<ImageSearchResponse> searchCachedAsync(Configuration configuration, byte[] imageData,
+                                                                     ImageRegion objectRegion, QueryImage queryImage) {
+        byte[] searchedImageData = queryImage == null ? imageData : queryImage.getImageData();
+        return buildSearchResultCacheKeyAsync(configuration, searchedImageData, objectRegion).thenCompose(cacheKey -> {
+            if (cacheKey == null) {
+                return searchAsync(configuration, imageData, objectRegion, queryImage);
+            }
+            return searchResultCache.getAsync(cacheKey, () -> searchAsync(configuration, imageData, objectRegion, queryImage));
+        });
+    }
+
+    private static String buildSearchKey(Configuration configuration, byte[] imageData, ImageRegion objectRegion) {
+        return DigestUtils.md5DigestAsHex(imageData) + "|" + formatRegion(objectRegion) +
+                "|" + configuration.getImageSearchInstanceName() +
+                "|" + configuration.getImageSearchNamespace() +
+                "|" + configuration.getVersion();
+    }
+
+    private CompletableFuture<ImageSearchResponse> searchAsync(Configuration configuration, byte[] imageData,
+                                                               ImageRegion objectRegion, QueryImage queryImage) {
+        List<String> instanceNames = ImageSearchShards.parseInstanceNames(configuration.getImageSearchInstanceName());
+        List<CompletableFuture<ImageSearchResults.InstanceResult>> shardSearches =
+                startShardSearches(configuration, instanceNames, imageData, objectRegion, queryImage);
+        return scatterGatherExecutor.gatherAsync(shardSearches).thenApply(instanceResults ->
+                ImageSearchResults.merge(instanceNames, queryImage, instanceResults, searchWindowSize, ERROR_MESSAGE_PREFIX));
+    }
+
+    /**
+     * Start the search of all the instances (shards), each one hedged by its secondary instance if there is one.
+     */
+    private List<CompletableFuture<ImageSearchResults.InstanceResult>> startShardSearches(Configuration configuration, List<String> instanceNames,
+                                                                          byte[] imageData, ImageRegion objectRegion, QueryImage queryImage) {
+        Configuration secondaryConfiguration = getSecondaryConfiguration(configuration);
+        List<String> secondaryInstanceNames = getSecondaryInstanceNames(secondaryConfiguration, instanceNames);
+        ImageSearchQuery query = buildSearchQuery(imageData, objectRegion, queryImage);
+
+        List<CompletableFuture<ImageSearchResults.InstanceResult>> shardSearches = new ArrayList<>();
+        for (int i = 0; i < instanceNames.size(); i++) {
+            String instanceName = instanceNames.get(i);
+            String secondaryInstanceName = secondaryInstanceNames == null ? null : secondaryInstanceNames.get(i);
+            shardSearches.add(hedgedRequestExecutor.executeAsync(
+                    () -> searchInstance(configuration, instanceName, query, true),
+                    secondaryInstanceName == null ? null :
+                            () -> searchInstance(secondaryConfiguration, secondaryInstanceName, query, false)));
         }
-        //If the object region is null then do crop search.
-        if (objectRegion != null) {
-            request.setCrop(true);
-            request.setRegion(objectRegion.getX() + "," +
-                    (objectRegion.getWidth() + objectRegion.getX()) + "," + objectRegion.getY() +
-                    "," + (objectRegion.getHeight() + objectRegion.getY()));
+        return shardSearches;
+    }
+
+    private ImageSearchQuery buildSearchQuery(byte[] imageData, ImageRegion objectRegion, QueryImage queryImage) {
+        if (queryImage == null) {
+            return ImageSearchQuery.ofImage(imageData, objectRegion, searchWindowSize);
         }
+        // If the region has already been cropped, send only this part, else let the API detect the object in the
+        // reduced image
+        return objectRegion != null
+                ? ImageSearchQuery.ofCroppedImage(queryImage.getImageData(), searchWindowSize)
+                : ImageSearchQuery.ofImage(queryImage.getImageData(), null, searchWindowSize);
+    }
 
-        if (!request.buildPostContent()) {
-            throw new IllegalStateException("Unable to build the request to search items from the Image Search API.");
+    private CompletableFuture<ImageSearchResults.InstanceResult> searchInstance(Configuration configuration, String instanceName,
+                                                                                ImageSearchQuery query, boolean primary) {
+        if (primary) {
+            return send(ImageSearchOperation.SEARCH, instanceName,
+                    () -> imageSearchTransport.searchItem(configuration, instanceName, query, ImageSearchOperation.SEARCH));
         }
 
-        IAcsClient client = getImageSearchClient(configuration);
-        SearchItemResponse response;
-        try {
-            response = client.getAcsResponse(request);
-        } catch (ClientException e) {
-            throw new IllegalStateException(ERROR_MESSAGE_PREFIX + e.getMessage(), e);
+        // Failures of the secondary instance must not open the circuit breaker of the primary one
+        return imageSearchConcurrencyLimiter.executeAsync(ImageSearchOperation.SEARCH,
+                () -> imageSearchTransport.searchItem(configuration, instanceName, query, ImageSearchOperation.SEARCH));
+    }
+
+    /**
+     * @return Secondary instance of each primary instance, or null if there is none (or if their number differ).
+     */
+    private static List<String> getSecondaryInstanceNames(Configuration secondaryConfiguration, List<String> instanceNames) {
+        if (secondaryConfiguration == null) {
+            return null;
         }
+        List<String> secondaryInstanceNames =
+                ImageSearchShards.parseInstanceNames(secondaryConfiguration.getImageSearchInstanceName());
+        return secondaryInstanceNames.size() == instanceNames.size() ? secondaryInstanceNames : null;
+    }
 
-        // Check the result
-        if (response.getSuccess() == null || !response.getSuccess()) {
-            throw new IllegalStateException(ERROR_MESSAGE_PREFIX +
-                    " request ID = " + response.getRequestId() +
-                    ", code = " + response.getCode() +
-                    ", message = " + response.getMessage());
+    /**
+     * @return Configuration of the secondary Image Search instances, or null if there is none.
+     */
+    private static Configuration getSecondaryConfiguration(Configuration configuration) {
+        if (StringUtils.isBlank(configuration.getSecondaryImageSearchInstanceName())) {
+            return null;
         }
 
-        // Convert the raw result to JSON
-        String rawImageSearchResponseJson;
-        try {
-            rawImageSearchResponseJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response);
-        } catch (JsonProcessingException e) {
-            LOGGER.warn("Unable to convert the SearchItemResponse into JSON: " + e.getMessage(), e);
-            rawImageSearchResponseJson = "";
+        Configuration secondaryConfiguration = new Configuration(configuration);
+        secondaryConfiguration.setImageSearchInstanceName(configuration.getSecondaryImageSearchInstanceName());
+        if (StringUtils.isNotBlank(configuration.getSecondaryRegionId())) {
+            secondaryConfiguration.setRegionId(configuration.getSecondaryRegionId());
+        }
+        if (StringUtils.isNotBlank(configuration.getSecondaryImageSearchDomain())) {
+            secondaryConfiguration.setImageSearchDomain(configuration.getSecondaryImageSearchDomain());
         }
+        return secondaryConfiguration;
+    }
 
-        return new ImageSearchResponse(
-                buildImageSearchAuctions(response),
-                rawImageSearchResponseJson,
-                obtainImageRegion(response));
+    /**
+     * Send a request through the circuit breaker and the concurrency limiter of its operation.
+     */
+    private <T> CompletableFuture<T> send(ImageSearchOperation operation, String instanceName,
+                                          Supplier<CompletableFuture<T>> call) {
+        return imageSearchCircuitBreaker.executeAsync(operation, instanceName, () ->
+                imageSearchConcurrencyLimiter.executeAsync(operation, call));
     }
 
-    private ImageRegion obtainImageRegion(SearchItemResponse response) {
-        ImageRegion imageRegion = null;
-
-        String regionStr = response.getPicInfo().getRegion();
-        if (regionStr != null) {
-            int[] regionNum = Arrays.stream(regionStr.split(",")).mapToInt(Integer::parseInt).toArray();
-            imageRegion = new ImageRegion(
-                    regionNum[0],
-                    regionNum[2],
-                    regionNum[1] - regionNum[0],
-                    regionNum[3] - regionNum[2]);
+    /**
+     * Wait for a call sent through the transport.
+     *
+     * @throws ClientException If the Image Search API cannot be reached or returns an error.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws ClientException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the Image Search API.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ClientException) {
+                throw (ClientException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
         }
-        return imageRegion;
     }
 
-    private List<ImageSearchAuction> buildImageSearchAuctions(SearchItemResponse response) {
-        return response.getAuctions().stream()
-                .map(auction -> {
-                    double score = 0;
-                    String[] sortExprValues = auction.getSortExprValues().split(";");
-                    if (sortExprValues.length > 0) {
-                        score = Double.parseDouble(sortExprValues[0]);
-                    }
-
-                    Map<String, String> custContent = new HashMap<>();
-                    if (auction.getCustContent() != null) {
-                        try {
-                            ObjectMapper objectMapper = new ObjectMapper();
-                            custContent = objectMapper.readValue(auction.getCustContent(), HashMap.class);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-
-                    ImageStoreType type = custContent.get("dbStore") != null ? ImageStoreType.DATABASE : ImageStoreType.OSS;
-                    return new ImageSearchAuction(auction.getItemId(), auction.getCatId(),
-                            getPrimaryImgOfTheAuction(auction, type, custContent), type, score, custContent);
-                })
-                .collect(Collectors.toList());
+    /**
+     * Identify a search by the perceptual hash of the searched image, so that near-identical images (re-uploaded or
+     * re-encoded) share the same results.
+     *
+     * @return Future cache key, or null if the image cannot be hashed.
+     */
+    private CompletableFuture<String> buildSearchResultCacheKeyAsync(Configuration configuration, byte[] searchedImageData,
+                                                                     ImageRegion objectRegion) {
+        return imageProcessingService.computePerceptualHashAsync(searchedImageData).handle((perceptualHash, throwable) -> {
+            if (throwable != null) {
+                LOGGER.debug("Unable to compute the perceptual hash of the query image: {}", unwrap(throwable).getMessage());
+                return null;
+            }
+            return Long.toHexString(perceptualHash) + "|" + formatRegion(objectRegion) +
+                    "|" + configuration.getImageSearchInstanceName() +
+                    "|" + configuration.getImageSearchNamespace() +
+                    "|" + configuration.getVersion();
+        });
+    }
+
+    private static String formatRegion(ImageRegion objectRegion) {
+        return objectRegion == null ? "-" : objectRegion.getX() + "," + objectRegion.getY() + "," +
+                objectRegion.getWidth() + "," + objectRegion.getHeight();
     }
 
-    private String getPrimaryImgOfTheAuction(SearchItemResponse.Auction auction, ImageStoreType type, Map<String, String> custContent) {
-        if (type == ImageStoreType.OSS) {
-            String primaryImg = custContent.get(PRIMARY_IMG);
-            if (StringUtils.isNoneEmpty(primaryImg) && !primaryImg.equalsIgnoreCase(auction.getPicName())) {
-                return primaryImg;
+    /**
+     * Crop and reduce the image locally, so that a small image is uploaded instead of the original one.
+     *
+     * @return Future prepared image, or null if the API must crop the original image itself.
+     */
+    private CompletableFuture<QueryImage> prepareQueryImageAsync(byte[] imageData, ImageRegion objectRegion) {
+        if (objectRegion == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return imageProcessingService.cropAndReduceAsync(imageData, objectRegion).handle((queryImage, throwable) -> {
+            Throwable cause = unwrap(throwable);
+            if (cause == null) {
+                return queryImage;
+            }
+            if (cause instanceof IllegalArgumentException || cause instanceof UpstreamUnavailableException) {
+                LOGGER.warn("Unable to crop the query image locally, let the Image Search API do it: {}", cause.getMessage());
+                return null;
             }
+            throw new CompletionException(cause);
+        });
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    @Override
+    public List<ImageSearchAuction> findAllInInstanceOf(byte[] imageData, String uuid) {
+        Configuration configuration = configurationService.load();
+        String instanceName = ImageSearchShards.selectInstanceName(
+                ImageSearchShards.parseInstanceNames(configuration.getImageSearchInstanceName()), uuid);
+        ImageSearchQuery query = ImageSearchQuery.ofImage(imageData, null, ImageSearchResults.SEARCH_RESULT_SIZE);
+        try {
+            return await(send(ImageSearchOperation.RECONCILE, instanceName, () -> imageSearchTransport.searchItem(
+                    configuration, instanceName, query, ImageSearchOperation.RECONCILE))).getAuctions();
+        } catch (ClientException e) {
+            throw new IllegalStateException(ERROR_MESSAGE_PREFIX + e.getMessage(), e);
         }
-        return auction.getPicName();
+    }
+
+    @Override
+    public List<CircuitBreakerStatus> getCircuitBreakerStatuses() {
+        return imageSearchCircuitBreaker.getStatuses();
     }
 
     @Override
     public void checkImageSearchConfiguration(Configuration configuration) throws InvalidConfigurationException {
-        SearchItemRequest request = new SearchItemRequest();
-        request.setInstanceName(configuration.getImageSearchInstanceName());
-        request.setStart(0);
-        request.setNum(1);
-        request.setSearchPicture(imageForConfigurationCheckData);
-        if (configuration.getImageSearchNamespace() != null) {
-            request.setFilterClause("str_attr=\"" + configuration.getImageSearchNamespace() + "\""); // Allow us to share the same instance for multiple environments
-        }
-        if (!request.buildPostContent()) {
-            throw new InvalidConfigurationException("Unable to build the request to search items from the Image Search API.");
+        for (String instanceName : ImageSearchShards.parseInstanceNames(configuration.getImageSearchInstanceName())) {
+            checkImageSearchInstance(configuration, instanceName, ERROR_MESSAGE_PREFIX);
         }
 
-        try {
-            IAcsClient client = getImageSearchClient(configuration);
-            client.getAcsResponse(request);
-        } catch (ClientException | IllegalStateException e) {
-            throw new InvalidConfigurationException(ERROR_MESSAGE_PREFIX + e.getMessage(), e);
+        Configuration secondaryConfiguration = getSecondaryConfiguration(configuration);
+        if (secondaryConfiguration != null) {
+            for (String instanceName : ImageSearchShards.parseInstanceNames(secondaryConfiguration.getImageSearchInstanceName())) {
+                checkImageSearchInstance(secondaryConfiguration, instanceName, "Unable to search items from the secondary Image Search instance: ");
+            }
         }
     }
 
-    private IAcsClient getImageSearchClient(Configuration configuration) {
-        System.setProperty("sun.net.client.defaultConnectTimeout", defaultConnectTimeout);
-        System.setProperty("sun.net.client.defaultReadTimeout", defaultReadTimeout);
-
-        IClientProfile profile = DefaultProfile.getProfile(configuration.getRegionId(), configuration.getAccessKeyId(), configuration.getAccessKeySecret());
+    private void checkImageSearchInstance(Configuration configuration, String instanceName, String errorMessagePrefix)
+            throws InvalidConfigurationException {
+        // Not sent through the circuit breaker because the configuration to check is not saved yet
+        ImageSearchQuery query = ImageSearchQuery.ofImage(imageForConfigurationCheckData, null, 1);
         try {
-            DefaultProfile.addEndpoint(configuration.getRegionId(), configuration.getRegionId(), "ImageSearch", configuration.getImageSearchDomain());
-        } catch (ClientException e) {
-            throw new IllegalStateException("Unable to initialize the Image Search client: " + e.getMessage(), e);
+            await(imageSearchTransport.searchItem(configuration, instanceName, query, ImageSearchOperation.CHECK));
+        } catch (ClientException | IllegalStateException e) {
+            throw new InvalidConfigurationException(errorMessagePrefix + e.getMessage(), e);
         }
-
-        return new DefaultAcsClient(profile);
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Distribution of the items across several Image Search instances (shards), configured as a comma-separated list of
+ * instance names.
+ * <p>
+ * Items are assigned with rendezvous hashing: adding or removing an instance only moves the items of this instance,
+ * the other ones stay where they are.
+ * <p>
+ * Changing the list of instances requires a re-synchronization of the moved items: until the {@link CatalogReconciler}
+ * registers them again in their new instance, they are only found in their old one. The copies left in the old
+ * instance are harmless: deletions are sent to every instance, and duplicated items are removed from the merged
+ * search results.
+ *
+ * @author Alibaba Cloud
+ */
+final class ImageSearchShards {
+
+    private ImageSearchShards() {
+    }
+
+    /**
+     * @param instanceNames Comma-separated instance names.
+     * @return Instance names, in the configured order.
+     */
+    static List<String> parseInstanceNames(String instanceNames) {
+        if (StringUtils.isBlank(instanceNames)) {
+            return Collections.emptyList();
+        }
+
+        List<String> names = new ArrayList<>();
+        for (String name : instanceNames.split(",")) {
+            if (StringUtils.isNotBlank(name)) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param instanceNames Instance names.
+     * @param uuid          Item unique identifier.
+     * @return Name of the instance that holds the item.
+     */
+    static String selectInstanceName(List<String> instanceNames, String uuid) {
+        if (instanceNames.size() == 1) {
+            return instanceNames.get(0);
+        }
+
+        String selectedName = null;
+        long highestWeight = Long.MIN_VALUE;
+        for (String name : instanceNames) {
+            long weight = computeWeight(name, uuid);
+            if (selectedName == null || weight > highestWeight) {
+                selectedName = name;
+                highestWeight = weight;
+            }
+        }
+        return selectedName;
+    }
+
+    private static long computeWeight(String instanceName, String uuid) {
+        // Note: String.hashCode() is too weak here, similar UUIDs would end up in the same instance
+        byte[] digest = DigestUtils.md5Digest((instanceName + "|" + uuid).getBytes(StandardCharsets.UTF_8));
+        long weight = 0;
+        for (int i = 0; i < 8; i++) {
+            weight = (weight << 8) | (digest[i] & 0xFF);
+        }
+        return weight;
+    }
+}
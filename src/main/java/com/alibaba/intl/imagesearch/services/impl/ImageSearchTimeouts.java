@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.AcsRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timeout budgets of the requests sent to the Image Search API, per {@link ImageSearchOperation}.
+ * <p>
+ * Budgets are set on each request, so that a slow registration of a large image never shares the timeout of
+ * an interactive search.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class ImageSearchTimeouts {
+
+    @Value("${httpClient.search.connectTimeout}")
+    private int searchConnectTimeout;
+
+    @Value("${httpClient.search.readTimeout}")
+    private int searchReadTimeout;
+
+    @Value("${httpClient.register.connectTimeout}")
+    private int registerConnectTimeout;
+
+    @Value("${httpClient.register.readTimeout}")
+    private int registerReadTimeout;
+
+    @Value("${httpClient.delete.connectTimeout}")
+    private int deleteConnectTimeout;
+
+    @Value("${httpClient.delete.readTimeout}")
+    private int deleteReadTimeout;
+
+    @Value("${httpClient.check.connectTimeout}")
+    private int checkConnectTimeout;
+
+    @Value("${httpClient.check.readTimeout}")
+    private int checkReadTimeout;
+
+    /**
+     * Set the timeouts of the given operation on the request.
+     *
+     * @param request   Request to send to the Image Search API.
+     * @param operation Operation executed by the request.
+     */
+    public void apply(AcsRequest<?> request, ImageSearchOperation operation) {
+        request.setConnectTimeout(getConnectTimeout(operation));
+        request.setReadTimeout(getReadTimeout(operation));
+    }
+
+    /**
+     * @return Connection timeout in milliseconds.
+     */
+    public int getConnectTimeout(ImageSearchOperation operation) {
+        switch (operation) {
+            case SEARCH:
+            case RECONCILE:
+                return searchConnectTimeout;
+            case REGISTER:
+                return registerConnectTimeout;
+            case DELETE:
+                return deleteConnectTimeout;
+            case CHECK:
+                return checkConnectTimeout;
+            default:
+                throw new IllegalArgumentException("Unsupported operation: " + operation);
+        }
+    }
+
+    /**
+     * @return Read timeout in milliseconds.
+     */
+    public int getReadTimeout(ImageSearchOperation operation) {
+        switch (operation) {
+            case SEARCH:
+            case RECONCILE:
+                return searchReadTimeout;
+            case REGISTER:
+                return registerReadTimeout;
+            case DELETE:
+                return deleteReadTimeout;
+            case CHECK:
+                return checkReadTimeout;
+            default:
+                throw new IllegalArgumentException("Unsupported operation: " + operation);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport of the calls to the Image Search API: build the requests, send them and convert the responses.
+ * <p>
+ * Selected with the "imageSearch.transport" property: "sdk" (default) for the client of the Alibaba Cloud SDK,
+ * "http" for a non-blocking HTTP client. The returned futures fail with a
+ * {@link com.aliyuncs.exceptions.ClientException} when the API cannot be reached or returns an error, and with an
+ * {@link IllegalStateException} when the API answers that the call was not successful.
+ * <p>
+ * The calls never block the caller: they return a future that is completed when the API answers, and cancelling it
+ * aborts the call.
+ *
+ * @author Alibaba Cloud
+ */
+interface ImageSearchTransport {
+
+    /**
+     * Search the items similar to an image in one instance.
+     *
+     * @param configuration Configuration of the instance (credentials, region, domain and namespace).
+     * @param instanceName  Name of the instance to search.
+     * @param query         Searched image.
+     * @param operation     {@link ImageSearchOperation#SEARCH}, or {@link ImageSearchOperation#CHECK} to check a
+     *                      configuration that is not saved yet.
+     * @return Future result of the instance.
+     */
+    CompletableFuture<ImageSearchResults.InstanceResult> searchItem(Configuration configuration, String instanceName,
+                                                                    ImageSearchQuery query, ImageSearchOperation operation);
+
+    /**
+     * Add an item into one instance.
+     *
+     * @param pictureName Name of the picture, with its file extension.
+     */
+    CompletableFuture<Void> addItem(Configuration configuration, String instanceName, String itemId,
+                                    String pictureName, byte[] imageData);
+
+    /**
+     * Delete an item from one instance.
+     */
+    CompletableFuture<Void> deleteItem(Configuration configuration, String instanceName, String itemId);
+}
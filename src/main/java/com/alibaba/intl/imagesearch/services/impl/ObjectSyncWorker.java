@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.events.CatalogChangedEvent;
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.ObjectSyncOperation;
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
+import com.alibaba.intl.imagesearch.model.ObjectSyncTask;
+import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import com.alibaba.intl.imagesearch.repositories.ObjectSyncTaskRepository;
+import com.alibaba.intl.imagesearch.repositories.RecognizableObjectRepository;
+import com.alibaba.intl.imagesearch.services.ImageSearchService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Drain the {@link ObjectSyncTask} outbox to the Image Search API.
+ * <p>
+ * Due tasks are read by batches and processed in parallel. Only the latest task of an object is sent, the older ones
+ * are superseded. Sending a task again is harmless (an item added twice is replaced), so a task is only deleted once
+ * the Image Search API has acknowledged it. Failed tasks are retried with an exponential backoff and a random jitter,
+ * then abandoned after too many attempts.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+@Profile("!dummy")
+public class ObjectSyncWorker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObjectSyncWorker.class);
+
+    @Value("${objectSync.poolSize}")
+    private int poolSize;
+
+    @Value("${objectSync.batchSize}")
+    private int batchSize;
+
+    @Value("${objectSync.maxAttempts}")
+    private int maxAttempts;
+
+    @Value("${objectSync.initialBackoff}")
+    private long initialBackoff;
+
+    @Value("${objectSync.maxBackoff}")
+    private long maxBackoff;
+
+    private final ImageSearchService imageSearchService;
+    private final ObjectSyncTaskRepository objectSyncTaskRepository;
+    private final RecognizableObjectRepository recognizableObjectRepository;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private ExecutorService executorService;
+    private Counter syncedCounter;
+    private Counter retriedCounter;
+    private Counter abandonedCounter;
+
+    public ObjectSyncWorker(ImageSearchService imageSearchService,
+                            ObjectSyncTaskRepository objectSyncTaskRepository,
+                            RecognizableObjectRepository recognizableObjectRepository,
+                            ApplicationEventPublisher applicationEventPublisher,
+                            MeterRegistry meterRegistry) {
+        this.imageSearchService = imageSearchService;
+        this.objectSyncTaskRepository = objectSyncTaskRepository;
+        this.recognizableObjectRepository = recognizableObjectRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(batchSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "object-sync-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executorService = ExecutorServiceMetrics.monitor(meterRegistry, threadPoolExecutor, "objectSyncExecutor");
+
+        Gauge.builder("objectSync.pending", objectSyncTaskRepository, ObjectSyncTaskRepository::count)
+                .description("Changes not yet applied to the Image Search API")
+                .register(meterRegistry);
+        syncedCounter = createTaskCounter("synced");
+        retriedCounter = createTaskCounter("retried");
+        abandonedCounter = createTaskCounter("abandoned");
+    }
+
+    private Counter createTaskCounter(String result) {
+        return Counter.builder("objectSync.tasks")
+                .description("Processed outbox tasks")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Process the due tasks until there is none left. Does nothing if the outbox is already being drained.
+     */
+    @Scheduled(fixedDelayString = "${objectSync.pollInterval}")
+    public void drain() {
+        if (!drainLock.tryLock()) {
+            return;
+        }
+
+        try {
+            List<ObjectSyncTask> tasks;
+            do {
+                tasks = objectSyncTaskRepository.findDueTasks(System.currentTimeMillis(), PageRequest.of(0, batchSize));
+            } while (processBatch(tasks) && tasks.size() == batchSize);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if all the tasks have been processed, false if the draining must be interrupted.
+     */
+    private boolean processBatch(List<ObjectSyncTask> tasks) {
+        // Only the latest task of each object is relevant
+        Map<String, ObjectSyncTask> latestTaskByUuid = new LinkedHashMap<>();
+        List<ObjectSyncTask> supersededTasks = new ArrayList<>();
+        for (ObjectSyncTask task : tasks) {
+            ObjectSyncTask previousTask = latestTaskByUuid.put(task.getObjectUuid(), task);
+            if (previousTask != null) {
+                supersededTasks.add(previousTask);
+            }
+        }
+        objectSyncTaskRepository.deleteAll(supersededTasks);
+
+        Map<String, Future<Boolean>> futureByUuid = new LinkedHashMap<>();
+        for (ObjectSyncTask task : latestTaskByUuid.values()) {
+            futureByUuid.put(task.getObjectUuid(), executorService.submit(() -> process(task)));
+        }
+
+        boolean completed = true;
+        List<String> changedUuids = new ArrayList<>();
+        for (Map.Entry<String, Future<Boolean>> entry : futureByUuid.entrySet()) {
+            try {
+                if (entry.getValue().get()) {
+                    changedUuids.add(entry.getKey());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futureByUuid.values().forEach(f -> f.cancel(true));
+                completed = false;
+                break;
+            } catch (ExecutionException e) {
+                // The database is probably unavailable, try again at the next poll
+                LOGGER.error("Unable to process an outbox task: " + e.getCause().getMessage(), e.getCause());
+                completed = false;
+            }
+        }
+
+        // A single event for the whole batch, so that a bulk ingestion doesn't clear the search result cache for
+        // every object
+        if (!changedUuids.isEmpty()) {
+            applicationEventPublisher.publishEvent(new CatalogChangedEvent(this, changedUuids));
+        }
+        return completed;
+    }
+
+    /**
+     * @return true if the change has been applied to the Image Search API.
+     */
+    private boolean process(ObjectSyncTask task) {
+        String uuid = task.getObjectUuid();
+        try {
+            if (task.getOperation() == ObjectSyncOperation.REGISTER) {
+                RecognizableObject object = recognizableObjectRepository.findById(uuid).orElse(null);
+                if (object == null) {
+                    // Deleted in the meantime, its deletion task cleans up the Image Search instance
+                    objectSyncTaskRepository.delete(task);
+                    return false;
+                }
+                imageSearchService.register(object.getImageData(), object.getImageType(), uuid);
+                recognizableObjectRepository.updateSyncStatus(uuid, ObjectSyncStatus.SYNCED);
+            } else {
+                imageSearchService.unregister(uuid);
+            }
+        } catch (UpstreamUnavailableException e) {
+            // The Image Search API is shedding load, this attempt doesn't count
+            LOGGER.debug("The Image Search API is unavailable, postpone the task: {}", task);
+            long delay = Math.max(TimeUnit.SECONDS.toMillis(e.getRetryAfterSeconds()), computeBackoff(task.getAttempts()));
+            reschedule(task, task.getAttempts(), delay, e);
+            return false;
+        } catch (RuntimeException e) {
+            int attempts = task.getAttempts() + 1;
+            if (attempts < maxAttempts) {
+                LOGGER.warn("Unable to apply a change to the Image Search API (attempt {}), retry later: {}",
+                        attempts, e.getMessage());
+                reschedule(task, attempts, computeBackoff(attempts), e);
+                return false;
+            }
+
+            LOGGER.error("Unable to apply a change to the Image Search API after " + attempts + " attempts, " +
+                    "abandon it: " + task, e);
+            objectSyncTaskRepository.delete(task);
+            if (task.getOperation() == ObjectSyncOperation.REGISTER) {
+                recognizableObjectRepository.updateSyncStatus(uuid, ObjectSyncStatus.FAILED);
+            }
+            abandonedCounter.increment();
+            return false;
+        }
+
+        objectSyncTaskRepository.delete(task);
+        syncedCounter.increment();
+        return true;
+    }
+
+    private void reschedule(ObjectSyncTask task, int attempts, long delay, RuntimeException e) {
+        task.setAttempts(attempts);
+        task.setNextAttemptTime(System.currentTimeMillis() + delay);
+        task.setLastError(e.getMessage());
+        objectSyncTaskRepository.save(task);
+        retriedCounter.increment();
+    }
+
+    /**
+     * Compute the delay before the next attempt: exponential, capped, with a random jitter so that tasks that failed
+     * together are not retried together.
+     *
+     * @param attempts Number of failed attempts.
+     * @return Delay in milliseconds.
+     */
+    long computeBackoff(int attempts) {
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(Math.max(attempts - 1, 0), 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of object images and thumbnails stored in direct buffers, outside of the Java heap.
+ * <p>
+ * The cache is bounded by the total size in bytes of its entries. Entries are evicted in least-recently-used order,
+ * but a new image is only admitted if it has been requested more often than the entries it would evict (the access
+ * frequencies are estimated with a small count-min sketch), so that a burst of one-time requests cannot flush
+ * the popular thumbnails.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class OffHeapImageCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapImageCache.class);
+    private static final String CACHE_NAME = "offHeapImageCache";
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final long AVERAGE_ENTRY_SIZE = 16 * 1024;
+
+    @Value("${imageCache.capacity}")
+    private long capacity;
+
+    @Value("${imageCache.maxEntrySize}")
+    private long maxEntrySize;
+
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Entries in access order, the eldest one is the least recently used.
+     */
+    private final LinkedHashMap<String, Entry> entryByKey = new LinkedHashMap<>(16, 0.75f, true);
+    private FrequencySketch frequencySketch;
+    private volatile long weight;
+    private long generation;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder rejectionCount = new LongAdder();
+
+    public OffHeapImageCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        frequencySketch = new FrequencySketch(capacity / AVERAGE_ENTRY_SIZE);
+        new OffHeapImageCacheMetrics().bindTo(meterRegistry);
+    }
+
+    /**
+     * Find a cached image and record the access.
+     *
+     * @return Cached image, or null if it is not in the cache.
+     */
+    public ObjectImage get(String uuid, ObjectImageVariant variant) {
+        String key = toKey(uuid, variant);
+        lock.lock();
+        try {
+            frequencySketch.increment(key);
+            Entry entry = entryByKey.get(key);
+            if (entry == null) {
+                missCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            return entry.toObjectImage();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Value that changes every time an entry is invalidated. It must be read before loading an image from
+     * the database and given to {@link #load(String, ObjectImageVariant, ObjectImage, long)}.
+     */
+    public long getGeneration() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copy the given image into the cache if it is small and popular enough.
+     *
+     * @param image      Image loaded from the database.
+     * @param generation Value of {@link #getGeneration()} before the image has been loaded.
+     * @return Cached image, or the given image if it has not been admitted.
+     */
+    public ObjectImage load(String uuid, ObjectImageVariant variant, ObjectImage image, long generation) {
+        String key = toKey(uuid, variant);
+        long size = image.getContentLength();
+        if (size <= 0 || size > maxEntrySize || size > capacity) {
+            return image;
+        }
+
+        lock.lock();
+        try {
+            if (!isAdmitted(key, size)) {
+                rejectionCount.increment();
+                return image;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Copy the data outside of the lock, the database may be slow
+        ByteBuffer data;
+        try {
+            data = copyToDirectBuffer(image, (int) size);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache the image (uuid = {}, variant = {}): {}", uuid, variant, e.getMessage());
+            return image;
+        }
+        Entry entry = new Entry(image.getImageType(), image.getHash(), data);
+
+        lock.lock();
+        try {
+            // Do not cache an image that has been invalidated in the meantime
+            if (this.generation != generation || entryByKey.containsKey(key)) {
+                return image;
+            }
+            // Check again, other entries may have been added in the meantime
+            if (!isAdmitted(key, size)) {
+                rejectionCount.increment();
+                return image;
+            }
+            evictUntilAvailable(size);
+            entryByKey.put(key, entry);
+            weight += size;
+            putCount.increment();
+        } finally {
+            lock.unlock();
+        }
+        return entry.toObjectImage();
+    }
+
+    /**
+     * Remove the image and thumbnail of an object from the cache.
+     */
+    public void invalidate(String uuid) {
+        lock.lock();
+        try {
+            generation++;
+            for (ObjectImageVariant variant : ObjectImageVariant.values()) {
+                Entry entry = entryByKey.remove(toKey(uuid, variant));
+                if (entry != null) {
+                    weight -= entry.getSize();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     *
+     * @return true if the candidate is more popular than all the entries that would have to be evicted for it.
+     */
+    private boolean isAdmitted(String key, long size) {
+        long availableWeight = capacity - weight;
+        if (availableWeight >= size) {
+            return true;
+        }
+
+        int candidateFrequency = frequencySketch.frequency(key);
+        Iterator<Map.Entry<String, Entry>> iterator = entryByKey.entrySet().iterator();
+        while (availableWeight < size && iterator.hasNext()) {
+            Map.Entry<String, Entry> victim = iterator.next();
+            if (frequencySketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            availableWeight += victim.getValue().getSize();
+        }
+        return availableWeight >= size;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void evictUntilAvailable(long size) {
+        Iterator<Entry> iterator = entryByKey.values().iterator();
+        while (capacity - weight < size && iterator.hasNext()) {
+            Entry victim = iterator.next();
+            iterator.remove();
+            weight -= victim.getSize();
+            evictionCount.increment();
+        }
+    }
+
+    private static ByteBuffer copyToDirectBuffer(ObjectImage image, int size) throws IOException {
+        ByteBuffer data = ByteBuffer.allocateDirect(size);
+        byte[] chunk = new byte[COPY_BUFFER_SIZE];
+        try (InputStream inputStream = image.getData().getInputStream()) {
+            while (data.hasRemaining()) {
+                int nbReadBytes = inputStream.read(chunk, 0, Math.min(chunk.length, data.remaining()));
+                if (nbReadBytes < 0) {
+                    throw new EOFException("The image data is shorter than its content length (" + size + " bytes).");
+                }
+                data.put(chunk, 0, nbReadBytes);
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    private static String toKey(String uuid, ObjectImageVariant variant) {
+        return uuid + ':' + variant.name();
+    }
+
+    /**
+     * Cached image, its data must never be modified.
+     */
+    private static final class Entry {
+        private final ObjectImageType imageType;
+        private final String hash;
+        private final ByteBuffer data;
+
+        Entry(ObjectImageType imageType, String hash, ByteBuffer data) {
+            this.imageType = imageType;
+            this.hash = hash;
+            this.data = data;
+        }
+
+        long getSize() {
+            return data.capacity();
+        }
+
+        ObjectImage toObjectImage() {
+            // The buffer is duplicated so that each reader has its own position; an evicted buffer stays valid
+            // until its last reader is done
+            return new ObjectImage(imageType, data.capacity(), hash, () -> new ByteBufferInputStream(data.duplicate()));
+        }
+    }
+
+    /**
+     * Read a buffer from its position to its limit.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int nbBytes = Math.min(len, buffer.remaining());
+            buffer.get(b, off, nbBytes);
+            return nbBytes;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Count-min sketch of the access frequencies, with 4 rows of 4-bit saturating counters. All counters are halved
+     * periodically, so that old popularity fades away.
+     * Note: not thread-safe, must be used with the cache lock held.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb3216e5d, 0xc2b2ae35, 0x85ebca6b};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int nbAdditions;
+
+        FrequencySketch(long expectedEntries) {
+            int width = Integer.highestOneBit((int) Math.min(1 << 24, Math.max(1024, expectedEntries)) * 2 - 1);
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean incremented = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                    incremented = true;
+                }
+            }
+            if (incremented && ++nbAdditions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            nbAdditions /= 2;
+        }
+    }
+
+    /**
+     * Expose the cache statistics like the other caches, with the weight in bytes and the admission rejections.
+     * Note: the hit ratio is given by the "cache.gets" counters (result = hit / miss).
+     */
+    private final class OffHeapImageCacheMetrics extends CacheMeterBinder {
+
+        OffHeapImageCacheMetrics() {
+            super(OffHeapImageCache.this, CACHE_NAME, Collections.emptyList());
+        }
+
+        @Override
+        protected Long size() {
+            lock.lock();
+            try {
+                return (long) entryByKey.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        protected long hitCount() {
+            return hitCount.sum();
+        }
+
+        @Override
+        protected Long missCount() {
+            return missCount.sum();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return evictionCount.sum();
+        }
+
+        @Override
+        protected long putCount() {
+            return putCount.sum();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            Gauge.builder("cache.weight", OffHeapImageCache.this, cache -> cache.weight)
+                    .tags(getTagsWithCacheName())
+                    .baseUnit("bytes")
+                    .description("The total size of the cached images")
+                    .register(registry);
+            Gauge.builder("cache.capacity", OffHeapImageCache.this, cache -> cache.capacity)
+                    .tags(getTagsWithCacheName())
+                    .baseUnit("bytes")
+                    .description("The maximum total size of the cached images")
+                    .register(registry);
+            FunctionCounter.builder("cache.admission.rejections", rejectionCount, LongAdder::sum)
+                    .tags(getTagsWithCacheName())
+                    .description("The number of images that were not cached because they were less popular than the cached ones")
+                    .register(registry);
+        }
+    }
+}
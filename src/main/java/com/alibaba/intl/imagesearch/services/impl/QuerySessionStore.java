@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Keep the images of recent searches under a query session token, so that they can be searched again with another
+ * region without being uploaded again.
+ * <p>
+ * The images are kept reduced and encoded in JPEG, with their scale factor: the regions of the next searches,
+ * expressed in the coordinates of the original image, are cropped without decoding the original image again. A
+ * session expires when it has not been used for "querySession.timeToIdle" milliseconds, or earlier when the images
+ * exceed "querySession.maximumWeight" bytes.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class QuerySessionStore {
+
+    private static final String CACHE_NAME = "querySessionStore";
+    private static final int ENTRY_OVERHEAD = 256;
+
+    @Value("${querySession.maximumWeight}")
+    private long maximumWeight;
+
+    @Value("${querySession.timeToIdle}")
+    private long timeToIdle;
+
+    private final MeterRegistry meterRegistry;
+    private ExpiringTokenStore<ReducedImage> imageBySession;
+
+    public QuerySessionStore(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        imageBySession = new ExpiringTokenStore<>(CACHE_NAME, maximumWeight, timeToIdle,
+                (String session, ReducedImage image) -> ENTRY_OVERHEAD + image.getImageData().length,
+                meterRegistry);
+    }
+
+    /**
+     * Keep the given query image.
+     *
+     * @param image Reduced query image, must not be modified.
+     * @return Token of the query session.
+     */
+    public String open(ReducedImage image) {
+        return imageBySession.put(image);
+    }
+
+    /**
+     * @return Query image of the given session, or null if the session expired.
+     */
+    public ReducedImage get(String session) {
+        return imageBySession.get(session);
+    }
+}
@@ -14,21 +14,45 @@
 
 package com.alibaba.intl.imagesearch.services.impl;
 
-import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import com.alibaba.intl.imagesearch.model.*;
 import com.alibaba.intl.imagesearch.model.dto.*;
+import com.alibaba.intl.imagesearch.repositories.ObjectSyncTaskRepository;
 import com.alibaba.intl.imagesearch.repositories.RecognizableObjectRepository;
 import com.alibaba.intl.imagesearch.services.ImageSearchService;
 import com.alibaba.intl.imagesearch.services.RecognizableObjectService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Default implementation of {@link RecognizableObjectService} based on Alibaba Cloud SDK.
+ * <p>
+ * Creations and deletions are saved together with an {@link ObjectSyncTask} in the same transaction, the
+ * {@link ObjectSyncWorker} applies them to the Image Search API in background.
+ * <p>
+ * Asynchronous searches join their results with the database in a dedicated pool of
+ * "asyncSearch.catalogPoolSize" threads, so that slow queries do not hold the threads of the Image Search calls.
+ * Paged searches keep their results in the {@link SearchCursorStore} and only join the requested page.
  *
  * @author Alibaba Cloud
  */
@@ -36,22 +60,89 @@ import java.util.stream.Collectors;
 @Profile("!dummy")
 public class RecognizableObjectServiceImpl implements RecognizableObjectService {
 
+    @Value("${asyncSearch.catalogPoolSize}")
+    private int catalogPoolSize;
+
+    @Value("${asyncSearch.catalogQueueCapacity}")
+    private int catalogQueueCapacity;
+
     private final ImageSearchService imageSearchService;
     private final RecognizableObjectRepository recognizableObjectRepository;
+    private final ObjectSyncTaskRepository objectSyncTaskRepository;
+    private final OffHeapImageCache offHeapImageCache;
+    private final SearchCursorStore searchCursorStore;
+    private final QuerySessionStore querySessionStore;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private ExecutorService catalogExecutorService;
 
     public RecognizableObjectServiceImpl(ImageSearchService imageSearchService,
-                                         RecognizableObjectRepository recognizableObjectRepository) {
+                                         RecognizableObjectRepository recognizableObjectRepository,
+                                         ObjectSyncTaskRepository objectSyncTaskRepository,
+                                         OffHeapImageCache offHeapImageCache,
+                                         SearchCursorStore searchCursorStore,
+                                         QuerySessionStore querySessionStore,
+                                         PlatformTransactionManager transactionManager,
+                                         MeterRegistry meterRegistry) {
         this.imageSearchService = imageSearchService;
         this.recognizableObjectRepository = recognizableObjectRepository;
+        this.objectSyncTaskRepository = objectSyncTaskRepository;
+        this.offHeapImageCache = offHeapImageCache;
+        this.searchCursorStore = searchCursorStore;
+        this.querySessionStore = querySessionStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(catalogPoolSize, catalogPoolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(catalogQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "search-catalog-join-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        catalogExecutorService = ExecutorServiceMetrics.monitor(meterRegistry, threadPoolExecutor, "searchCatalogJoinExecutor");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        catalogExecutorService.shutdownNow();
     }
 
     @Override
     public RecognizableObject create(RecognizableObject object) {
-        // Add the new object to the Image Search API
-        imageSearchService.register(object.getImageData(), object.getImageType(), object.getUuid());
+        // Save the object with the hashes of its images (used as HTTP entity tags)
+        object.setImageHash(hashImageData(object.getImageData()));
+        object.setThumbnailHash(hashImageData(object.getThumbnailData()));
+        object.setSyncStatus(ObjectSyncStatus.PENDING);
 
-        // Save the object
-        return recognizableObjectRepository.save(object);
+        // The object is added to the Image Search API in background
+        return transactionTemplate.execute(status -> {
+            RecognizableObject savedObject = recognizableObjectRepository.save(object);
+            objectSyncTaskRepository.save(new ObjectSyncTask(object.getUuid(), ObjectSyncOperation.REGISTER));
+            return savedObject;
+        });
+    }
+
+    @Override
+    public void createAll(List<RecognizableObject> objects) {
+        List<ObjectSyncTask> tasks = new ArrayList<>(objects.size());
+        for (RecognizableObject object : objects) {
+            object.setImageHash(hashImageData(object.getImageData()));
+            object.setThumbnailHash(hashImageData(object.getThumbnailData()));
+            object.setSyncStatus(ObjectSyncStatus.PENDING);
+            tasks.add(new ObjectSyncTask(object.getUuid(), ObjectSyncOperation.REGISTER));
+        }
+
+        transactionTemplate.execute(status -> {
+            recognizableObjectRepository.insertAll(objects);
+            return objectSyncTaskRepository.saveAll(tasks);
+        });
     }
 
     @Override
@@ -72,6 +163,9 @@ public class RecognizableObjectServiceImpl implements RecognizableObjectService
         // Prevent the image data to be modified
         object.setImageData(existingObject.getImageData());
         object.setThumbnailData(existingObject.getThumbnailData());
+        object.setImageHash(existingObject.getImageHash());
+        object.setThumbnailHash(existingObject.getThumbnailHash());
+        object.setSyncStatus(existingObject.getSyncStatus());
 
         // Update the object
         return recognizableObjectRepository.save(object);
@@ -79,11 +173,14 @@ public class RecognizableObjectServiceImpl implements RecognizableObjectService
 
     @Override
     public boolean delete(String uuid) {
-        // Delete the item from the Image Search API
-        imageSearchService.unregister(uuid);
+        // Delete the object, the item is deleted from the Image Search API in background
+        transactionTemplate.execute(status -> {
+            recognizableObjectRepository.deleteById(uuid);
+            return objectSyncTaskRepository.save(new ObjectSyncTask(uuid, ObjectSyncOperation.UNREGISTER));
+        });
 
-        // Delete the object
-        recognizableObjectRepository.deleteById(uuid);
+        // Delete its cached images
+        offHeapImageCache.invalidate(uuid);
 
         return true;
     }
@@ -93,21 +190,95 @@ public class RecognizableObjectServiceImpl implements RecognizableObjectService
         return recognizableObjectRepository.findById(uuid).orElse(null);
     }
 
+    @Override
+    public ObjectImage findImage(String uuid, ObjectImageVariant variant) {
+        ObjectImage cachedImage = offHeapImageCache.get(uuid, variant);
+        if (cachedImage != null) {
+            return cachedImage;
+        }
+
+        long cacheGeneration = offHeapImageCache.getGeneration();
+        ObjectImage image = recognizableObjectRepository.findImage(uuid, variant);
+        return image == null ? null : offHeapImageCache.load(uuid, variant, image, cacheGeneration);
+    }
+
     @Override
     public List<RecognizableObject> findAll() {
-        return recognizableObjectRepository.findAll();
+        return recognizableObjectRepository.findAllWithoutImageData();
     }
 
     @Override
-    public ObjectSearchResponse findAllBySimilarImage(byte[] imageData, ImageRegion objectRegion) {
-        // Search for similar images
-        ImageSearchResponse response = imageSearchService.findAllBySimilarImage(imageData, objectRegion);
+    public CompletableFuture<ObjectSearchResponse> findAllBySimilarImageAsync(byte[] imageData, ImageRegion objectRegion) {
+        // Note: when the pool is full, the RejectedExecutionException thrown by supplyAsync() fails the returned future
+        return imageSearchService.findAllBySimilarImageAsync(imageData, objectRegion)
+                .thenCompose(response -> CompletableFuture.supplyAsync(() -> joinWithCatalog(response), catalogExecutorService));
+    }
 
+    @Override
+    public CompletableFuture<ObjectSearchResponse> findAllBySimilarImageAsync(ReducedImage image, ImageRegion objectRegion, int start, int num) {
+        return joinFirstPageWithCatalog(imageSearchService.findAllBySimilarImageAsync(image, objectRegion), start, num);
+    }
+
+    private CompletableFuture<ObjectSearchResponse> joinFirstPageWithCatalog(CompletableFuture<ImageSearchResponse> search,
+                                                                             int start, int num) {
+        return search.thenCompose(results -> {
+            String cursor = searchCursorStore.put(results);
+            return CompletableFuture.supplyAsync(() -> joinPageWithCatalog(results, cursor, start, num), catalogExecutorService);
+        });
+    }
+
+    @Override
+    public CompletableFuture<ObjectSearchResponse> findAllByCursorAsync(String cursor, int start, int num) {
+        ImageSearchResponse results = searchCursorStore.get(cursor);
+        if (results == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            ObjectSearchResponse page = joinPageWithCatalog(results, cursor, start, num);
+            page.setRawImageSearchResponseJson(null);
+            return page;
+        }, catalogExecutorService);
+    }
+
+    @Override
+    public String openQuerySession(ReducedImage image) {
+        return querySessionStore.open(image);
+    }
+
+    @Override
+    public CompletableFuture<ObjectSearchResponse> findAllByQuerySessionAsync(String querySession, ImageRegion objectRegion,
+                                                                              int start, int num) {
+        ReducedImage image = querySessionStore.get(querySession);
+        if (image == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return joinFirstPageWithCatalog(imageSearchService.findAllBySimilarImageAsync(image, objectRegion), start, num);
+    }
+
+    private ObjectSearchResponse joinPageWithCatalog(ImageSearchResponse results, String cursor, int start, int num) {
+        List<ImageSearchAuction> auctions = results.getImageSearchAuctions();
+        int fromIndex = Math.min(start, auctions.size());
+        int toIndex = fromIndex + Math.min(num, auctions.size() - fromIndex);
+        ImageSearchResponse pageResults = new ImageSearchResponse(
+                auctions.subList(fromIndex, toIndex), results.getRawImageSearchResponseJson(), results.getObjectRegion());
+        pageResults.setPartial(results.isPartial());
+
+        ObjectSearchResponse page = joinWithCatalog(pageResults);
+        page.setCursor(cursor);
+        page.setStart(start);
+        page.setTotal(auctions.size());
+        return page;
+    }
+
+    private ObjectSearchResponse joinWithCatalog(ImageSearchResponse response) {
         // Find objects from the database that match with the results
         List<String> objectIds = response.getImageSearchAuctions().stream()
                 .map(ImageSearchAuction::getItemId)
                 .collect(Collectors.toList());
-        List<RecognizableObject> objects = recognizableObjectRepository.findAllById(objectIds);
+        List<RecognizableObject> objects = objectIds.isEmpty()
+                ? Collections.emptyList()
+                : recognizableObjectRepository.findAllWithoutImageDataByUuidIn(objectIds);
 
         // Merge auctions and found objects
         Map<String, RecognizableObject> objectByUuid = objects.stream()
@@ -117,7 +288,13 @@ public class RecognizableObjectServiceImpl implements RecognizableObjectService
                 .map(auction -> new AugmentedAuction(auction, objectByUuid.get(auction.getItemId())))
                 .collect(Collectors.toList());
 
-        return new ObjectSearchResponse(auctions, response.getRawImageSearchResponseJson(), response.getObjectRegion());
+        ObjectSearchResponse objectSearchResponse =
+                new ObjectSearchResponse(auctions, response.getRawImageSearchResponseJson(), response.getObjectRegion());
+        objectSearchResponse.setPartial(response.isPartial());
+        return objectSearchResponse;
     }
 
+    private static String hashImageData(byte[] imageData) {
+        return imageData == null ? null : DigestUtils.md5DigestAsHex(imageData);
+    }
 }
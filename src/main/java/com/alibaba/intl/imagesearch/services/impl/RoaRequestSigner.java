@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Signature of the requests sent to the ROA (RESTful) APIs of Alibaba Cloud, such as the Image Search API.
+ * <p>
+ * The string to sign is made of the method, the standard headers, the "x-acs-" headers sorted by name and the path
+ * with its query parameters sorted by name. It is signed with HMAC-SHA1 and the access key secret.
+ *
+ * @author Alibaba Cloud
+ */
+final class RoaRequestSigner {
+
+    static final String SIGNATURE_METHOD = "HMAC-SHA1";
+    static final String SIGNATURE_VERSION = "1.0";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+    private static final String ACS_HEADER_PREFIX = "x-acs-";
+
+    private RoaRequestSigner() {
+    }
+
+    /**
+     * Build the value of the "Authorization" header.
+     *
+     * @param method          HTTP method.
+     * @param path            Path of the request, without its query.
+     * @param queryParameters Query parameters, not URL-encoded.
+     * @param headers         Headers of the request, with "Accept", "Content-MD5", "Content-Type", "Date" and the
+     *                        "x-acs-" ones.
+     * @param accessKeyId     Access key ID.
+     * @param accessKeySecret Access key secret.
+     * @return Authorization header value.
+     */
+    static String buildAuthorization(String method, String path, Map<String, String> queryParameters,
+                                     Map<String, String> headers, String accessKeyId, String accessKeySecret) {
+        String stringToSign = buildStringToSign(method, path, queryParameters, headers);
+        return "acs " + accessKeyId + ":" + sign(stringToSign, accessKeySecret);
+    }
+
+    static String buildStringToSign(String method, String path, Map<String, String> queryParameters, Map<String, String> headers) {
+        Map<String, String> headerByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headerByName.putAll(headers);
+
+        StringBuilder stringToSign = new StringBuilder();
+        stringToSign.append(method).append('\n');
+        for (String name : new String[]{"Accept", "Content-MD5", "Content-Type", "Date"}) {
+            String value = headerByName.get(name);
+            stringToSign.append(value == null ? "" : value).append('\n');
+        }
+
+        // Canonicalized headers
+        Map<String, String> acsHeaderByName = new TreeMap<>();
+        headerByName.forEach((name, value) -> {
+            String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+            if (lowerCaseName.startsWith(ACS_HEADER_PREFIX)) {
+                acsHeaderByName.put(lowerCaseName, value);
+            }
+        });
+        acsHeaderByName.forEach((name, value) -> stringToSign.append(name).append(':').append(value).append('\n'));
+
+        // Canonicalized resource
+        stringToSign.append(path);
+        if (!queryParameters.isEmpty()) {
+            stringToSign.append('?');
+            boolean first = true;
+            for (Map.Entry<String, String> parameter : new TreeMap<>(queryParameters).entrySet()) {
+                if (!first) {
+                    stringToSign.append('&');
+                }
+                stringToSign.append(parameter.getKey());
+                if (parameter.getValue() != null && !parameter.getValue().isEmpty()) {
+                    stringToSign.append('=').append(parameter.getValue());
+                }
+                first = false;
+            }
+        }
+        return stringToSign.toString();
+    }
+
+    static String sign(String stringToSign, String accessKeySecret) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(accessKeySecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            return Base64.getEncoder().encodeToString(mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign the request: " + e.getMessage(), e);
+        }
+    }
+}
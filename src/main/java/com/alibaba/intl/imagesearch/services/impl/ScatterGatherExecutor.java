@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Execute the same call on several Image Search instances in parallel and gather their results, without failing when
+ * some of them fail or do not answer in time.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class ScatterGatherExecutor {
+
+    @Value("${scatterGather.timeout}")
+    private long timeout;
+
+    private final MeterRegistry meterRegistry;
+    private final ScheduledThreadPoolExecutor timeoutScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "scatter-gather-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Counter timeoutCounter;
+
+    public ScatterGatherExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        // The timeout task holds the futures and results of the calls: once cancelled, it must not keep them
+        // reachable until the timeout expires
+        timeoutScheduler.setRemoveOnCancelPolicy(true);
+        timeoutCounter = Counter.builder("imageSearch.scatterGather.timeouts")
+                .description("Calls to an Image Search instance that did not answer in time")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * Gather calls that are already in progress: the returned future is completed when all
+     * the calls are completed, or at the timeout with a {@link TimeoutException} for the ones that did not answer
+     * (their futures are cancelled).
+     *
+     * @param futures Futures of the calls in progress.
+     * @return Future of one result per call, in the same order.
+     */
+    public <T> CompletableFuture<List<Result<T>>> gatherAsync(List<CompletableFuture<T>> futures) {
+        List<CompletableFuture<Result<T>>> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            CompletableFuture<Result<T>> result = new CompletableFuture<>();
+            future.whenComplete((value, throwable) -> result.complete(new Result<>(value, toException(throwable))));
+            results.add(result);
+        }
+
+        ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(() -> {
+            for (int i = 0; i < results.size(); i++) {
+                if (!results.get(i).isDone()) {
+                    // Note: counted first because completing the last result completes the returned future
+                    timeoutCounter.increment();
+                    TimeoutException timeoutException = new TimeoutException("The Image Search instance did not answer in time.");
+                    results.get(i).complete(new Result<>(null, timeoutException));
+                    futures.get(i).cancel(true);
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    timeoutTask.cancel(false);
+                    return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+                });
+    }
+
+    private static Exception toException(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+        if (cause == null || cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new ExecutionException(cause);
+    }
+
+    /**
+     * Result of one call: either a value or an error.
+     *
+     * @param <T> Value type.
+     */
+    public static final class Result<T> {
+        private final T value;
+        private final Exception error;
+
+        Result(T value, Exception error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        /**
+         * @return Value returned by the call, or null if it failed.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return Exception thrown by the call (a {@link TimeoutException} if it did not answer in time), or null if
+         * it succeeded.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.AcsRequest;
+import com.aliyuncs.AcsResponse;
+import com.aliyuncs.IAcsClient;
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.imagesearch.model.v20180611.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transport of the calls to the Image Search API through the client of the Alibaba Cloud SDK.
+ * <p>
+ * The SDK client is blocking: the calls are executed by a pool of "imageSearch.sdk.poolSize" threads (or by one
+ * virtual thread per call when they are enabled), so that the callers are not blocked. Cancelling a returned future
+ * interrupts its call.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+@ConditionalOnProperty(name = "imageSearch.transport", havingValue = "sdk", matchIfMissing = true)
+public class SdkImageSearchTransport implements ImageSearchTransport {
+
+    @Value("${imageSearch.sdk.poolSize}")
+    private int poolSize;
+
+    @Value("${imageSearch.sdk.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${virtualThreads.enabled}")
+    private boolean virtualThreadsEnabled;
+
+    private final ImageSearchClientRegistry imageSearchClientRegistry;
+    private final ImageSearchTimeouts imageSearchTimeouts;
+    private final MeterRegistry meterRegistry;
+    private ExecutorService executorService;
+
+    public SdkImageSearchTransport(ImageSearchClientRegistry imageSearchClientRegistry,
+                                   ImageSearchTimeouts imageSearchTimeouts,
+                                   MeterRegistry meterRegistry) {
+        this.imageSearchClientRegistry = imageSearchClientRegistry;
+        this.imageSearchTimeouts = imageSearchTimeouts;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        ExecutorService executor;
+        if (virtualThreadsEnabled && VirtualThreads.isSupported()) {
+            // The calls mostly wait for the Image Search API, the concurrency limiter already bounds them
+            executor = VirtualThreads.newThreadPerTaskExecutor("image-search-sdk-");
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "image-search-sdk-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        }
+        executorService = ExecutorServiceMetrics.monitor(meterRegistry, executor, "imageSearchSdkExecutor");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<ImageSearchResults.InstanceResult> searchItem(Configuration configuration, String instanceName,
+                                                                           ImageSearchQuery query, ImageSearchOperation operation) {
+        SearchItemRequest request = new SearchItemRequest();
+        request.setInstanceName(instanceName);
+        request.setStart(0);
+        request.setNum(query.getNum());
+        if (configuration.getImageSearchNamespace() != null) {
+            request.setFilterClause("str_attr=\"" + configuration.getImageSearchNamespace() + "\""); // Allow us to share the same instance for multiple environments
+        }
+        request.setSearchPicture(query.getImageData());
+        if (query.getCrop() != null) {
+            request.setCrop(query.getCrop());
+        }
+        if (query.getRegion() != null) {
+            request.setRegion(query.getRegion());
+        }
+        imageSearchTimeouts.apply(request, operation);
+
+        if (!request.buildPostContent()) {
+            return failedFuture(new IllegalStateException("Unable to build the request to search items from the Image Search API."));
+        }
+        return send(configuration, request, operation, response -> {
+            ImageSearchResults.checkSuccess(operation, response.getSuccess(), response.getRequestId(), response.getCode(), response.getMessage());
+            return new ImageSearchResults.InstanceResult(response,
+                    response.getAuctions().stream()
+                            .map(auction -> ImageSearchResults.buildAuction(auction.getItemId(), auction.getCatId(),
+                                    auction.getPicName(), auction.getCustContent(), auction.getSortExprValues()))
+                            .collect(Collectors.toList()),
+                    ImageSearchResults.parseRegion(response.getPicInfo().getRegion()));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> addItem(Configuration configuration, String instanceName, String itemId,
+                                           String pictureName, byte[] imageData) {
+        AddItemRequest request = new AddItemRequest();
+        request.setInstanceName(instanceName);
+        request.setItemId(itemId);
+        if (configuration.getImageSearchNamespace() != null) {
+            request.setStrAttr(configuration.getImageSearchNamespace()); // Allow us to re-use the same Image Search instance for several environments
+        }
+        request.setCustContent("{\"dbStore\": true}");
+        request.addPicture(pictureName, imageData);
+        imageSearchTimeouts.apply(request, ImageSearchOperation.REGISTER);
+
+        if (!request.buildPostContent()) {
+            return failedFuture(new IllegalStateException("Unable to build the request to add an item to the Image Search API."));
+        }
+        return send(configuration, request, ImageSearchOperation.REGISTER, response -> {
+            ImageSearchResults.checkSuccess(ImageSearchOperation.REGISTER,
+                    response.getSuccess(), response.getRequestId(), response.getCode(), response.getMessage());
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteItem(Configuration configuration, String instanceName, String itemId) {
+        DeleteItemRequest request = new DeleteItemRequest();
+        request.setInstanceName(instanceName);
+        request.setItemId(itemId);
+        imageSearchTimeouts.apply(request, ImageSearchOperation.DELETE);
+
+        if (!request.buildPostContent()) {
+            return failedFuture(new IllegalStateException("Unable to build the request to delete an item from the Image Search API."));
+        }
+        return send(configuration, request, ImageSearchOperation.DELETE, response -> {
+            ImageSearchResults.checkSuccess(ImageSearchOperation.DELETE,
+                    response.getSuccess(), response.getRequestId(), response.getCode(), response.getMessage());
+            return null;
+        });
+    }
+
+    private <T extends AcsResponse, R> CompletableFuture<R> send(Configuration configuration, AcsRequest<T> request,
+                                                                 ImageSearchOperation operation, Function<T, R> converter) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Future<?> execution;
+        try {
+            execution = executorService.submit(() -> {
+                IAcsClient client = null;
+                try {
+                    // Use a dedicated client to check a configuration, because it is not saved yet
+                    client = operation == ImageSearchOperation.CHECK
+                            ? imageSearchClientRegistry.createClient(configuration)
+                            : imageSearchClientRegistry.getClient(configuration);
+                    future.complete(converter.apply(client.getAcsResponse(request)));
+                } catch (ClientException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    if (client != null && operation == ImageSearchOperation.CHECK) {
+                        client.shutdown();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return failedFuture(e);
+        }
+
+        // Note: cancelling the CompletableFuture does not interrupt the call, so do it explicitly
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                execution.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+}
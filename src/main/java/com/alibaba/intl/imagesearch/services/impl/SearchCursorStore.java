@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Keep the window of results of recent searches under a cursor token, so that their pages can be served without
+ * uploading the image or calling the Image Search API again.
+ * <p>
+ * A window expires when it has not been read for "searchCursor.timeToIdle" milliseconds, or earlier when the
+ * windows exceed "searchCursor.maximumWeight" bytes. Unlike the {@link SearchResultCache}, windows are not
+ * invalidated when the catalog changes: they are snapshots, so that the pages of a query stay consistent.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class SearchCursorStore {
+
+    private static final String CACHE_NAME = "searchCursorStore";
+
+    @Value("${searchCursor.maximumWeight}")
+    private long maximumWeight;
+
+    @Value("${searchCursor.timeToIdle}")
+    private long timeToIdle;
+
+    private final MeterRegistry meterRegistry;
+    private ExpiringTokenStore<ImageSearchResponse> windowByCursor;
+
+    public SearchCursorStore(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        windowByCursor = new ExpiringTokenStore<>(
+                CACHE_NAME, maximumWeight, timeToIdle, SearchResultCache::estimateWeight, meterRegistry);
+    }
+
+    /**
+     * Keep the given results.
+     *
+     * @param window Search results, must not be modified.
+     * @return Cursor token of the results.
+     */
+    public String put(ImageSearchResponse window) {
+        return windowByCursor.put(window);
+    }
+
+    /**
+     * @return Results kept under the given cursor, or null if they expired.
+     */
+    public ImageSearchResponse get(String cursor) {
+        return windowByCursor.get(cursor);
+    }
+}
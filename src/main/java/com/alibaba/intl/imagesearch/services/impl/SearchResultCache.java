@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.events.CatalogChangedEvent;
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of search results, bounded by their estimated size in bytes.
+ * <p>
+ * A result is fresh during "searchResultCache.refreshAfter" milliseconds. After that it is still served (stale)
+ * while a single background search refreshes it, until it expires after "searchResultCache.timeToLive" milliseconds.
+ * Stale results are also served while the Image Search API is unavailable (e.g. when its circuit breaker is open).
+ * All results are invalidated when objects are added to or removed from the catalog.
+ * <p>
+ * The cache keeps its own copy of each result and hands out copies, so that callers are free to modify them.
+ *
+ * @author Alibaba Cloud
+ */
+@Component
+public class SearchResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchResultCache.class);
+    private static final String CACHE_NAME = "searchResultCache";
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int AUCTION_OVERHEAD = 256;
+
+    @Value("${searchResultCache.maximumWeight}")
+    private long maximumWeight;
+
+    @Value("${searchResultCache.timeToLive}")
+    private long timeToLive;
+
+    @Value("${searchResultCache.refreshAfter}")
+    private long refreshAfter;
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong generation = new AtomicLong();
+    private Cache<String, Entry> entryByKey;
+    private Counter staleHitCounter;
+
+    public SearchResultCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        entryByKey = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((String key, Entry entry) -> entry.getWeight())
+                .expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entryByKey, CACHE_NAME);
+        staleHitCounter = Counter.builder("cache.gets.stale")
+                .tag("cache", CACHE_NAME)
+                .description("The number of stale results served while being refreshed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached result for the given key, or start an asynchronous search and cache its result.
+     *
+     * @param key    Key identifying the search (query image, region and configuration).
+     * @param search Function that starts a search on the Image Search API, also used to refresh stale results.
+     * @return Future cached or new search result, not shared with other callers.
+     */
+    public CompletableFuture<ImageSearchResponse> getAsync(String key, Supplier<CompletableFuture<ImageSearchResponse>> search) {
+        Entry entry = entryByKey.getIfPresent(key);
+        if (entry == null) {
+            long currentGeneration = generation.get();
+            return search.get().thenApply(response -> {
+                put(key, response, currentGeneration);
+                return response;
+            });
+        }
+
+        if (System.nanoTime() - entry.getCreationTime() > TimeUnit.MILLISECONDS.toNanos(refreshAfter)) {
+            staleHitCounter.increment();
+            refreshInBackground(key, entry, search);
+        }
+        return CompletableFuture.completedFuture(new ImageSearchResponse(entry.getResponse()));
+    }
+
+    /**
+     * Forget all results when the catalog changes, because they may contain deleted objects or miss new ones.
+     */
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        generation.incrementAndGet();
+        entryByKey.invalidateAll();
+    }
+
+    private void refreshInBackground(String key, Entry entry, Supplier<CompletableFuture<ImageSearchResponse>> search) {
+        if (!entry.getRefreshing().compareAndSet(false, true)) {
+            return; // Already being refreshed
+        }
+
+        long currentGeneration = generation.get();
+        CompletableFuture<ImageSearchResponse> refresh;
+        try {
+            refresh = search.get();
+        } catch (RejectedExecutionException e) {
+            entry.getRefreshing().set(false);
+            return;
+        } catch (RuntimeException e) {
+            refresh = new CompletableFuture<>();
+            refresh.completeExceptionally(e);
+        }
+        refresh.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                put(key, response, currentGeneration);
+                return;
+            }
+
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            if (cause instanceof UpstreamUnavailableException) {
+                // Keep serving the stale result while the Image Search API is unavailable
+                LOGGER.debug("Unable to refresh a search result: {}", cause.getMessage());
+            } else {
+                LOGGER.warn("Unable to refresh a search result: " + cause.getMessage(), cause);
+            }
+            entry.getRefreshing().set(false);
+        });
+    }
+
+    private void put(String key, ImageSearchResponse response, long expectedGeneration) {
+        // Do not cache a result obtained before the catalog changed, or with missing instances
+        if (generation.get() != expectedGeneration || response.isPartial()) {
+            return;
+        }
+        entryByKey.put(key, new Entry(new ImageSearchResponse(response), System.nanoTime(), estimateWeight(key, response)));
+        if (generation.get() != expectedGeneration) {
+            entryByKey.invalidate(key);
+        }
+    }
+
+    static int estimateWeight(String key, ImageSearchResponse response) {
+        long weight = ENTRY_OVERHEAD + 2L * key.length();
+        if (response.getRawImageSearchResponseJson() != null) {
+            weight += 2L * response.getRawImageSearchResponseJson().length();
+        }
+        if (response.getImageSearchAuctions() != null) {
+            for (ImageSearchAuction auction : response.getImageSearchAuctions()) {
+                weight += AUCTION_OVERHEAD;
+                if (auction.getCustomContent() != null) {
+                    // Note: the values are parsed from JSON, they are not always strings
+                    for (Map.Entry<?, ?> content : auction.getCustomContent().entrySet()) {
+                        weight += 2L * (String.valueOf(content.getKey()).length() + String.valueOf(content.getValue()).length());
+                    }
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    /**
+     * Cached search result, must not be modified.
+     */
+    private static final class Entry {
+        private final ImageSearchResponse response;
+        private final long creationTime;
+        private final int weight;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(ImageSearchResponse response, long creationTime, int weight) {
+            this.response = response;
+            this.creationTime = creationTime;
+            this.weight = weight;
+        }
+
+        ImageSearchResponse getResponse() {
+            return response;
+        }
+
+        long getCreationTime() {
+            return creationTime;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+
+        AtomicBoolean getRefreshing() {
+            return refreshing;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesce concurrent calls with the same key: the first caller starts the call, the other ones join its result (or
+ * its exception) instead of starting it again.
+ * <p>
+ * Each caller gets its own future: a caller that stops waiting (e.g. cancels its future after a timeout) does not
+ * cancel the call, because other callers may still need it.
+ *
+ * @param <K> Key identifying identical calls.
+ * @param <V> Result type.
+ * @author Alibaba Cloud
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> callByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Start the asynchronous call, or join the identical call in progress.
+     *
+     * @param key  Key identifying the call.
+     * @param call Function that starts the call if no identical call is in progress.
+     * @return Future result of the call, specific to this caller: cancelling it does not affect the other callers.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> newCall = new CompletableFuture<>();
+        CompletableFuture<V> existingCall = callByKey.putIfAbsent(key, newCall);
+        if (existingCall != null) {
+            return newCallerFuture(existingCall);
+        }
+
+        try {
+            call.get().whenComplete((result, throwable) -> {
+                callByKey.remove(key, newCall);
+                if (throwable == null) {
+                    newCall.complete(result);
+                } else {
+                    // Propagate the original exception, not its CompletionException wrapper
+                    newCall.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            callByKey.remove(key, newCall);
+            newCall.completeExceptionally(e);
+        }
+        return newCallerFuture(newCall);
+    }
+
+    private static <V> CompletableFuture<V> newCallerFuture(CompletableFuture<V> call) {
+        CompletableFuture<V> callerFuture = new CompletableFuture<>();
+        call.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                callerFuture.complete(result);
+            } else {
+                callerFuture.completeExceptionally(throwable);
+            }
+        });
+        return callerFuture;
+    }
+
+    /**
+     * @return Number of calls in progress.
+     */
+    public int getInFlightCount() {
+        return callByKey.size();
+    }
+}
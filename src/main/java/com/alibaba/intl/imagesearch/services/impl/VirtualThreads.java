@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Create virtual threads when the runtime supports them (Java 21 or later). The application is compiled for Java 8,
+ * so the API is called through reflection.
+ *
+ * @author Alibaba Cloud
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL_METHOD;
+    private static final Method NAME_METHOD;
+    private static final Method FACTORY_METHOD;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR_METHOD;
+
+    static {
+        Method ofVirtualMethod = null;
+        Method nameMethod = null;
+        Method factoryMethod = null;
+        Method newThreadPerTaskExecutorMethod = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            nameMethod = builderClass.getMethod("name", String.class, long.class);
+            factoryMethod = builderClass.getMethod("factory");
+            newThreadPerTaskExecutorMethod = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            // Not supported by this runtime
+        }
+        OF_VIRTUAL_METHOD = ofVirtualMethod;
+        NAME_METHOD = nameMethod;
+        FACTORY_METHOD = factoryMethod;
+        NEW_THREAD_PER_TASK_EXECUTOR_METHOD = newThreadPerTaskExecutorMethod;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the runtime supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return NEW_THREAD_PER_TASK_EXECUTOR_METHOD != null;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task. It is not bounded: the concurrency must be
+     * limited by the callers (e.g. by the {@link ImageSearchConcurrencyLimiter}).
+     *
+     * @param namePrefix Prefix of the thread names, followed by a counter.
+     * @return New executor.
+     * @throws UnsupportedOperationException If the runtime does not support virtual threads.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later (current version: " +
+                    System.getProperty("java.version") + ").");
+        }
+        try {
+            Object builder = NAME_METHOD.invoke(OF_VIRTUAL_METHOD.invoke(null), namePrefix, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) FACTORY_METHOD.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual threads: " + e.getMessage(), e);
+        }
+    }
+}
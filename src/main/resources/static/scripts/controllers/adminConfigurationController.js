@@ -151,7 +151,10 @@ var adminConfigurationController = {
             imageSearchInstanceName: $('#imageSearchInstanceName').val(),
             imageSearchDomain: $('#imageSearchDomain').val(),
             imageSearchNamespace: $('#imageSearchNamespace').val(),
-            ossBaseUrl: $('#ossBaseUrl').val()
+            ossBaseUrl: $('#ossBaseUrl').val(),
+            secondaryImageSearchInstanceName: $('#secondaryImageSearchInstanceName').val(),
+            secondaryRegionId: $('#secondaryRegionID').val(),
+            secondaryImageSearchDomain: $('#secondaryImageSearchDomain').val()
 
         });
     },
@@ -169,6 +172,9 @@ var adminConfigurationController = {
         $('#imageSearchDomain').val(configuration.imageSearchDomain);
         $('#imageSearchNamespace').val(configuration.imageSearchNamespace);
         $('#ossBaseUrl').val(configuration.ossBaseUrl);
+        $('#secondaryImageSearchInstanceName').val(configuration.secondaryImageSearchInstanceName);
+        $('#secondaryRegionID').val(configuration.secondaryRegionId);
+        $('#secondaryImageSearchDomain').val(configuration.secondaryImageSearchDomain);
     },
 
     /**
@@ -197,64 +197,26 @@ var adminObjectsController = {
     _onImageFilesAdded: function (imageFiles) {
         var self = this;
 
-        this._createThumbnailFiles(imageFiles, function (thumbnailFiles) {
-            self._convertAndResizeImageFiles(imageFiles, function (transformedImageFiles) {
-                // Convert each image into objects
-                var objects = _.map(transformedImageFiles, function (imageFile, imageFileIndex) {
-                    var nameWithoutExtension = imageFile.name;
-                    var indexOfExtension = nameWithoutExtension.lastIndexOf('.');
-                    if (indexOfExtension > 0) {
-                        nameWithoutExtension = nameWithoutExtension.substr(0, indexOfExtension);
-                    }
-                    return new RecognizableObject({
-                        uuid: self._generateUuid(),
-                        name: nameWithoutExtension,
-                        imageType: 'JPEG',
-                        imageFile: imageFile,
-                        thumbnailFile: thumbnailFiles[imageFileIndex]
-                    });
-                });
-
-                // Display the objects in a mosaic
-                $('#registration_finalization_header').css('display', 'flex');
-                self._unfinalizedObjectMosaic.addObjects(objects);
-            });
-        });
-    },
-
-    /**
-     * Create thumbnails for each images.
-     *
-     * @param {Array.<File>} imageFiles
-     * @param {function(thumbnailFiles: Array.<File>)} callback
-     */
-    _createThumbnailFiles: function (imageFiles, callback) {
-        if (imageFiles.length === 0) {
-            return callback(imageFiles);
-        }
-
-        var processedFiles = [];
-
-        /**
-         * @param {File} imageFile
-         * @param {number} imageFileIndex
-         */
-        function processImageFile(imageFile, imageFileIndex) {
-            imageService.createThumbnail(imageFile, function (thumbnailBlob) {
-                var processedFile = new File([thumbnailBlob], imageFile.name);
-                processedFiles.push(processedFile);
-
-                // Continue with the next file or exit if applicable
-                var newIndex = imageFileIndex + 1;
-                if (newIndex < imageFiles.length) {
-                    processImageFile(imageFiles[newIndex], newIndex);
-                } else {
-                    callback(processedFiles);
+        this._convertAndResizeImageFiles(imageFiles, function (transformedImageFiles) {
+            // Convert each image into objects
+            var objects = _.map(transformedImageFiles, function (imageFile) {
+                var nameWithoutExtension = imageFile.name;
+                var indexOfExtension = nameWithoutExtension.lastIndexOf('.');
+                if (indexOfExtension > 0) {
+                    nameWithoutExtension = nameWithoutExtension.substr(0, indexOfExtension);
                 }
+                return new RecognizableObject({
+                    uuid: self._generateUuid(),
+                    name: nameWithoutExtension,
+                    imageType: 'JPEG',
+                    imageFile: imageFile
+                });
             });
-        }
 
-        processImageFile(imageFiles[0], 0);
+            // Display the objects in a mosaic
+            $('#registration_finalization_header').css('display', 'flex');
+            self._unfinalizedObjectMosaic.addObjects(objects);
+        });
     },
 
     /**
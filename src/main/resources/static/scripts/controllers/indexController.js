@@ -54,6 +54,14 @@ var indexController = {
      */
     _objectRegion: new ObjectRegion({x: 0, y: 0, width: 0, height: 0}),
 
+    /**
+     * Token to search the uploaded image again without uploading it.
+     *
+     * @private
+     * @type {string}
+     */
+    _querySession: null,
+
     /**
      * Method called when the document is ready.
      */
@@ -144,13 +152,14 @@ var indexController = {
         var self = this;
 
         // Start the search
-        objectService.findAllBySimilarImage(transformedImageFile, objectRegion, function (objectWithScores, objectRegion, rawImageSearchResponseJson, error) {
+        objectService.findAllBySimilarImage(transformedImageFile, this._querySession, objectRegion, function (objectWithScores, objectRegion, rawImageSearchResponseJson, error, querySession) {
             self._setLoadingOverlayVisible(false);
 
             if (error) {
                 self._notifier.showNotification(error, Notifier.Level.DANGER);
                 return;
             }
+            self._querySession = querySession;
 
             // Change the layout of the page the first time results are displayed
             if (!self._resultsDisplayed) {
@@ -22,8 +22,11 @@
  *     regionId: String?,
  *     imageSearchInstanceName: String?,
  *     imageSearchDomain: String?,
- *     imageSearchNamespace: String?}?} params
- *     ossBaseUrl: String?}?} params
+ *     imageSearchNamespace: String?,
+ *     ossBaseUrl: String?,
+ *     secondaryImageSearchInstanceName: String?,
+ *     secondaryRegionId: String?,
+ *     secondaryImageSearchDomain: String?}?} params
  * @constructor
  *
  * @author Alibaba Cloud
@@ -62,4 +65,16 @@ function Configuration(params) {
      * @type {string}
      */
     this.ossBaseUrl = nonNullParams.ossBaseUrl || '';
+    /**
+     * @type {string}
+     */
+    this.secondaryImageSearchInstanceName = nonNullParams.secondaryImageSearchInstanceName || '';
+    /**
+     * @type {string}
+     */
+    this.secondaryRegionId = nonNullParams.secondaryRegionId || '';
+    /**
+     * @type {string}
+     */
+    this.secondaryImageSearchDomain = nonNullParams.secondaryImageSearchDomain || '';
 }
\ No newline at end of file
@@ -21,6 +21,7 @@
  *              imageType: string?,
  *              imageUrl: string?,
  *              thumbnailUrl: string?,
+ *              syncStatus: string?,
  *              imageFile: File?,
  *              thumbnailFile: File?}?} params
  * @constructor
@@ -60,6 +61,13 @@ function RecognizableObject(params) {
      */
     this.thumbnailUrl = nonNullParams.thumbnailUrl || '';
 
+    /**
+     * Registration state in the Image Search API: 'PENDING', 'SYNCED' or 'FAILED'.
+     *
+     * @type {?string}
+     */
+    this.syncStatus = nonNullParams.syncStatus || null;
+
     /**
      * @type {?File}
      */
@@ -59,7 +59,10 @@ var configurationService = {
                 imageSearchInstanceName: configuration.imageSearchInstanceName,
                 imageSearchDomain: configuration.imageSearchDomain,
                 imageSearchNamespace: configuration.imageSearchNamespace,
-                ossBaseUrl: configuration.ossBaseUrl
+                ossBaseUrl: configuration.ossBaseUrl,
+                secondaryImageSearchInstanceName: configuration.secondaryImageSearchInstanceName,
+                secondaryRegionId: configuration.secondaryRegionId,
+                secondaryImageSearchDomain: configuration.secondaryImageSearchDomain
             }),
             cache: false,
             contentType: 'application/json; charset=utf-8',
@@ -94,7 +97,10 @@ var configurationService = {
                 imageSearchInstanceName: configuration.imageSearchInstanceName,
                 imageSearchDomain: configuration.imageSearchDomain,
                 imageSearchNamespace: configuration.imageSearchNamespace,
-                ossBaseUrl: configuration.ossBaseUrl
+                ossBaseUrl: configuration.ossBaseUrl,
+                secondaryImageSearchInstanceName: configuration.secondaryImageSearchInstanceName,
+                secondaryRegionId: configuration.secondaryRegionId,
+                secondaryImageSearchDomain: configuration.secondaryImageSearchDomain
             }),
             cache: false,
             contentType: 'application/json; charset=utf-8',
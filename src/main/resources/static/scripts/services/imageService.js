@@ -23,7 +23,6 @@ var imageService = {
     minImageWidth: 200,
     minImageHeight: 200,
     maxImageFileSize: 1000000,
-    thumbnailMaxSize: 142,
     maxImageWidth: 1024,
     maxImageHeight: 1024,
 
@@ -192,38 +191,6 @@ var imageService = {
         });
     },
 
-    /**
-     * Create a thumbnail for the given image.
-     *
-     * @param {Blob} imageBlob
-     * @param {function(thumbnailBlob: Blob)} callback
-     */
-    createThumbnail: function (imageBlob, callback) {
-        var self = this;
-
-        this._convertBlobToImage(imageBlob, function (image) {
-            // Return the image if the size is lower than the limit
-            if (image.width <= self.thumbnailMaxSize && image.height <= self.thumbnailMaxSize) {
-                return callback(imageBlob);
-            }
-
-            // Choose the target image dimension (keep the aspect ratio)
-            var targetWidth;
-            var targetHeight;
-            if (image.width > image.height) {
-                targetWidth = self.thumbnailMaxSize;
-                targetHeight = Math.floor(image.height * self.thumbnailMaxSize / image.width);
-            } else {
-                targetWidth = Math.floor(image.width * self.thumbnailMaxSize / image.height);
-                targetHeight = self.thumbnailMaxSize;
-            }
-
-            self.resize(imageBlob, targetWidth, targetHeight, function (transformedImageBlob) {
-                callback(transformedImageBlob);
-            });
-        });
-    },
-
     /**
      *  Convert a blob into an image.
      *
@@ -28,7 +28,9 @@ var objectService = {
     create: function (object, callback) {
         var formData = new FormData();
         formData.append('imageFile', object.imageFile);
-        formData.append('thumbnailFile', object.thumbnailFile);
+        if (object.thumbnailFile) {
+            formData.append('thumbnailFile', object.thumbnailFile);
+        }
         var objectJson = JSON.stringify({
             uuid: object.uuid,
             name: object.name,
@@ -122,14 +124,21 @@ var objectService = {
 
     /**
      * Find all objects that match the given image.
+     * When a query session is given, the image is not uploaded again, unless the session has expired.
      *
      * @param {File} imageFile
+     * @param {String?} querySession
      * @param {ObjectRegion} objectRegion
-     * @param {function(objectWithScores: Array.<ObjectWithScore>?, objectRegion: ObjectRegion, rawImageSearchResponseJson: String?, error: String?)} callback
+     * @param {function(objectWithScores: Array.<ObjectWithScore>?, objectRegion: ObjectRegion, rawImageSearchResponseJson: String?, error: String?, querySession: String?)} callback
      */
-    findAllBySimilarImage: function (imageFile, objectRegion, callback) {
+    findAllBySimilarImage: function (imageFile, querySession, objectRegion, callback) {
+        var self = this;
         var formData = new FormData();
-        formData.append('imageFile', imageFile);
+        if (querySession) {
+            formData.append('querySession', querySession);
+        } else {
+            formData.append('imageFile', imageFile);
+        }
 
         //If the object region is present then sent it server.
         if (objectRegion) {
@@ -147,12 +156,17 @@ var objectService = {
                     return new ObjectWithScore(objectWithScore);
                 });
                 var objectRegion = new ObjectRegion(objectSearchResponse.objectRegion);
-                callback(objectWithScores, objectRegion, objectSearchResponse.rawImageSearchResponseJson);
+                callback(objectWithScores, objectRegion, objectSearchResponse.rawImageSearchResponseJson, null, objectSearchResponse.querySession);
             },
             error: function (jqXHR, textStatus, errorThrown) {
+                if (querySession && jqXHR.status === 404) {
+                    // The query session has expired, upload the image again
+                    self.findAllBySimilarImage(imageFile, null, objectRegion, callback);
+                    return;
+                }
                 console.error('Unable to find objects by uploading a similar image: textStatus = ' + textStatus + ', errorThrown = ' + errorThrown);
                 callback(null, null, 'Unable to find objects by uploading a similar image: ' + errorThrown);
             }
         });
     }
-};
\ No newline at end of file
+};
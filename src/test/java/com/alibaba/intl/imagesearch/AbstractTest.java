@@ -34,7 +34,8 @@ public abstract class AbstractTest {
 
     @BeforeClass
     public static void overrideConfiguration() {
-        System.setProperty("spring.datasource.url", "jdbc:h2:mem:");
+        // Named database shared by all the connections of the pool (background workers use their own connections)
+        System.setProperty("spring.datasource.url", "jdbc:h2:mem:test;DB_CLOSE_DELAY=-1");
     }
 
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.facade.controllers;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.facade.exceptions.InvalidSearchRequestException;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ErrorControllerAdvice}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ErrorControllerAdviceTest {
+
+    private final ErrorControllerAdvice errorControllerAdvice = new ErrorControllerAdvice();
+
+    @Test
+    public void testAsyncErrors() {
+        // Failed asynchronous requests are handled like their cause
+        ResponseEntity<String> response = errorControllerAdvice.handleCompletionException(
+                new CompletionException(new UpstreamUnavailableException("Too many concurrent calls", 3)));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("3", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        response = errorControllerAdvice.handleCompletionException(
+                new CompletionException(new InvalidSearchRequestException("Invalid region")));
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+
+        response = errorControllerAdvice.handleCompletionException(new CompletionException(new OutOfMemoryError()));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+}
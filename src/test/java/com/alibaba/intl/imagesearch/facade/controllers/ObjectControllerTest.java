@@ -20,6 +20,7 @@ import com.alibaba.intl.imagesearch.facade.dto.ObjectSearchResponseDTO;
 import com.alibaba.intl.imagesearch.model.ObjectCategory;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
 import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
@@ -27,21 +28,33 @@ import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -95,6 +108,26 @@ public class ObjectControllerTest extends AbstractTest {
         assertNotNull(objectDto);
     }
 
+    @Test
+    public void testCreateWithoutThumbnail() throws Exception {
+        // Create the object without thumbnail
+        byte[] sampleImageData = loadResource(sampleImageResource);
+        String objectUuid = UUID.randomUUID().toString();
+        ObjectDTO objectDto = new ObjectDTO(objectUuid, "test-create-thumbnail", ObjectCategory.BOTTLE_DRINKS, ObjectImageType.JPEG, "", "");
+        mockMvc.perform(multipart("/objects")
+                .file(new MockMultipartFile("imageFile", "kettle.jpg", "image/jpeg", sampleImageData))
+                .file(new MockMultipartFile("json", "", "application/json", objectMapper.writeValueAsBytes(objectDto))))
+                .andExpect(status().isOk());
+
+        // Check the thumbnail has been generated
+        MockHttpServletResponse response = mockMvc.perform(get("/objects/" + objectUuid + "/thumbnail"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(response.getContentAsByteArray()));
+        assertEquals(142, thumbnail.getWidth());
+        assertEquals(142, thumbnail.getHeight());
+    }
+
     @Test
     public void testUpdate() throws Exception {
         // Create the object
@@ -224,8 +257,11 @@ public class ObjectControllerTest extends AbstractTest {
 
         ImageRegion region = new ImageRegion(100, 100, 100, 100);
         // Try to find all Similar Image
-        MockHttpServletResponse response = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
+        MvcResult mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
                 .file(new MockMultipartFile("imageFile", "kettle.jpg", "image/jpeg", sampleImageData)).param("objectRegion", objectMapper.writeValueAsString(region)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andReturn().getResponse();
 
@@ -234,6 +270,218 @@ public class ObjectControllerTest extends AbstractTest {
         assertTrue(objectSearchResponse.getObjectWithScores().stream().anyMatch(ows -> ows.getObject().getUuid().equals(objectUuid2)));
     }
 
+    @Test
+    public void testFindAllBySimilarImageByPage() throws Exception {
+        byte[] sampleImageData = loadResource(sampleImageResource);
+
+        // Search the first page
+        MvcResult mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
+                .file(new MockMultipartFile("imageFile", "kettle.jpg", "image/jpeg", sampleImageData))
+                .param("num", "2"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        ObjectSearchResponseDTO firstPage = objectMapper.readValue(response.getContentAsString(), ObjectSearchResponseDTO.class);
+        assertEquals(2, firstPage.getObjectWithScores().size());
+        assertEquals(0, firstPage.getStart());
+        assertTrue(firstPage.getTotal() > 2);
+        assertNotNull(firstPage.getCursor());
+
+        // Get the second page with the cursor instead of the image
+        mvcResult = mockMvc.perform(post("/objects/findAllBySimilarImage")
+                .param("cursor", firstPage.getCursor())
+                .param("start", "2")
+                .param("num", "2"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        ObjectSearchResponseDTO secondPage = objectMapper.readValue(response.getContentAsString(), ObjectSearchResponseDTO.class);
+        assertEquals(2, secondPage.getObjectWithScores().size());
+        assertEquals(2, secondPage.getStart());
+        assertEquals(firstPage.getTotal(), secondPage.getTotal());
+        assertFalse(secondPage.getObjectWithScores().stream().anyMatch(ows -> firstPage.getObjectWithScores().stream()
+                .anyMatch(firstOws -> firstOws.getObject().getUuid().equals(ows.getObject().getUuid()))));
+
+        // Expired cursor
+        mvcResult = mockMvc.perform(post("/objects/findAllBySimilarImage").param("cursor", UUID.randomUUID().toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isNotFound());
+
+        // Invalid requests
+        mockMvc.perform(post("/objects/findAllBySimilarImage")).andExpect(status().isBadRequest());
+        mockMvc.perform(post("/objects/findAllBySimilarImage").param("cursor", firstPage.getCursor()).param("start", "-1"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/objects/findAllBySimilarImage").param("cursor", firstPage.getCursor()).param("num", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/objects/findAllBySimilarImage").param("cursor", firstPage.getCursor()).param("num", "101"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testFindAllBySimilarImageWithQuerySession() throws Exception {
+        byte[] sampleImageData = loadResource(sampleImageResource);
+
+        // The first search uploads the image and opens a query session
+        MvcResult mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
+                .file(new MockMultipartFile("imageFile", "kettle.jpg", "image/jpeg", sampleImageData)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        ObjectSearchResponseDTO firstResponse = objectMapper.readValue(response.getContentAsString(), ObjectSearchResponseDTO.class);
+        assertNotNull(firstResponse.getQuerySession());
+
+        // Search again with another region without uploading the image
+        ImageRegion region = new ImageRegion(10, 10, 50, 50);
+        mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
+                .param("querySession", firstResponse.getQuerySession())
+                .param("objectRegion", objectMapper.writeValueAsString(region)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        ObjectSearchResponseDTO refinedResponse = objectMapper.readValue(response.getContentAsString(), ObjectSearchResponseDTO.class);
+        assertEquals(firstResponse.getQuerySession(), refinedResponse.getQuerySession());
+        assertFalse(refinedResponse.getObjectWithScores().isEmpty());
+
+        // Expired query session
+        mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage").param("querySession", UUID.randomUUID().toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isNotFound());
+
+        // The image is decoded asynchronously, the failure is returned once the request is dispatched again
+        mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
+                .file(new MockMultipartFile("imageFile", "invalid.jpg", "image/jpeg", new byte[]{1, 2, 3})))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testFindObjectImageByUuid() throws Exception {
+        // Create the object
+        byte[] sampleImageData = loadResource(sampleImageResource);
+        String objectUuid = UUID.randomUUID().toString();
+        ObjectDTO objectDto = createObject(new ObjectDTO(
+                objectUuid,
+                "test-image",
+                ObjectCategory.BOTTLE_DRINKS,
+                ObjectImageType.JPEG,
+                "",
+                ""), sampleImageData, sampleImageData);
+        assertNotNull(objectDto);
+
+        // Download its image and thumbnail
+        MockHttpServletResponse response = mockMvc.perform(get(objectDto.getImageUrl()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertEquals(MediaType.IMAGE_JPEG_VALUE, response.getContentType());
+        assertEquals(sampleImageData.length, response.getContentLength());
+        assertArrayEquals(sampleImageData, response.getContentAsByteArray());
+        String eTag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        assertTrue(response.getHeader(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+
+        // Check the image is not sent again when the client already has it
+        response = mockMvc.perform(get(objectDto.getImageUrl()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andReturn().getResponse();
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        response = mockMvc.perform(get(objectDto.getThumbnailUrl()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertArrayEquals(sampleImageData, response.getContentAsByteArray());
+
+        // Check the image of an unknown object is not found
+        mockMvc.perform(get("/objects/" + UUID.randomUUID() + "/image"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testBulkCreate() throws Exception {
+        // Prepare an archive with a manifest, 2 valid objects, an invalid name and an image without manifest item
+        byte[] sampleImageData = loadResource(sampleImageResource);
+        String uuid1 = UUID.randomUUID().toString();
+        String uuid2 = UUID.randomUUID().toString();
+        String invalidNameUuid = UUID.randomUUID().toString();
+        String unknownUuid = UUID.randomUUID().toString();
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("manifest.csv"));
+            zip.write(("uuid,name,category\n" +
+                    uuid1 + ",bulk-1,BOTTLE_DRINKS\n" +
+                    uuid2 + ",bulk-2,others\n" +
+                    invalidNameUuid + ",bulk/3,OTHERS\n").getBytes(StandardCharsets.UTF_8));
+            for (String uuid : Arrays.asList(uuid1, uuid2, invalidNameUuid, unknownUuid)) {
+                zip.putNextEntry(new ZipEntry("images/" + uuid + ".jpg"));
+                zip.write(sampleImageData);
+            }
+        }
+
+        // Send the archive and wait for the job to complete
+        MockHttpServletResponse response = mockMvc.perform(post("/objects/bulk")
+                .contentType("application/zip")
+                .content(archive.toByteArray()))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse();
+        String jobUrl = response.getHeader(HttpHeaders.LOCATION);
+        JsonNode status = objectMapper.readTree(response.getContentAsString());
+        for (int i = 0; i < 100 && "RUNNING".equals(status.get("state").asText()); i++) {
+            Thread.sleep(50);
+            status = objectMapper.readTree(mockMvc.perform(get(jobUrl))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+        }
+
+        // Check the progress and the errors
+        assertEquals("COMPLETED", status.get("state").asText());
+        assertEquals(4, status.get("totalItems").asInt());
+        assertEquals(2, status.get("succeededItems").asInt());
+        assertEquals(2, status.get("failedItems").asInt());
+        List<String> failedUuids = new ArrayList<>();
+        status.get("itemErrors").forEach(itemError -> failedUuids.add(itemError.get("uuid").asText()));
+        assertTrue(failedUuids.containsAll(Arrays.asList(invalidNameUuid, unknownUuid)));
+
+        // Check the objects have been created
+        response = mockMvc.perform(get("/objects/" + uuid2))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        ObjectDTO objectDto = objectMapper.readValue(response.getContentAsString(), ObjectDTO.class);
+        assertEquals("bulk-2", objectDto.getName());
+        assertEquals(ObjectCategory.OTHERS, objectDto.getCategory());
+        mockMvc.perform(get("/objects/" + uuid1 + "/thumbnail")).andExpect(status().isOk());
+        mockMvc.perform(get("/objects/" + invalidNameUuid)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testBulkCreateWithoutManifest() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry(UUID.randomUUID() + ".jpg"));
+            zip.write(loadResource(sampleImageResource));
+        }
+
+        MockHttpServletResponse response = mockMvc.perform(post("/objects/bulk")
+                .contentType("application/zip")
+                .content(archive.toByteArray()))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse();
+        JsonNode status = objectMapper.readTree(response.getContentAsString());
+        assertEquals("FAILED", status.get("state").asText());
+        assertEquals(0, status.get("totalItems").asInt());
+
+        mockMvc.perform(get("/objects/bulk/" + UUID.randomUUID())).andExpect(status().isNotFound());
+    }
+
     private byte[] loadResource(Resource resource) throws IOException {
         try (InputStream inputStream = sampleImageResource.getInputStream()) {
             return IOUtils.toByteArray(inputStream);
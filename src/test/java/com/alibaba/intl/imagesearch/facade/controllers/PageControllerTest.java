@@ -17,6 +17,7 @@ package com.alibaba.intl.imagesearch.facade.controllers;
 import com.alibaba.intl.imagesearch.AbstractTest;
 import com.alibaba.intl.imagesearch.model.Configuration;
 import com.alibaba.intl.imagesearch.repositories.ConfigurationRepository;
+import com.alibaba.intl.imagesearch.services.ConfigurationService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
@@ -42,6 +43,8 @@ public class PageControllerTest extends AbstractTest {
     @Autowired
     private ConfigurationRepository configurationRepository;
     @Autowired
+    private ConfigurationService configurationService;
+    @Autowired
     private WebApplicationContext wac;
 
     private MockMvc mockMvc;
@@ -55,6 +58,7 @@ public class PageControllerTest extends AbstractTest {
     public void checkRedirectionWhenConfigurationIsEmpty() throws Exception {
         // Remove the current configuration if any and check it is not possible to go to the home page and the object management page
         configurationRepository.deleteAll();
+        configurationService.refresh();
 
         MockHttpServletResponse response = mockMvc.perform(get("/"))
                 .andExpect(status().isFound())
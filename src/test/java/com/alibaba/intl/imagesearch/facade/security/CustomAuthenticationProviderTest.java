@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.facade.security;
+
+import com.alibaba.intl.imagesearch.events.ConfigurationSavedEvent;
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.services.ConfigurationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the {@link CustomAuthenticationProvider}.
+ *
+ * @author Alibaba Cloud
+ */
+public class CustomAuthenticationProviderTest {
+
+    private final ConfigurationService configurationService = mock(ConfigurationService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CustomAuthenticationProvider authenticationProvider;
+
+    @Before
+    public void setup() {
+        authenticationProvider = new CustomAuthenticationProvider(configurationService, meterRegistry);
+        ReflectionTestUtils.setField(authenticationProvider, "credentialCacheExpireAfterWrite", 60000L);
+        ReflectionTestUtils.setField(authenticationProvider, "credentialCacheMaximumSize", 10L);
+        authenticationProvider.createVerifiedCredentialCache();
+    }
+
+    @Test
+    public void testVerifiedCredentialCache() {
+        when(configurationService.load()).thenReturn(buildConfiguration("password-1"));
+
+        // The first authentication must be verified with BCrypt, the second one must come from the cache
+        assertNotNull(authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("admin", "password-1")));
+        assertNotNull(authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("admin", "password-1")));
+        assertEquals(1, getCacheGets("hit"), 0);
+        assertEquals(1, getCacheGets("miss"), 0);
+
+        // A wrong password must never be accepted
+        assertNull(authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("admin", "password-2")));
+
+        // A password change must invalidate the verified credentials
+        Configuration newConfiguration = buildConfiguration("password-2");
+        when(configurationService.load()).thenReturn(newConfiguration);
+        authenticationProvider.onConfigurationSaved(new ConfigurationSavedEvent(this, newConfiguration));
+        assertNull(authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("admin", "password-1")));
+        assertNotNull(authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("admin", "password-2")));
+    }
+
+    private double getCacheGets(String result) {
+        return meterRegistry.get("cache.gets")
+                .tag("cache", "verifiedCredentialCache")
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+
+    private Configuration buildConfiguration(String password) {
+        return new Configuration(
+                "",
+                new BCryptPasswordEncoder().encode(password),
+                "sample-accesskey",
+                "sample-access-key-secret",
+                "sample-region-id",
+                "sample-instance-name",
+                "sample-instance-domain.com",
+                "sample-instance-namespace",
+                null);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services;
+
+import com.alibaba.intl.imagesearch.AbstractTest;
+import com.alibaba.intl.imagesearch.model.ObjectCategory;
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
+import com.alibaba.intl.imagesearch.model.ReconciliationCheckpoint;
+import com.alibaba.intl.imagesearch.model.RecognizableObject;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.repositories.ReconciliationCheckpointRepository;
+import com.alibaba.intl.imagesearch.repositories.RecognizableObjectRepository;
+import com.alibaba.intl.imagesearch.services.impl.CatalogReconciler;
+import com.alibaba.intl.imagesearch.services.impl.ImageSearchConcurrencyLimiter;
+import com.alibaba.intl.imagesearch.services.impl.ObjectSyncWorker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test the {@link CatalogReconciler}.
+ *
+ * @author Alibaba Cloud
+ */
+public class CatalogReconcilerTest extends AbstractTest {
+
+    private static final long SYNC_TIMEOUT = 10000;
+
+    @Autowired
+    private CatalogReconciler catalogReconciler;
+
+    @Autowired
+    private ObjectSyncWorker objectSyncWorker;
+
+    @Autowired
+    private RecognizableObjectRepository recognizableObjectRepository;
+
+    @Autowired
+    private ReconciliationCheckpointRepository reconciliationCheckpointRepository;
+
+    private final byte[] imageData = {1, 2, 3};
+    private final List<String> createdUuids = new ArrayList<>();
+    private ImageSearchService originalImageSearchService = null;
+    private ImageSearchService mockImageSearchService = mock(ImageSearchService.class);
+
+    @Before
+    public void setMockImageSearchService() {
+        originalImageSearchService = (ImageSearchService) ReflectionTestUtils.getField(catalogReconciler, "imageSearchService");
+        ReflectionTestUtils.setField(catalogReconciler, "imageSearchService", mockImageSearchService);
+        ReflectionTestUtils.setField(objectSyncWorker, "imageSearchService", mockImageSearchService);
+        ReflectionTestUtils.setField(catalogReconciler, "enabled", false);
+        ReflectionTestUtils.setField(catalogReconciler, "cycleInterval", 0L);
+        reconciliationCheckpointRepository.deleteAll();
+        ((Deque<?>) ReflectionTestUtils.getField(catalogReconciler, "chunk")).clear();
+
+        // By default each object finds itself
+        when(mockImageSearchService.findAllInInstanceOf(any(), anyString())).thenAnswer(invocation ->
+                Collections.singletonList(createAuction((String) invocation.getArguments()[1])));
+    }
+
+    @After
+    public void restoreImageSearchService() {
+        createdUuids.forEach(uuid -> recognizableObjectRepository.deleteById(uuid));
+        ReflectionTestUtils.setField(catalogReconciler, "imageSearchService", originalImageSearchService);
+        ReflectionTestUtils.setField(objectSyncWorker, "imageSearchService", originalImageSearchService);
+        ReflectionTestUtils.setField(catalogReconciler, "enabled", true);
+        ReflectionTestUtils.setField(catalogReconciler, "cycleInterval", 86400000L);
+    }
+
+    @Test
+    public void testReconciliation() {
+        // A consistent object, a failed registration, an object missing from Image Search
+        String consistentUuid = insertObject(ObjectSyncStatus.SYNCED);
+        String failedUuid = insertObject(ObjectSyncStatus.FAILED);
+        String missingUuid = insertObject(ObjectSyncStatus.SYNCED);
+        String orphanUuid = UUID.randomUUID().toString();
+        when(mockImageSearchService.findAllInInstanceOf(imageData, missingUuid)).thenReturn(
+                Collections.singletonList(createAuction(orphanUuid)));
+
+        reconcileCycle();
+
+        // Only the diverging items must be repaired
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).register(imageData, ObjectImageType.JPEG, failedUuid);
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).register(imageData, ObjectImageType.JPEG, missingUuid);
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).unregister(orphanUuid);
+        verify(mockImageSearchService, never()).register(imageData, ObjectImageType.JPEG, consistentUuid);
+        verify(mockImageSearchService, never()).findAllInInstanceOf(imageData, failedUuid);
+
+        // The next cycle must not start before the interval
+        ReflectionTestUtils.setField(catalogReconciler, "cycleInterval", 86400000L);
+        assertFalse(catalogReconciler.reconcileNext());
+    }
+
+    @Test
+    public void testPostponedWhileSearchBusy() {
+        String uuid = insertObject(ObjectSyncStatus.SYNCED);
+        ImageSearchConcurrencyLimiter originalLimiter = (ImageSearchConcurrencyLimiter)
+                ReflectionTestUtils.getField(catalogReconciler, "imageSearchConcurrencyLimiter");
+        ImageSearchConcurrencyLimiter mockLimiter = mock(ImageSearchConcurrencyLimiter.class);
+        ReflectionTestUtils.setField(catalogReconciler, "imageSearchConcurrencyLimiter", mockLimiter);
+        try {
+            // The interactive searches use half of their limit: the checks wait
+            when(mockLimiter.getLimit(ImageSearchOperation.SEARCH)).thenReturn(4);
+            when(mockLimiter.getInFlight(ImageSearchOperation.SEARCH)).thenReturn(2);
+            assertFalse(catalogReconciler.reconcileNext());
+            verify(mockImageSearchService, never()).findAllInInstanceOf(any(), anyString());
+
+            // The load decreases: the checks resume
+            when(mockLimiter.getInFlight(ImageSearchOperation.SEARCH)).thenReturn(1);
+            reconcileCycle();
+            verify(mockImageSearchService).findAllInInstanceOf(imageData, uuid);
+        } finally {
+            ReflectionTestUtils.setField(catalogReconciler, "imageSearchConcurrencyLimiter", originalLimiter);
+        }
+    }
+
+    @Test
+    public void testConcurrentReconciliation() throws Exception {
+        insertObject(ObjectSyncStatus.SYNCED);
+        CountDownLatch checkStarted = new CountDownLatch(1);
+        CountDownLatch checkReleased = new CountDownLatch(1);
+        when(mockImageSearchService.findAllInInstanceOf(any(), anyString())).thenAnswer(invocation -> {
+            checkStarted.countDown();
+            checkReleased.await();
+            return Collections.singletonList(createAuction((String) invocation.getArguments()[1]));
+        });
+
+        // Note: the objects of the other tests may come first
+        int maxCalls = (int) recognizableObjectRepository.count() + 2;
+        CompletableFuture<Void> firstReconciliation = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < maxCalls && checkStarted.getCount() > 0; i++) {
+                catalogReconciler.reconcileNext();
+            }
+        });
+        assertTrue(checkStarted.await(5, TimeUnit.SECONDS));
+
+        // A reconciliation is in progress (e.g. scheduled), another one (e.g. triggered by an administrator) is
+        // skipped instead of waiting for it
+        assertFalse(catalogReconciler.reconcileNext());
+        checkReleased.countDown();
+        firstReconciliation.get(5, TimeUnit.SECONDS);
+        verify(mockImageSearchService, times(1)).findAllInInstanceOf(any(), anyString());
+    }
+
+    @Test
+    public void testCheckpoint() {
+        ReflectionTestUtils.setField(catalogReconciler, "chunkSize", 1);
+        try {
+            insertObject(ObjectSyncStatus.SYNCED);
+            insertObject(ObjectSyncStatus.SYNCED);
+
+            // The checkpoint follows the chunks
+            assertTrue(catalogReconciler.reconcileNext());
+            String firstUuid = reconciliationCheckpointRepository.findById("CATALOG").get().getLastUuid();
+            assertNotNull(firstUuid);
+            assertTrue(catalogReconciler.reconcileNext());
+            String secondUuid = reconciliationCheckpointRepository.findById("CATALOG").get().getLastUuid();
+            assertTrue(secondUuid.compareTo(firstUuid) > 0);
+        } finally {
+            ReflectionTestUtils.setField(catalogReconciler, "chunkSize", 100);
+        }
+        reconcileCycle();
+    }
+
+    private void reconcileCycle() {
+        long startTime = System.currentTimeMillis();
+        int maxCalls = (int) recognizableObjectRepository.count() + 2;
+        for (int i = 0; i < maxCalls && !isCycleCompletedSince(startTime); i++) {
+            catalogReconciler.reconcileNext();
+        }
+        assertTrue("The cycle must be completed.", isCycleCompletedSince(startTime));
+    }
+
+    private boolean isCycleCompletedSince(long time) {
+        ReconciliationCheckpoint checkpoint = reconciliationCheckpointRepository.findById("CATALOG").orElse(null);
+        return checkpoint != null && checkpoint.getLastUuid() == null && checkpoint.getLastCycleEndTime() != null
+                && checkpoint.getLastCycleEndTime() >= time;
+    }
+
+    private String insertObject(ObjectSyncStatus syncStatus) {
+        RecognizableObject object = new RecognizableObject(
+                UUID.randomUUID().toString(), "reconciliation", ObjectCategory.OTHERS, ObjectImageType.JPEG, imageData, imageData);
+        object.setSyncStatus(syncStatus);
+        recognizableObjectRepository.insertAll(Arrays.asList(object));
+        createdUuids.add(object.getUuid());
+        return object.getUuid();
+    }
+
+    private static ImageSearchAuction createAuction(String uuid) {
+        return new ImageSearchAuction(uuid, ObjectCategory.OTHERS.getId(), uuid + ".jpg", ImageStoreType.DATABASE, 10F, null);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services;
+
+import com.alibaba.intl.imagesearch.AbstractTest;
+import com.alibaba.intl.imagesearch.events.ConfigurationSavedEvent;
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.repositories.ConfigurationRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ConfigurationService}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ConfigurationServiceTest extends AbstractTest {
+
+    private static final String CONFIGURATION_ID = "MAIN_CONFIGURATION";
+
+    @Autowired
+    private ConfigurationService configurationService;
+
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static final List<ConfigurationSavedEvent> savedEvents = new CopyOnWriteArrayList<>();
+    private static boolean listenerAdded = false;
+    private Configuration originalConfiguration;
+
+    @Before
+    public void setup() {
+        if (!listenerAdded) {
+            applicationContext.addApplicationListener((ApplicationListener<ApplicationEvent>) event -> {
+                if (event instanceof ConfigurationSavedEvent) {
+                    savedEvents.add((ConfigurationSavedEvent) event);
+                }
+            });
+            listenerAdded = true;
+        }
+        savedEvents.clear();
+        originalConfiguration = configurationRepository.findById(CONFIGURATION_ID).orElse(null);
+    }
+
+    @After
+    public void restoreConfiguration() {
+        if (originalConfiguration == null) {
+            configurationRepository.deleteAll();
+        } else {
+            configurationRepository.save(originalConfiguration);
+        }
+        configurationService.refresh();
+    }
+
+    @Test
+    public void testSavePublishesEvent() {
+        Configuration savedConfiguration = configurationService.save(createConfiguration("cn-shanghai"));
+
+        assertEquals(1, savedEvents.size());
+        Configuration eventConfiguration = savedEvents.get(0).getConfiguration();
+        assertEquals("cn-shanghai", eventConfiguration.getRegionId());
+        assertEquals(savedConfiguration.getVersion(), eventConfiguration.getVersion());
+
+        // The password is encoded, and kept when the next save doesn't change it
+        assertNotEquals("password", savedConfiguration.getPassword());
+        Configuration nextConfiguration = createConfiguration("cn-hangzhou");
+        nextConfiguration.setPassword("");
+        Configuration nextSavedConfiguration = configurationService.save(nextConfiguration);
+        assertEquals(savedConfiguration.getPassword(), nextSavedConfiguration.getPassword());
+        assertEquals(2, savedEvents.size());
+        assertEquals("cn-hangzhou", savedEvents.get(1).getConfiguration().getRegionId());
+    }
+
+    @Test
+    public void testLoadReturnsCopies() {
+        configurationService.save(createConfiguration("cn-shanghai"));
+
+        Configuration configuration = configurationService.load();
+        assertEquals("cn-shanghai", configuration.getRegionId());
+        configuration.setRegionId("modified-by-caller");
+        assertEquals("cn-shanghai", configurationService.load().getRegionId());
+    }
+
+    @Test
+    public void testSaveAfterAnotherInstance() {
+        Configuration savedConfiguration = configurationService.save(createConfiguration("cn-shanghai"));
+        long version = savedConfiguration.getVersion();
+
+        // Another application instance saves the configuration twice, this instance is not refreshed yet
+        Configuration otherConfiguration = new Configuration(savedConfiguration);
+        otherConfiguration.setRegionId("cn-hangzhou");
+        otherConfiguration.setVersion(version + 2);
+        configurationRepository.save(otherConfiguration);
+
+        // The next version follows the one in the database, not the one in memory
+        Configuration nextSavedConfiguration = configurationService.save(createConfiguration("cn-beijing"));
+        assertEquals(version + 3, (long) nextSavedConfiguration.getVersion());
+        assertEquals(version + 3, (long) configurationRepository.findVersionById(CONFIGURATION_ID));
+        assertEquals("cn-beijing", configurationService.load().getRegionId());
+    }
+
+    @Test
+    public void testIncrementVersionConflict() {
+        long version = configurationService.save(createConfiguration("cn-shanghai")).getVersion();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int nbUpdated = transactionTemplate.execute(status ->
+                configurationRepository.incrementVersion(CONFIGURATION_ID, version - 1));
+        assertEquals(0, nbUpdated);
+        assertEquals(version, (long) configurationRepository.findVersionById(CONFIGURATION_ID));
+
+        nbUpdated = transactionTemplate.execute(status ->
+                configurationRepository.incrementVersion(CONFIGURATION_ID, version));
+        assertEquals(1, nbUpdated);
+        assertEquals(version + 1, (long) configurationRepository.findVersionById(CONFIGURATION_ID));
+    }
+
+    @Test
+    public void testRefreshAfterAnotherInstance() {
+        Configuration savedConfiguration = configurationService.save(createConfiguration("cn-shanghai"));
+        savedEvents.clear();
+
+        Configuration otherConfiguration = new Configuration(savedConfiguration);
+        otherConfiguration.setRegionId("cn-hangzhou");
+        otherConfiguration.setVersion(savedConfiguration.getVersion() + 1);
+        configurationRepository.save(otherConfiguration);
+
+        configurationService.refresh();
+        assertEquals("cn-hangzhou", configurationService.load().getRegionId());
+        assertEquals(1, savedEvents.size());
+
+        // Nothing to reload when the version didn't change
+        configurationService.refresh();
+        assertEquals(1, savedEvents.size());
+    }
+
+    private static Configuration createConfiguration(String regionId) {
+        return new Configuration(null, "password", "accessKeyId", "accessKeySecret", regionId, "instance",
+                "imagesearch." + regionId + ".aliyuncs.com", null, "https://oss.example.com/");
+    }
+}
@@ -15,24 +15,41 @@
 package com.alibaba.intl.imagesearch.services;
 
 import com.alibaba.intl.imagesearch.AbstractTest;
+import com.alibaba.intl.imagesearch.events.CatalogChangedEvent;
 import com.alibaba.intl.imagesearch.model.ObjectCategory;
 import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
+import com.alibaba.intl.imagesearch.model.ObjectSyncStatus;
 import com.alibaba.intl.imagesearch.model.RecognizableObject;
 import com.alibaba.intl.imagesearch.model.dto.*;
+import com.alibaba.intl.imagesearch.repositories.RecognizableObjectImageRepository;
+import com.alibaba.intl.imagesearch.repositories.RecognizableObjectImageRepositoryImpl;
+import com.alibaba.intl.imagesearch.services.impl.ObjectSyncWorker;
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.DigestUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -44,12 +61,23 @@ import static org.mockito.Mockito.*;
  */
 public class RecognizableObjectServiceTest extends AbstractTest {
 
+    private static final long SYNC_TIMEOUT = 10000;
+
     @Value("classpath:samples/kettle.jpg")
     private Resource imageResource;
 
     @Autowired
     private RecognizableObjectService recognizableObjectService;
 
+    @Autowired
+    private ObjectSyncWorker objectSyncWorker;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
     private byte[] imageData;
     private ImageSearchService originalImageSearchService = null;
     private ImageSearchService mockImageSearchService = mock(ImageSearchService.class);
@@ -65,11 +93,14 @@ public class RecognizableObjectServiceTest extends AbstractTest {
     public void setMockImageSearchService() {
         originalImageSearchService = (ImageSearchService) ReflectionTestUtils.getField(recognizableObjectService, "imageSearchService");
         ReflectionTestUtils.setField(recognizableObjectService, "imageSearchService", mockImageSearchService);
+        ReflectionTestUtils.setField(objectSyncWorker, "imageSearchService", mockImageSearchService);
     }
 
     @After
     public void restoreImageSearchService() {
         ReflectionTestUtils.setField(recognizableObjectService, "imageSearchService", originalImageSearchService);
+        ReflectionTestUtils.setField(objectSyncWorker, "imageSearchService", originalImageSearchService);
+        ReflectionTestUtils.setField(objectSyncWorker, "initialBackoff", 1000L);
     }
 
     /**
@@ -89,20 +120,22 @@ public class RecognizableObjectServiceTest extends AbstractTest {
         RecognizableObject object = new RecognizableObject(uuid, "testObjectLifecycleImage", ObjectCategory.OTHERS, ObjectImageType.JPEG, imageData, imageData);
         RecognizableObject createdObject = recognizableObjectService.create(object);
         assertEquals(createdObject, object);
-        verify(mockImageSearchService).register(imageData, ObjectImageType.JPEG, uuid);
+        assertEquals(ObjectSyncStatus.PENDING, createdObject.getSyncStatus());
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).register(imageData, ObjectImageType.JPEG, uuid);
 
         // Find the object
         ImageRegion objectRegion = new ImageRegion(0, 0, 100, 100);
         List<ImageSearchAuction> imageSearchAuctionList = new ArrayList<>();
         imageSearchAuctionList.add(new ImageSearchAuction("2490233", ObjectCategory.OTHERS.getId(), "342323901.png", ImageStoreType.OSS, 4.2F, null));
         imageSearchAuctionList.add(new ImageSearchAuction(object.getUuid(), ObjectCategory.OTHERS.getId(), object.getName(), ImageStoreType.DATABASE, 4.2F, null));
-        when(mockImageSearchService.findAllBySimilarImage(imageData, objectRegion)).thenReturn(
-                new ImageSearchResponse(imageSearchAuctionList, "fake-json", null));
+        when(mockImageSearchService.findAllBySimilarImageAsync(imageData, objectRegion)).thenReturn(
+                CompletableFuture.completedFuture(new ImageSearchResponse(imageSearchAuctionList, "fake-json", null)));
 
-        ObjectSearchResponse objectSearchResponse = recognizableObjectService.findAllBySimilarImage(imageData, objectRegion);
+        ObjectSearchResponse objectSearchResponse =
+                recognizableObjectService.findAllBySimilarImageAsync(imageData, objectRegion).join();
         assertEquals(imageSearchAuctionList.size(), objectSearchResponse.getAuctions().size());
 
-        ImageSearchAuction objectWithScore = objectSearchResponse.getAuctions().stream()
+        AugmentedAuction objectWithScore = objectSearchResponse.getAuctions().stream()
                 .filter(ows -> ows.getItemId().equals(object.getUuid()))
                 .findFirst()
                 .orElse(null);
@@ -111,6 +144,7 @@ public class RecognizableObjectServiceTest extends AbstractTest {
         assertEquals(object.getUuid(), objectWithScore.getItemId());
         assertEquals(object.getName(), objectWithScore.getPicName());
         assertEquals(object.getCategory().getId(), objectWithScore.getCatId());
+        assertNotNull(objectWithScore.getRecognizableObject());
 
         // Update the object
         reset(mockImageSearchService);
@@ -120,7 +154,137 @@ public class RecognizableObjectServiceTest extends AbstractTest {
 
         // Delete the object
         recognizableObjectService.delete(object.getUuid());
-        verify(mockImageSearchService).unregister(uuid);
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).unregister(uuid);
+    }
+
+    @Test
+    public void testFindAllBySimilarImagePages() {
+        List<ImageSearchAuction> imageSearchAuctionList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            imageSearchAuctionList.add(new ImageSearchAuction("item-" + i, ObjectCategory.OTHERS.getId(), "item-" + i + ".png", ImageStoreType.OSS, 5F - i, null));
+        }
+        ReducedImage image = new ReducedImage(imageData, 50, 100, 0.25);
+        when(mockImageSearchService.findAllBySimilarImageAsync(image, null)).thenReturn(
+                CompletableFuture.completedFuture(new ImageSearchResponse(imageSearchAuctionList, "fake-json", null)));
+
+        // The first page is searched, its results are kept under a cursor
+        ObjectSearchResponse firstPage = recognizableObjectService.findAllBySimilarImageAsync(image, null, 0, 2).join();
+        assertEquals(Arrays.asList("item-0", "item-1"), getItemIds(firstPage));
+        assertEquals("fake-json", firstPage.getRawImageSearchResponseJson());
+        assertEquals(0, firstPage.getStart());
+        assertEquals(5, firstPage.getTotal());
+        assertNotNull(firstPage.getCursor());
+
+        // The next pages are read with the cursor without searching again
+        ObjectSearchResponse secondPage = recognizableObjectService.findAllByCursorAsync(firstPage.getCursor(), 2, 2).join();
+        assertEquals(Arrays.asList("item-2", "item-3"), getItemIds(secondPage));
+        assertNull(secondPage.getRawImageSearchResponseJson());
+        assertEquals(2, secondPage.getStart());
+        assertEquals(5, secondPage.getTotal());
+        ObjectSearchResponse lastPage = recognizableObjectService.findAllByCursorAsync(firstPage.getCursor(), 4, 2).join();
+        assertEquals(Collections.singletonList("item-4"), getItemIds(lastPage));
+        ObjectSearchResponse outOfRangePage = recognizableObjectService.findAllByCursorAsync(firstPage.getCursor(), 10, 2).join();
+        assertTrue(outOfRangePage.getAuctions().isEmpty());
+        verify(mockImageSearchService, times(1)).findAllBySimilarImageAsync(image, null);
+
+        // Unknown cursors are reported as expired
+        assertNull(recognizableObjectService.findAllByCursorAsync(UUID.randomUUID().toString(), 0, 2).join());
+    }
+
+    @Test
+    public void testFindAllByQuerySession() {
+        ReducedImage image = new ReducedImage(imageData, 50, 100, 0.25);
+        ImageRegion region = new ImageRegion(0, 200, 200, 200);
+        List<ImageSearchAuction> imageSearchAuctionList = Collections.singletonList(
+                new ImageSearchAuction("item-0", ObjectCategory.OTHERS.getId(), "item-0.png", ImageStoreType.OSS, 5F, null));
+        when(mockImageSearchService.findAllBySimilarImageAsync(image, region)).thenReturn(
+                CompletableFuture.completedFuture(new ImageSearchResponse(imageSearchAuctionList, "fake-json", region)));
+
+        // The reduced image of the session is searched again with the new region
+        String querySession = recognizableObjectService.openQuerySession(image);
+        ObjectSearchResponse page = recognizableObjectService.findAllByQuerySessionAsync(querySession, region, 0, 2).join();
+        assertEquals(Collections.singletonList("item-0"), getItemIds(page));
+        assertNotNull(page.getCursor());
+
+        // Unknown query sessions are reported as expired
+        assertNull(recognizableObjectService.findAllByQuerySessionAsync(UUID.randomUUID().toString(), region, 0, 2).join());
+    }
+
+    private static List<String> getItemIds(ObjectSearchResponse response) {
+        return response.getAuctions().stream().map(ImageSearchAuction::getItemId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testCreateAll() throws InterruptedException {
+        List<CatalogChangedEvent> catalogChangedEvents = new CopyOnWriteArrayList<>();
+        applicationContext.addApplicationListener((ApplicationListener<ApplicationEvent>) event -> {
+            if (event instanceof CatalogChangedEvent) {
+                catalogChangedEvents.add((CatalogChangedEvent) event);
+            }
+        });
+        RecognizableObject object1 = new RecognizableObject(
+                UUID.randomUUID().toString(), "testCreateAll1", ObjectCategory.OTHERS, ObjectImageType.JPEG, imageData, imageData);
+        RecognizableObject object2 = new RecognizableObject(
+                UUID.randomUUID().toString(), "testCreateAll2", ObjectCategory.SHOES, ObjectImageType.PNG, imageData, imageData);
+        recognizableObjectService.createAll(Arrays.asList(object1, object2));
+
+        // Check the objects are saved as if they were created one by one
+        RecognizableObject foundObject = recognizableObjectService.findByUuid(object2.getUuid());
+        assertEquals("testCreateAll2", foundObject.getName());
+        assertEquals(ObjectCategory.SHOES, foundObject.getCategory());
+        assertEquals(ObjectImageType.PNG, foundObject.getImageType());
+        assertArrayEquals(imageData, foundObject.getImageData());
+        assertEquals(DigestUtils.md5DigestAsHex(imageData), foundObject.getImageHash());
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).register(imageData, ObjectImageType.JPEG, object1.getUuid());
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).register(imageData, ObjectImageType.PNG, object2.getUuid());
+
+        // The objects are synchronized in the same batch, so the catalog change is published once for both
+        for (int i = 0; i < 100 && catalogChangedEvents.isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, catalogChangedEvents.size());
+        assertTrue(catalogChangedEvents.get(0).getUuids().containsAll(Arrays.asList(object1.getUuid(), object2.getUuid())));
+
+        // Nothing is created if one of the objects already exists
+        RecognizableObject object3 = new RecognizableObject(
+                UUID.randomUUID().toString(), "testCreateAll3", ObjectCategory.OTHERS, ObjectImageType.JPEG, imageData, imageData);
+        try {
+            recognizableObjectService.createAll(Arrays.asList(object3, object1));
+            fail("An existing object must not be created again.");
+        } catch (DataAccessException e) {
+            assertNull(recognizableObjectService.findByUuid(object3.getUuid()));
+        }
+
+        recognizableObjectService.delete(object1.getUuid());
+        recognizableObjectService.delete(object2.getUuid());
+    }
+
+    @Test
+    public void testRegistrationRetry() throws InterruptedException {
+        ReflectionTestUtils.setField(objectSyncWorker, "initialBackoff", 10L);
+        String uuid = UUID.randomUUID().toString();
+        doThrow(new IllegalStateException("Unable to add a new item to the Image Search API"))
+                .doNothing()
+                .when(mockImageSearchService).register(imageData, ObjectImageType.JPEG, uuid);
+
+        // The object is saved even if the Image Search API fails, then registered when it recovers
+        RecognizableObject object = new RecognizableObject(uuid, "testRegistrationRetry", ObjectCategory.OTHERS, ObjectImageType.JPEG, imageData, imageData);
+        recognizableObjectService.create(object);
+        assertNotNull(recognizableObjectService.findByUuid(uuid));
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT).times(2)).register(imageData, ObjectImageType.JPEG, uuid);
+        assertEquals(ObjectSyncStatus.SYNCED, waitForSyncStatus(uuid, ObjectSyncStatus.SYNCED));
+
+        recognizableObjectService.delete(uuid);
+        verify(mockImageSearchService, timeout(SYNC_TIMEOUT)).unregister(uuid);
+    }
+
+    private ObjectSyncStatus waitForSyncStatus(String uuid, ObjectSyncStatus expectedStatus) throws InterruptedException {
+        ObjectSyncStatus status = null;
+        for (int i = 0; i < 100 && status != expectedStatus; i++) {
+            Thread.sleep(50);
+            status = recognizableObjectService.findByUuid(uuid).getSyncStatus();
+        }
+        return status;
     }
 
     @Test
@@ -165,6 +329,8 @@ public class RecognizableObjectServiceTest extends AbstractTest {
                 .findFirst()
                 .orElse(null);
         assertEquals(object1, foundObject1);
+        assertNull(foundObject1.getImageData());
+        assertNull(foundObject1.getThumbnailData());
 
         RecognizableObject foundObject2 = foundObjects.stream()
                 .filter(o -> o.getUuid().equals(object2.getUuid()))
@@ -182,4 +348,48 @@ public class RecognizableObjectServiceTest extends AbstractTest {
                 .anyMatch(o -> o.getUuid().equals(object1.getUuid()) || o.getUuid().equals(object2.getUuid()));
         assertFalse(matchingFound);
     }
+
+    @Test
+    public void testFindImage() throws IOException {
+        // Try to find the image of an object that doesn't exist
+        assertNull(recognizableObjectService.findImage(UUID.randomUUID().toString(), ObjectImageVariant.IMAGE));
+
+        // Create an object without thumbnail, as if it has been created before image hashes were stored
+        RecognizableObject object = new RecognizableObject(
+                UUID.randomUUID().toString(), "testFindImage", ObjectCategory.OTHERS, ObjectImageType.JPEG, imageData, null);
+        recognizableObjectService.create(object);
+        jdbcTemplate.update("update RECOGNIZABLE_OBJECT set IMAGE_HASH = null where UUID = ?", object.getUuid());
+
+        // Check the image can be streamed and its hash is computed
+        ObjectImage image = recognizableObjectService.findImage(object.getUuid(), ObjectImageVariant.IMAGE);
+        assertNotNull(image);
+        assertEquals(ObjectImageType.JPEG, image.getImageType());
+        assertEquals(imageData.length, image.getContentLength());
+        assertEquals(DigestUtils.md5DigestAsHex(imageData), image.getHash());
+        assertEquals(image.getHash(), recognizableObjectService.findByUuid(object.getUuid()).getImageHash());
+        try (InputStream inputStream = image.getData().getInputStream()) {
+            assertArrayEquals(imageData, IOUtils.toByteArray(inputStream));
+        }
+
+        // Check the image can be read again (from the cache)
+        image = recognizableObjectService.findImage(object.getUuid(), ObjectImageVariant.IMAGE);
+        try (InputStream inputStream = image.getData().getInputStream()) {
+            assertArrayEquals(imageData, IOUtils.toByteArray(inputStream));
+        }
+
+        // Check an image larger than the streaming threshold is streamed from its own connection
+        RecognizableObjectImageRepository streamingRepository =
+                new RecognizableObjectImageRepositoryImpl(jdbcTemplate.getDataSource(), 0);
+        image = streamingRepository.findImage(object.getUuid(), ObjectImageVariant.IMAGE);
+        try (InputStream inputStream = image.getData().getInputStream()) {
+            assertArrayEquals(imageData, IOUtils.toByteArray(inputStream));
+        }
+
+        // Check the missing thumbnail is not found
+        assertNull(recognizableObjectService.findImage(object.getUuid(), ObjectImageVariant.THUMBNAIL));
+
+        // Delete the object and check its image is not served anymore
+        recognizableObjectService.delete(object.getUuid());
+        assertNull(recognizableObjectService.findImage(object.getUuid(), ObjectImageVariant.IMAGE));
+    }
 }
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.aliyuncs.exceptions.ServerException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link HedgedRequestExecutor}.
+ *
+ * @author Alibaba Cloud
+ */
+public class HedgedRequestExecutorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HedgedRequestExecutor hedgedRequestExecutor;
+
+    @After
+    public void shutdown() {
+        if (hedgedRequestExecutor != null) {
+            hedgedRequestExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWithoutSecondary() throws Exception {
+        createExecutor(1);
+        assertEquals("primary", hedgedRequestExecutor.executeAsync(
+                () -> CompletableFuture.completedFuture("primary"), null).get(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.get("imageSearch.hedging.requests").counter().count(), 0);
+    }
+
+    @Test
+    public void testSlowPrimary() throws Exception {
+        createExecutor(1);
+        CompletableFuture<String> slowPrimaryFuture = new CompletableFuture<>();
+
+        // The primary call is fast: no hedged request
+        assertEquals("primary", hedgedRequestExecutor.executeAsync(
+                () -> CompletableFuture.completedFuture("primary"),
+                () -> CompletableFuture.completedFuture("secondary")).get(5, TimeUnit.SECONDS));
+
+        // The primary call is slow: the hedged request answers first and the primary call is cancelled
+        assertEquals("secondary", hedgedRequestExecutor.executeAsync(
+                () -> slowPrimaryFuture,
+                () -> CompletableFuture.completedFuture("secondary")).get(5, TimeUnit.SECONDS));
+        try {
+            slowPrimaryFuture.get(1, TimeUnit.SECONDS);
+            fail("The primary call must be cancelled.");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        assertEquals(1, meterRegistry.get("imageSearch.hedging.requests").counter().count(), 0);
+        assertEquals(1, meterRegistry.get("imageSearch.hedging.wins").counter().count(), 0);
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        createExecutor(1);
+
+        // The primary call fails: the secondary one answers instead
+        assertEquals("secondary", hedgedRequestExecutor.executeAsync(
+                () -> failedFuture(new ServerException("InternalError", "primary failure")),
+                () -> CompletableFuture.completedFuture("secondary")).get(5, TimeUnit.SECONDS));
+
+        // Both fail: report the primary error
+        try {
+            hedgedRequestExecutor.executeAsync(
+                    () -> failedFuture(new ServerException("InternalError", "primary failure")),
+                    () -> failedFuture(new IllegalStateException("secondary failure"))).get(5, TimeUnit.SECONDS);
+            fail("The primary exception must be propagated.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServerException);
+            assertTrue(e.getCause().getMessage().contains("primary failure"));
+        }
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        createExecutor(0);
+        CompletableFuture<String> slowPrimaryFuture = new CompletableFuture<>();
+
+        // No budget: wait for the slow primary call
+        CompletableFuture<String> future = hedgedRequestExecutor.executeAsync(
+                () -> slowPrimaryFuture,
+                () -> CompletableFuture.completedFuture("secondary"));
+        new Thread(() -> {
+            sleep(200);
+            slowPrimaryFuture.complete("primary");
+        }).start();
+        assertEquals("primary", future.get(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.get("imageSearch.hedging.requests").counter().count(), 0);
+        assertEquals(1, meterRegistry.get("imageSearch.hedging.overBudget").counter().count(), 0);
+    }
+
+    @Test
+    public void testSlowPrimaryLatencies() throws Exception {
+        createExecutor(0);
+        assertEquals(50, getHedgeDelay(), 0);
+
+        // Calls rejected without being sent are not sampled
+        for (int i = 0; i < 16; i++) {
+            hedgedRequestExecutor.executeAsync(() -> {
+                throw new UpstreamUnavailableException("Rejected.", 1);
+            }, () -> CompletableFuture.completedFuture("secondary"));
+        }
+        assertEquals(50, getHedgeDelay(), 0);
+
+        // Slow calls are sampled even when they fail or when they are cancelled (e.g. after a timeout)
+        List<CompletableFuture<String>> primaryFutures = new ArrayList<>();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            CompletableFuture<String> primaryFuture = new CompletableFuture<>();
+            primaryFutures.add(primaryFuture);
+            futures.add(hedgedRequestExecutor.executeAsync(() -> primaryFuture, null));
+        }
+        sleep(200);
+        for (int i = 0; i < 16; i++) {
+            if (i % 2 == 0) {
+                primaryFutures.get(i).completeExceptionally(new ServerException("InternalError", "primary failure"));
+            } else {
+                futures.get(i).cancel(true);
+            }
+        }
+        assertTrue(getHedgeDelay() >= 200);
+    }
+
+    @Test
+    public void testCancelledHedgeTimersAreRemoved() throws Exception {
+        createExecutor(1);
+        ScheduledThreadPoolExecutor hedgeScheduler =
+                (ScheduledThreadPoolExecutor) ReflectionTestUtils.getField(hedgedRequestExecutor, "hedgeScheduler");
+
+        // The primary call answers before the hedge delay: its timer must not stay queued
+        assertEquals("primary", hedgedRequestExecutor.executeAsync(
+                () -> CompletableFuture.completedFuture("primary"),
+                () -> CompletableFuture.completedFuture("secondary")).get(5, TimeUnit.SECONDS));
+        assertEquals(0, hedgeScheduler.getQueue().size());
+    }
+
+    @Test
+    public void testLatencyWindow() {
+        HedgedRequestExecutor.LatencyWindow latencyWindow = new HedgedRequestExecutor.LatencyWindow(64, 90, 1000, 5);
+        assertEquals(1000, latencyWindow.getHedgeDelayNanos());
+
+        for (int i = 1; i <= 64; i++) {
+            latencyWindow.record(i);
+        }
+        assertEquals(58, latencyWindow.getHedgeDelayNanos());
+
+        // Old latencies leave the window, the delay never goes under the minimum
+        for (int i = 0; i < 64; i++) {
+            latencyWindow.record(1);
+        }
+        assertEquals(5, latencyWindow.getHedgeDelayNanos());
+    }
+
+    private void createExecutor(double budgetRatio) {
+        hedgedRequestExecutor = new HedgedRequestExecutor(meterRegistry);
+        ReflectionTestUtils.setField(hedgedRequestExecutor, "delayPercentile", 95.0);
+        ReflectionTestUtils.setField(hedgedRequestExecutor, "latencyWindowSize", 100);
+        ReflectionTestUtils.setField(hedgedRequestExecutor, "initialDelay", 50L);
+        ReflectionTestUtils.setField(hedgedRequestExecutor, "minDelay", 10L);
+        ReflectionTestUtils.setField(hedgedRequestExecutor, "budgetRatio", budgetRatio);
+        ReflectionTestUtils.setField(hedgedRequestExecutor, "maxBudget", 10.0);
+        hedgedRequestExecutor.init();
+    }
+
+    private double getHedgeDelay() {
+        return meterRegistry.get("imageSearch.hedging.delay").gauge().value();
+    }
+
+    private static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.exceptions.ServerException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link HttpImageSearchTransport} against a local stub of the Image Search API.
+ *
+ * @author Alibaba Cloud
+ */
+public class HttpImageSearchTransportTest {
+
+    private static final String SEARCH_RESPONSE = "{\"RequestId\": \"req-1\", \"Success\": true, \"Code\": 0," +
+            "\"PicInfo\": {\"Region\": \"10,110,20,220\"}," +
+            "\"Auctions\": [" +
+            "{\"CatId\": \"0\", \"ItemId\": \"item-1\", \"PicName\": \"item-1.jpg\", \"CustContent\": \"{\\\"dbStore\\\": true}\", \"SortExprValues\": \"4.5;0\"}," +
+            "{\"CatId\": \"0\", \"ItemId\": \"item-2\", \"PicName\": \"item-2.jpg\", \"SortExprValues\": \"2.5;0\"}" +
+            "]}";
+
+    private HttpServer server;
+    private HttpImageSearchTransport transport;
+    private Configuration configuration;
+    private volatile int responseStatus = 200;
+    private volatile String responseBody = SEARCH_RESPONSE;
+    private volatile String requestUri;
+    private volatile Map<String, String> requestHeaders;
+    private volatile byte[] requestBody;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        ImageSearchTimeouts timeouts = new ImageSearchTimeouts();
+        for (String field : new String[]{"searchConnectTimeout", "searchReadTimeout", "registerConnectTimeout",
+                "registerReadTimeout", "deleteConnectTimeout", "deleteReadTimeout", "checkConnectTimeout", "checkReadTimeout"}) {
+            ReflectionTestUtils.setField(timeouts, field, 5000);
+        }
+        transport = new HttpImageSearchTransport(timeouts);
+        ReflectionTestUtils.setField(transport, "protocol", "http");
+        ReflectionTestUtils.setField(transport, "ioThreads", 1);
+        ReflectionTestUtils.setField(transport, "maxConnections", 4);
+        ReflectionTestUtils.setField(transport, "maxConnectionsPerHost", 4);
+        ReflectionTestUtils.setField(transport, "keepAliveDuration", 1000L);
+        transport.init();
+
+        configuration = new Configuration("admin", "password", "testAccessKeyId", "testAccessKeySecret", "cn-shanghai",
+                "instance-0", "127.0.0.1:" + server.getAddress().getPort(), "test", null);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        transport.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSearchItem() throws Exception {
+        byte[] imageData = "image".getBytes(StandardCharsets.UTF_8);
+        ImageSearchResults.InstanceResult result = transport.searchItem(configuration, "instance-0",
+                ImageSearchQuery.ofCroppedImage(imageData, 20), ImageSearchOperation.SEARCH).get(5, TimeUnit.SECONDS);
+
+        // The response is mapped like the one of the SDK
+        List<ImageSearchAuction> auctions = result.getAuctions();
+        assertEquals(2, auctions.size());
+        assertEquals("item-1", auctions.get(0).getItemId());
+        assertEquals(4.5, auctions.get(0).getSimilarityScore(), 0);
+        assertEquals(ImageStoreType.DATABASE, auctions.get(0).getImageStoreType());
+        assertEquals(ImageStoreType.OSS, auctions.get(1).getImageStoreType());
+        assertEquals(10, result.getRegion().getX());
+        assertEquals(100, result.getRegion().getWidth());
+        assertEquals(20, result.getRegion().getY());
+        assertEquals(200, result.getRegion().getHeight());
+
+        // The request is signed and its body is encoded like the SDK does
+        assertEquals("/item/search?instanceName=instance-0", requestUri);
+        assertEquals(Base64.getEncoder().encodeToString(DigestUtils.md5Digest(requestBody)), requestHeaders.get("Content-MD5"));
+        String expectedAuthorization = RoaRequestSigner.buildAuthorization("POST", "/item/search",
+                Collections.singletonMap("instanceName", "instance-0"), requestHeaders, "testAccessKeyId", "testAccessKeySecret");
+        assertEquals(expectedAuthorization, requestHeaders.get("Authorization"));
+        String encodedImage = Base64.getEncoder().encodeToString(imageData);
+        assertEquals("1,1#1,2#2,15#8,9#9," + encodedImage.length() + "#4,5^" +
+                        "s0n20fcstr_attr=\"test\"pic_listsearchPicsearchPic" + encodedImage + "cropfalse",
+                new String(requestBody, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testAddAndDeleteItem() throws Exception {
+        responseBody = "{\"RequestId\": \"req-2\", \"Success\": true}";
+        transport.addItem(configuration, "instance-0", "item-1", "item-1.jpg", new byte[]{1, 2, 3}).get(5, TimeUnit.SECONDS);
+        assertEquals("/item/add?instanceName=instance-0", requestUri);
+        assertTrue(new String(requestBody, StandardCharsets.UTF_8).contains("item_iditem-1cust_content{\"dbStore\": true}str_attrtest"));
+
+        transport.deleteItem(configuration, "instance-0", "item-1").get(5, TimeUnit.SECONDS);
+        assertEquals("/item/delete?instanceName=instance-0", requestUri);
+        assertEquals("7,6^item_iditem-1", new String(requestBody, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        // Server error: reported like the SDK, so that it counts as an upstream failure
+        responseStatus = 503;
+        responseBody = "{\"RequestId\": \"req-3\", \"Code\": \"ServiceUnavailable\", \"Message\": \"Try later\"}";
+        try {
+            transport.deleteItem(configuration, "instance-0", "item-1").get(5, TimeUnit.SECONDS);
+            fail("The server error must fail the call.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServerException);
+            assertTrue(ImageSearchErrors.isUpstreamFailure((ServerException) e.getCause()));
+        }
+
+        // Unsuccessful response
+        responseStatus = 200;
+        responseBody = "{\"RequestId\": \"req-4\", \"Success\": false, \"Code\": 1, \"Message\": \"Invalid picture\"}";
+        try {
+            transport.addItem(configuration, "instance-0", "item-1", "item-1.jpg", new byte[]{1}).get(5, TimeUnit.SECONDS);
+            fail("The unsuccessful response must fail the call.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertTrue(e.getCause().getMessage().contains("Invalid picture"));
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestUri = exchange.getRequestURI().toString();
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER); // Names are normalized by the server
+        exchange.getRequestHeaders().forEach((name, values) -> headers.put(name, values.get(0)));
+        requestHeaders = headers;
+        requestBody = IOUtils.toByteArray(exchange.getRequestBody());
+
+        byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(responseStatus, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.QueryImage;
+import com.alibaba.intl.imagesearch.model.dto.ReducedImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ImageProcessingServiceImpl}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ImageProcessingServiceTest {
+
+    private ImageProcessingServiceImpl imageProcessingService;
+
+    @Before
+    public void setup() {
+        imageProcessingService = new ImageProcessingServiceImpl(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(imageProcessingService, "poolSize", 1);
+        ReflectionTestUtils.setField(imageProcessingService, "queueCapacity", 1);
+        ReflectionTestUtils.setField(imageProcessingService, "maxImageSize", 100);
+        ReflectionTestUtils.setField(imageProcessingService, "thumbnailMaxSize", 20);
+        ReflectionTestUtils.setField(imageProcessingService, "jpegQuality", 0.85f);
+        ReflectionTestUtils.setField(imageProcessingService, "retryAfter", 1L);
+        imageProcessingService.createExecutorService();
+    }
+
+    @After
+    public void shutdown() {
+        imageProcessingService.shutdown();
+    }
+
+    @Test
+    public void testNormalizeKeepsNormalizedImage() throws IOException {
+        byte[] imageData = writeJpeg(80, 40);
+        assertSame(imageData, imageProcessingService.normalize(imageData, ObjectImageType.JPEG));
+    }
+
+    @Test
+    public void testNormalizeReducesLargeImage() throws IOException {
+        byte[] imageData;
+        try (InputStream inputStream = new ClassPathResource("samples/kettle.jpg").getInputStream()) {
+            imageData = IOUtils.toByteArray(inputStream);
+        }
+
+        BufferedImage normalizedImage = readImage(imageProcessingService.normalize(imageData, ObjectImageType.JPEG));
+        assertEquals(100, normalizedImage.getWidth());
+        assertEquals(100, normalizedImage.getHeight());
+    }
+
+    @Test
+    public void testNormalizeAppliesOrientationAndRemovesMetadata() throws IOException {
+        // Image stored in landscape that must be displayed rotated by 90 degrees
+        byte[] imageData = addExifOrientation(writeJpeg(80, 40), 6);
+        assertEquals(6, ImageMetadataReader.readExifOrientation(imageData));
+
+        byte[] normalizedImageData = imageProcessingService.normalize(imageData, ObjectImageType.JPEG);
+        BufferedImage normalizedImage = readImage(normalizedImageData);
+        assertEquals(40, normalizedImage.getWidth());
+        assertEquals(80, normalizedImage.getHeight());
+        assertFalse(ImageMetadataReader.hasMetadata(normalizedImageData, ObjectImageType.JPEG));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNormalizeInvalidImage() {
+        imageProcessingService.normalize(new byte[]{1, 2, 3}, ObjectImageType.JPEG);
+    }
+
+    @Test
+    public void testCreateThumbnail() throws IOException {
+        BufferedImage thumbnail = readImage(imageProcessingService.createThumbnail(writeJpeg(80, 40), ObjectImageType.JPEG));
+        assertEquals(20, thumbnail.getWidth());
+        assertEquals(10, thumbnail.getHeight());
+    }
+
+    @Test
+    public void testCropAndReduce() throws IOException {
+        // The region goes beyond the image bottom, it must be clipped
+        QueryImage queryImage = await(imageProcessingService.cropAndReduceAsync(
+                writeJpeg(400, 200), new ImageRegion(100, 50, 300, 300)));
+        assertEquals(100, queryImage.getRegion().getX());
+        assertEquals(50, queryImage.getRegion().getY());
+        assertEquals(300, queryImage.getRegion().getWidth());
+        assertEquals(150, queryImage.getRegion().getHeight());
+
+        BufferedImage image = readImage(queryImage.getImageData());
+        assertEquals(100, image.getWidth());
+        assertEquals(50, image.getHeight());
+
+        // Check a region found on the query image can be located on the original image
+        ImageRegion originalRegion = queryImage.toOriginalRegion(new ImageRegion(10, 10, 50, 20));
+        assertEquals(130, originalRegion.getX());
+        assertEquals(80, originalRegion.getY());
+        assertEquals(150, originalRegion.getWidth());
+        assertEquals(60, originalRegion.getHeight());
+    }
+
+    @Test
+    public void testCropAndReduceOrientedImage() throws IOException {
+        // The region goes beyond the displayed image bottom, it must be clipped
+        QueryImage queryImage = await(imageProcessingService.cropAndReduceAsync(
+                writeOrientedImage(), new ImageRegion(0, 200, 200, 300)));
+        assertEquals(0, queryImage.getRegion().getX());
+        assertEquals(200, queryImage.getRegion().getY());
+        assertEquals(200, queryImage.getRegion().getWidth());
+        assertEquals(200, queryImage.getRegion().getHeight());
+
+        BufferedImage image = readImage(queryImage.getImageData());
+        assertEquals(100, image.getWidth());
+        assertEquals(100, image.getHeight());
+        assertColor(0xFFFFFF, image.getRGB(25, 50));
+        assertColor(0x0000FF, image.getRGB(75, 50));
+
+        ImageRegion originalRegion = queryImage.toOriginalRegion(new ImageRegion(10, 10, 20, 20));
+        assertEquals(20, originalRegion.getX());
+        assertEquals(220, originalRegion.getY());
+        assertEquals(40, originalRegion.getWidth());
+        assertEquals(40, originalRegion.getHeight());
+    }
+
+    @Test
+    public void testReduceAndCrop() throws IOException {
+        ReducedImage reducedImage = await(imageProcessingService.reduceAsync(writeOrientedImage()));
+        assertEquals(50, reducedImage.getWidth());
+        assertEquals(100, reducedImage.getHeight());
+        assertEquals(50, readImage(reducedImage.getImageData()).getWidth());
+        assertEquals(0.25, reducedImage.getScale(), 0.0);
+
+        // The region is expressed in the coordinates of the original image, it must be clipped
+        QueryImage queryImage = await(imageProcessingService.cropAsync(reducedImage, new ImageRegion(0, 200, 200, 300)));
+        assertEquals(0, queryImage.getRegion().getX());
+        assertEquals(200, queryImage.getRegion().getY());
+        assertEquals(200, queryImage.getRegion().getWidth());
+        assertEquals(200, queryImage.getRegion().getHeight());
+
+        BufferedImage image = readImage(queryImage.getImageData());
+        assertEquals(50, image.getWidth());
+        assertEquals(50, image.getHeight());
+        assertColor(0xFFFFFF, image.getRGB(12, 25));
+        assertColor(0x0000FF, image.getRGB(37, 25));
+
+        ImageRegion originalRegion = queryImage.toOriginalRegion(new ImageRegion(10, 10, 20, 20));
+        assertEquals(40, originalRegion.getX());
+        assertEquals(240, originalRegion.getY());
+        assertEquals(80, originalRegion.getWidth());
+        assertEquals(80, originalRegion.getHeight());
+
+        // Without region the whole image is kept, without being encoded again
+        queryImage = await(imageProcessingService.cropAsync(reducedImage, null));
+        assertEquals(200, queryImage.getRegion().getWidth());
+        assertEquals(400, queryImage.getRegion().getHeight());
+        assertSame(reducedImage.getImageData(), queryImage.getImageData());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCropOutsideOfImage() throws IOException {
+        await(imageProcessingService.cropAndReduceAsync(writeJpeg(400, 200), new ImageRegion(500, 0, 10, 10)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCropOutsideOfReducedImage() throws IOException {
+        ReducedImage reducedImage = await(imageProcessingService.reduceAsync(writeJpeg(400, 200)));
+        await(imageProcessingService.cropAsync(reducedImage, new ImageRegion(500, 0, 10, 10)));
+    }
+
+    @Test
+    public void testRejectWhenPoolIsFull() throws Exception {
+        // Block the only thread of the pool, then fill its queue
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        ExecutorService executorService = (ExecutorService) ReflectionTestUtils.getField(imageProcessingService, "executorService");
+        executorService.execute(() -> {
+            try {
+                releaseLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        byte[] imageData = writeJpeg(300, 200);
+        CompletableFuture<Long> queuedHash = imageProcessingService.computePerceptualHashAsync(imageData);
+
+        // The caller is not blocked, the future fails so that the client retries later
+        CompletableFuture<Long> rejectedHash = imageProcessingService.computePerceptualHashAsync(imageData);
+        assertTrue(rejectedHash.isCompletedExceptionally());
+        try {
+            await(rejectedHash);
+            fail("The pool is full, the image must not be processed.");
+        } catch (UpstreamUnavailableException e) {
+            assertEquals(1, e.getRetryAfterSeconds());
+        }
+
+        releaseLatch.countDown();
+        assertEquals(await(queuedHash), await(imageProcessingService.computePerceptualHashAsync(imageData)));
+    }
+
+    @Test
+    public void testComputePerceptualHash() throws IOException {
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, (x * 255 / image.getWidth()) * 0x010101);
+            }
+        }
+        byte[] imageData = writeImage(image, "jpeg");
+
+        // The same image re-encoded in another format must have the same hash
+        long hash = await(imageProcessingService.computePerceptualHashAsync(imageData));
+        assertEquals(hash, (long) await(imageProcessingService.computePerceptualHashAsync(writeImage(image, "png"))));
+
+        // A different image must have a different hash
+        assertNotEquals(hash, (long) await(imageProcessingService.computePerceptualHashAsync(writeJpeg(300, 200))));
+    }
+
+    /**
+     * Wait for a future, and throw the exception that failed it.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static byte[] writeImage(BufferedImage image, String formatName) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, formatName, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] writeJpeg(int width, int height) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpeg", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Raster stored in landscape (400x200), displayed rotated by 90 degrees clockwise (portrait, 200x400): its right
+     * half (blue on top, white at the bottom) becomes the displayed bottom half (white on the left, blue on the right).
+     */
+    private static byte[] writeOrientedImage() throws IOException {
+        BufferedImage raster = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < raster.getWidth(); x++) {
+            for (int y = 0; y < raster.getHeight(); y++) {
+                raster.setRGB(x, y, x < 200 ? (y < 100 ? 0xFF0000 : 0x00FF00) : (y < 100 ? 0x0000FF : 0xFFFFFF));
+            }
+        }
+        return addExifOrientation(writeImage(raster, "jpeg"), 6);
+    }
+
+    private static BufferedImage readImage(byte[] imageData) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(imageData));
+    }
+
+    /**
+     * Check a color, with the tolerance required by the JPEG compression.
+     */
+    private static void assertColor(int expectedRgb, int actualRgb) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int expected = (expectedRgb >> shift) & 0xFF;
+            int actual = (actualRgb >> shift) & 0xFF;
+            assertTrue("Expected " + Integer.toHexString(expectedRgb) + " but was " + Integer.toHexString(actualRgb),
+                    Math.abs(expected - actual) < 32);
+        }
+    }
+
+    /**
+     * Insert an EXIF segment with the given orientation just after the JPEG start of image marker.
+     */
+    private static byte[] addExifOrientation(byte[] jpegData, int orientation) {
+        byte[] exif = {
+                (byte) 0xFF, (byte) 0xE1, 0, 34, // APP1 marker and length
+                'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8, // Big endian TIFF header, IFD0 at offset 8
+                0, 1, // 1 entry
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0, // Orientation (SHORT)
+                0, 0, 0, 0 // No next IFD
+        };
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(jpegData, 0, 2);
+        outputStream.write(exif, 0, exif.length);
+        outputStream.write(jpegData, 2, jpegData.length - 2);
+        return outputStream.toByteArray();
+    }
+}
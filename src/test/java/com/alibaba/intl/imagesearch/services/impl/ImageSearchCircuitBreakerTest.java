@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus;
+import com.alibaba.intl.imagesearch.model.dto.CircuitBreakerStatus.State;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.exceptions.ServerException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ImageSearchCircuitBreaker}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ImageSearchCircuitBreakerTest {
+
+    private static final String INSTANCE_NAME = "instance";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ImageSearchCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        circuitBreaker = new ImageSearchCircuitBreaker(meterRegistry);
+        ReflectionTestUtils.setField(circuitBreaker, "slidingWindowSize", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "minimumNumberOfCalls", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "failureRateThreshold", 50f);
+        ReflectionTestUtils.setField(circuitBreaker, "slowCallRateThreshold", 100f);
+        ReflectionTestUtils.setField(circuitBreaker, "searchSlowCallDuration", 1000L);
+        ReflectionTestUtils.setField(circuitBreaker, "registerSlowCallDuration", 1000L);
+        ReflectionTestUtils.setField(circuitBreaker, "deleteSlowCallDuration", 1000L);
+        ReflectionTestUtils.setField(circuitBreaker, "reconcileSlowCallDuration", 1000L);
+        ReflectionTestUtils.setField(circuitBreaker, "waitDurationInOpenState", 100L);
+        ReflectionTestUtils.setField(circuitBreaker, "permittedCallsInHalfOpenState", 2);
+        ReflectionTestUtils.setField(circuitBreaker, "transitionHistorySize", 10);
+        circuitBreaker.init();
+    }
+
+    @Test
+    public void testOpenAndClose() throws Exception {
+        // Two server errors out of four calls open the circuit breaker
+        search("ok");
+        search("ok");
+        failSearch(new ServerException("InternalError", "Internal error"));
+        assertEquals(State.CLOSED, getStatus(ImageSearchOperation.SEARCH).getState());
+        failSearch(new ServerException("InternalError", "Internal error"));
+        assertEquals(State.OPEN, getStatus(ImageSearchOperation.SEARCH).getState());
+
+        // Other instances and the reconciliation searches are not affected
+        assertEquals("ok", circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, "other-instance",
+                () -> CompletableFuture.completedFuture("ok")).get());
+        assertEquals(State.CLOSED, circuitBreaker.getStatuses().get(1).getState());
+        assertEquals("ok", circuitBreaker.executeAsync(ImageSearchOperation.RECONCILE, INSTANCE_NAME,
+                () -> CompletableFuture.completedFuture("ok")).get());
+        assertEquals(State.CLOSED, getStatus(ImageSearchOperation.RECONCILE).getState());
+
+        // Calls are rejected without being started
+        try {
+            circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, INSTANCE_NAME, () -> {
+                fail("The call must not be started when the circuit breaker is open.");
+                return null;
+            });
+            fail("The call must be rejected when the circuit breaker is open.");
+        } catch (UpstreamUnavailableException e) {
+            assertEquals(1, e.getRetryAfterSeconds());
+        }
+        assertEquals(1, meterRegistry.get("imageSearch.circuitBreaker.state")
+                .tag("operation", "search").tag("instance", INSTANCE_NAME).gauge().value(), 0);
+
+        // After the wait duration, successful trial calls close it
+        Thread.sleep(150);
+        assertEquals("ok", search("ok"));
+        assertEquals(State.HALF_OPEN, getStatus(ImageSearchOperation.SEARCH).getState());
+        assertEquals("ok", search("ok"));
+
+        CircuitBreakerStatus status = getStatus(ImageSearchOperation.SEARCH);
+        assertEquals(State.CLOSED, status.getState());
+        assertEquals(3, status.getTransitions().size());
+        assertEquals(State.OPEN, status.getTransitions().get(0).getToState());
+        assertEquals(State.HALF_OPEN, status.getTransitions().get(1).getToState());
+        assertEquals(State.CLOSED, status.getTransitions().get(2).getToState());
+    }
+
+    @Test
+    public void testOutcomeRecordedOnCompletion() throws Exception {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> future = circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, INSTANCE_NAME, () -> call);
+
+        // The original future is returned, its outcome is only recorded when it is completed
+        assertSame(call, future);
+        assertEquals(0, getStatus(ImageSearchOperation.SEARCH).getNumberOfCalls());
+        call.completeExceptionally(new ServerException("InternalError", "Internal error"));
+        CircuitBreakerStatus status = getStatus(ImageSearchOperation.SEARCH);
+        assertEquals(1, status.getNumberOfCalls());
+        assertEquals(100, status.getFailureRate(), 0);
+    }
+
+    @Test
+    public void testOutcomeOfPreviousStateIgnored() throws Exception {
+        // A slow call is started while the circuit breaker is closed, then it opens
+        CompletableFuture<String> slowCall = new CompletableFuture<>();
+        circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, INSTANCE_NAME, () -> slowCall);
+        for (int i = 0; i < 4; i++) {
+            failSearch(new ServerException("InternalError", "Internal error"));
+        }
+        assertEquals(State.OPEN, getStatus(ImageSearchOperation.SEARCH).getState());
+
+        // The slow call fails during the half-open state: it is not one of the trial calls
+        Thread.sleep(150);
+        assertEquals("ok", search("ok"));
+        slowCall.completeExceptionally(new ServerException("InternalError", "Internal error"));
+        CircuitBreakerStatus status = getStatus(ImageSearchOperation.SEARCH);
+        assertEquals(State.HALF_OPEN, status.getState());
+        assertEquals(1, status.getNumberOfCalls());
+        assertEquals(0, status.getFailureRate(), 0);
+
+        assertEquals("ok", search("ok"));
+        assertEquals(State.CLOSED, getStatus(ImageSearchOperation.SEARCH).getState());
+    }
+
+    @Test
+    public void testIgnoredErrors() throws Exception {
+        // Errors caused by the request itself do not open the circuit breaker
+        for (int i = 0; i < 4; i++) {
+            failSearch(new ClientException("InvalidParameter", "Invalid picture"));
+        }
+        CircuitBreakerStatus status = getStatus(ImageSearchOperation.SEARCH);
+        assertEquals(State.CLOSED, status.getState());
+        assertEquals(4, status.getNumberOfCalls());
+        assertEquals(0, status.getFailureRate(), 0);
+
+        // Calls abandoned by the caller (e.g. after a timeout) are not failures
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, INSTANCE_NAME, () -> call);
+            call.cancel(true);
+        }
+        status = getStatus(ImageSearchOperation.SEARCH);
+        assertEquals(State.CLOSED, status.getState());
+        assertEquals(0, status.getFailureRate(), 0);
+    }
+
+    @Test
+    public void testRejectedByLimiter() throws Exception {
+        // Calls rejected by the concurrency limiter do not reach the Image Search API, they are not recorded
+        for (int i = 0; i < 4; i++) {
+            failSearch(new UpstreamUnavailableException("Too many calls", 1));
+        }
+        assertEquals(0, getStatus(ImageSearchOperation.SEARCH).getNumberOfCalls());
+
+        // In the half-open state, their permissions are released for other trial calls
+        for (int i = 0; i < 4; i++) {
+            failSearch(new ServerException("InternalError", "Internal error"));
+        }
+        assertEquals(State.OPEN, getStatus(ImageSearchOperation.SEARCH).getState());
+        Thread.sleep(150);
+        failSearch(new UpstreamUnavailableException("Too many calls", 1));
+        failSearch(new UpstreamUnavailableException("Too many calls", 1));
+        assertEquals(State.HALF_OPEN, getStatus(ImageSearchOperation.SEARCH).getState());
+        assertEquals("ok", search("ok"));
+        assertEquals("ok", search("ok"));
+        assertEquals(State.CLOSED, getStatus(ImageSearchOperation.SEARCH).getState());
+    }
+
+    private String search(String result) throws Exception {
+        return circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, INSTANCE_NAME,
+                () -> CompletableFuture.completedFuture(result)).get();
+    }
+
+    private void failSearch(Exception exception) {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        call.completeExceptionally(exception);
+        try {
+            circuitBreaker.executeAsync(ImageSearchOperation.SEARCH, INSTANCE_NAME, () -> call).get();
+            fail("The exception must be propagated.");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CircuitBreakerStatus getStatus(ImageSearchOperation operation) {
+        List<CircuitBreakerStatus> statuses = circuitBreaker.getStatuses();
+        return statuses.stream()
+                .filter(status -> status.getOperation() == operation && INSTANCE_NAME.equals(status.getInstanceName()))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+}
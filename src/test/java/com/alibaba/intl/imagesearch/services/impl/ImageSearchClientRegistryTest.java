@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.events.ConfigurationSavedEvent;
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.aliyuncs.IAcsClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test the {@link ImageSearchClientRegistry}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ImageSearchClientRegistryTest {
+
+    private static final long RETIRED_CLIENT_SHUTDOWN_DELAY = 200;
+
+    private ImageSearchClientRegistry registry;
+
+    @Before
+    public void setup() {
+        ImageSearchClientRegistry realRegistry = new ImageSearchClientRegistry();
+        ReflectionTestUtils.setField(realRegistry, "retiredClientShutdownDelay", RETIRED_CLIENT_SHUTDOWN_DELAY);
+
+        // Each created client is a distinct mock, so that the tests can check which one is re-used or shut down
+        registry = spy(realRegistry);
+        doAnswer(invocation -> mock(IAcsClient.class)).when(registry).createClient(any(Configuration.class));
+    }
+
+    @After
+    public void shutdown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void testClientReuse() {
+        IAcsClient client = registry.getClient(createConfiguration("cn-shanghai", "instance1"));
+        assertSame(client, registry.getClient(createConfiguration("cn-shanghai", "instance1")));
+
+        // The instance name is a request parameter, the client is shared by the instances of the same region
+        assertSame(client, registry.getClient(createConfiguration("cn-shanghai", "instance2")));
+
+        // Another region needs another client
+        IAcsClient otherClient = registry.getClient(createConfiguration("cn-hangzhou", "instance1"));
+        assertNotSame(client, otherClient);
+        verify(registry, times(2)).createClient(any(Configuration.class));
+    }
+
+    @Test
+    public void testRetireClientsOnConfigurationSaved() {
+        Configuration configuration = createConfiguration("cn-shanghai", "instance1");
+        IAcsClient retiredClient = registry.getClient(configuration);
+
+        registry.onConfigurationSaved(new ConfigurationSavedEvent(this, configuration));
+
+        // New calls get a new client, while the in-flight requests of the retired one have time to complete
+        IAcsClient newClient = registry.getClient(configuration);
+        assertNotSame(retiredClient, newClient);
+        verify(retiredClient, never()).shutdown();
+
+        verify(retiredClient, timeout(10 * RETIRED_CLIENT_SHUTDOWN_DELAY)).shutdown();
+        verify(newClient, never()).shutdown();
+    }
+
+    @Test
+    public void testShutdown() {
+        IAcsClient client = registry.getClient(createConfiguration("cn-shanghai", "instance1"));
+
+        registry.shutdown();
+        verify(client).shutdown();
+    }
+
+    private static Configuration createConfiguration(String regionId, String instanceName) {
+        return new Configuration("MAIN_CONFIGURATION", null, "accessKeyId", "accessKeySecret", regionId,
+                instanceName, "imagesearch." + regionId + ".aliyuncs.com", null, "https://oss.example.com/");
+    }
+}
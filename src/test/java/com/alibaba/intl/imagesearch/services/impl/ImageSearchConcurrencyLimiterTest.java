@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.exceptions.UpstreamUnavailableException;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.exceptions.ServerException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ImageSearchConcurrencyLimiter}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ImageSearchConcurrencyLimiterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ImageSearchConcurrencyLimiter limiter;
+
+    @Before
+    public void setup() {
+        limiter = new ImageSearchConcurrencyLimiter(meterRegistry);
+        for (String operation : new String[]{"search", "register", "delete"}) {
+            ReflectionTestUtils.setField(limiter, operation + "InitialLimit", 2);
+            ReflectionTestUtils.setField(limiter, operation + "MaxLimit", 4);
+            ReflectionTestUtils.setField(limiter, operation + "LatencyThreshold", 1000L);
+        }
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        ReflectionTestUtils.setField(limiter, "backoffRatio", 0.5);
+        ReflectionTestUtils.setField(limiter, "retryAfter", 3L);
+        limiter.init();
+    }
+
+    @Test
+    public void testBulkhead() throws Exception {
+        // Fill the search limit: the next search is rejected, but other operations are not affected
+        CompletableFuture<String> call1 = limiter.executeAsync(ImageSearchOperation.SEARCH, CompletableFuture::new);
+        CompletableFuture<String> call2 = limiter.executeAsync(ImageSearchOperation.SEARCH, CompletableFuture::new);
+        try {
+            limiter.executeAsync(ImageSearchOperation.SEARCH, () -> CompletableFuture.completedFuture("rejected"));
+            fail("The call must be rejected when the limit is reached.");
+        } catch (UpstreamUnavailableException e) {
+            assertEquals(3, e.getRetryAfterSeconds());
+        }
+        assertEquals("deleted", limiter.executeAsync(ImageSearchOperation.DELETE,
+                () -> CompletableFuture.completedFuture("deleted")).get());
+        assertEquals(1, meterRegistry.get("imageSearch.limiter.rejections").tag("operation", "search").counter().count(), 0);
+        assertEquals(2, meterRegistry.get("imageSearch.limiter.inFlight").tag("operation", "search").gauge().value(), 0);
+
+        // The limit is released when the calls are completed
+        call1.complete("ok");
+        call2.complete("ok");
+        assertEquals("accepted", search(CompletableFuture.completedFuture("accepted")));
+        assertEquals(0, meterRegistry.get("imageSearch.limiter.inFlight").tag("operation", "search").gauge().value(), 0);
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws Exception {
+        // Fast calls increase the limit only while they use at least half of it
+        for (int i = 0; i < 4; i++) {
+            search(CompletableFuture.completedFuture("ok"));
+        }
+        assertEquals(3, limiter.getLimit(ImageSearchOperation.SEARCH));
+        CompletableFuture<String> outerCall = limiter.executeAsync(ImageSearchOperation.SEARCH, CompletableFuture::new);
+        search(CompletableFuture.completedFuture("ok"));
+        outerCall.complete("ok");
+        assertEquals(4, limiter.getLimit(ImageSearchOperation.SEARCH));
+
+        // Server errors decrease it down to the minimum
+        for (int i = 0; i < 4; i++) {
+            failSearch(new ServerException("InternalError", "Internal error"));
+        }
+        assertEquals(1, limiter.getLimit(ImageSearchOperation.SEARCH));
+
+        // Errors caused by the request itself do not decrease it
+        search(CompletableFuture.completedFuture("ok"));
+        assertEquals(2, limiter.getLimit(ImageSearchOperation.SEARCH));
+        failSearch(new ClientException("InvalidParameter", "Invalid picture"));
+        assertEquals(3, limiter.getLimit(ImageSearchOperation.SEARCH));
+
+        // Neither do calls abandoned by the caller (e.g. after a timeout)
+        CompletableFuture<String> abandonedCall = limiter.executeAsync(ImageSearchOperation.SEARCH, CompletableFuture::new);
+        abandonedCall.cancel(true);
+        assertEquals(3, limiter.getLimit(ImageSearchOperation.SEARCH));
+        assertEquals(0, limiter.getInFlight(ImageSearchOperation.SEARCH));
+    }
+
+    @Test
+    public void testSingleDecreasePerCongestion() throws Exception {
+        ReflectionTestUtils.setField(limiter, "searchInitialLimit", 4);
+        limiter.init();
+
+        // A burst of calls in progress together fails: the limit is decreased only once
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calls.add(limiter.executeAsync(ImageSearchOperation.SEARCH, CompletableFuture::new));
+        }
+        for (CompletableFuture<String> call : calls) {
+            call.completeExceptionally(new ServerException("InternalError", "Internal error"));
+        }
+        assertEquals(2, limiter.getLimit(ImageSearchOperation.SEARCH));
+        assertEquals(0, limiter.getInFlight(ImageSearchOperation.SEARCH));
+
+        // A call started after the decrease that fails again decreases it again
+        failSearch(new ServerException("InternalError", "Internal error"));
+        assertEquals(1, limiter.getLimit(ImageSearchOperation.SEARCH));
+    }
+
+    private String search(CompletableFuture<String> call) throws Exception {
+        return limiter.executeAsync(ImageSearchOperation.SEARCH, () -> call).get();
+    }
+
+    private void failSearch(Exception exception) {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        call.completeExceptionally(exception);
+        try {
+            search(call);
+            fail("The exception must be propagated.");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
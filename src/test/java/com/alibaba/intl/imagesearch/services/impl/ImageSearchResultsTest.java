@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ImageSearchResults}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ImageSearchResultsTest {
+
+    @Test
+    public void testMerge() {
+        // The item "b" is in both instances, for example because it has been moved to "instance2" and its copy in
+        // "instance1" has not been deleted yet
+        List<ScatterGatherExecutor.Result<ImageSearchResults.InstanceResult>> results = Arrays.asList(
+                success(auction("a", 0.9), auction("b", 0.7)),
+                success(auction("b", 0.8), auction("c", 0.6)),
+                new ScatterGatherExecutor.Result<>(null, new TimeoutException("Too late.")));
+
+        ImageSearchResponse response = ImageSearchResults.merge(
+                Arrays.asList("instance1", "instance2", "instance3"), null, results, 3, "Unable to search: ");
+        List<String> itemIds = response.getImageSearchAuctions().stream()
+                .map(ImageSearchAuction::getItemId)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("a", "b", "c"), itemIds);
+        assertEquals(0.8, response.getImageSearchAuctions().get(1).getSimilarityScore(), 0.0);
+        assertTrue(response.isPartial());
+    }
+
+    private static ScatterGatherExecutor.Result<ImageSearchResults.InstanceResult> success(ImageSearchAuction... auctions) {
+        return new ScatterGatherExecutor.Result<>(
+                new ImageSearchResults.InstanceResult(Collections.emptyMap(), Arrays.asList(auctions), null), null);
+    }
+
+    private static ImageSearchAuction auction(String itemId, double score) {
+        return new ImageSearchAuction(itemId, "0", itemId + ".jpg", ImageStoreType.OSS, score, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ImageSearchShards}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ImageSearchShardsTest {
+
+    @Test
+    public void testParseInstanceNames() {
+        assertEquals(Arrays.asList("instance1"), ImageSearchShards.parseInstanceNames("instance1"));
+        assertEquals(Arrays.asList("instance1", "instance2"), ImageSearchShards.parseInstanceNames(" instance1, ,instance2 "));
+        assertTrue(ImageSearchShards.parseInstanceNames(" ").isEmpty());
+    }
+
+    @Test
+    public void testSelectInstanceName() {
+        List<String> twoInstances = Arrays.asList("instance1", "instance2");
+        List<String> threeInstances = Arrays.asList("instance1", "instance2", "instance3");
+
+        Map<String, Integer> nbItemsByInstance = new HashMap<>();
+        int nbMovedItems = 0;
+        for (int i = 0; i < 3000; i++) {
+            String uuid = UUID.randomUUID().toString();
+            String instanceName = ImageSearchShards.selectInstanceName(twoInstances, uuid);
+            assertEquals("The assignment must be stable.", instanceName, ImageSearchShards.selectInstanceName(twoInstances, uuid));
+
+            // Adding an instance only moves items to the new instance
+            String newInstanceName = ImageSearchShards.selectInstanceName(threeInstances, uuid);
+            if (!newInstanceName.equals(instanceName)) {
+                assertEquals("instance3", newInstanceName);
+                nbMovedItems++;
+            }
+            nbItemsByInstance.merge(newInstanceName, 1, Integer::sum);
+        }
+
+        // Items are evenly distributed
+        for (String instanceName : threeInstances) {
+            assertTrue(nbItemsByInstance.get(instanceName) > 800);
+        }
+        assertTrue(nbMovedItems < 1200);
+    }
+}
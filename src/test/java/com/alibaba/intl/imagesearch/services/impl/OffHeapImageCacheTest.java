@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.model.ObjectImageType;
+import com.alibaba.intl.imagesearch.model.ObjectImageVariant;
+import com.alibaba.intl.imagesearch.model.dto.ObjectImage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link OffHeapImageCache}.
+ *
+ * @author Alibaba Cloud
+ */
+public class OffHeapImageCacheTest {
+
+    private static final String UUID_A = "2f2431d9-f4ce-48c6-990c-44221ef102d6";
+    private static final String UUID_B = "a19c24f2-d2b3-4920-997f-5958210e6518";
+    private static final String UUID_C = "0761a462-f46c-4b6d-9017-075fbe2a3797";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OffHeapImageCache offHeapImageCache;
+
+    @Before
+    public void setup() {
+        offHeapImageCache = new OffHeapImageCache(meterRegistry);
+        ReflectionTestUtils.setField(offHeapImageCache, "capacity", 200L);
+        ReflectionTestUtils.setField(offHeapImageCache, "maxEntrySize", 150L);
+        offHeapImageCache.init();
+    }
+
+    @Test
+    public void testGetAndInvalidate() throws IOException {
+        byte[] data = buildData(100, (byte) 1);
+
+        assertNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.THUMBNAIL));
+        ObjectImage image = offHeapImageCache.load(UUID_A, ObjectImageVariant.THUMBNAIL, buildImage(data), offHeapImageCache.getGeneration());
+        assertArrayEquals(data, readData(image));
+
+        // The image must now come from the cache and be readable several times
+        ObjectImage cachedImage = offHeapImageCache.get(UUID_A, ObjectImageVariant.THUMBNAIL);
+        assertNotNull(cachedImage);
+        assertEquals(100, cachedImage.getContentLength());
+        assertEquals("hash", cachedImage.getHash());
+        assertEquals(ObjectImageType.JPEG, cachedImage.getImageType());
+        assertArrayEquals(data, readData(cachedImage));
+        assertArrayEquals(data, readData(cachedImage));
+        assertNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.IMAGE));
+
+        // Invalidate the object
+        offHeapImageCache.invalidate(UUID_A);
+        assertNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.THUMBNAIL));
+        assertEquals(0, meterRegistry.get("cache.weight").gauge().value(), 0);
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count(), 0);
+        assertEquals(3, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count(), 0);
+    }
+
+    @Test
+    public void testInvalidationDuringLoad() {
+        long generation = offHeapImageCache.getGeneration();
+        offHeapImageCache.invalidate(UUID_A);
+        offHeapImageCache.load(UUID_A, ObjectImageVariant.IMAGE, buildImage(buildData(100, (byte) 1)), generation);
+
+        assertNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.IMAGE));
+    }
+
+    @Test
+    public void testFrequencyAwareEviction() {
+        // Fill the cache with 2 images, A being requested more often than B
+        for (int i = 0; i < 3; i++) {
+            offHeapImageCache.get(UUID_A, ObjectImageVariant.THUMBNAIL);
+        }
+        offHeapImageCache.load(UUID_A, ObjectImageVariant.THUMBNAIL, buildImage(buildData(100, (byte) 1)), offHeapImageCache.getGeneration());
+        offHeapImageCache.get(UUID_B, ObjectImageVariant.THUMBNAIL);
+        offHeapImageCache.load(UUID_B, ObjectImageVariant.THUMBNAIL, buildImage(buildData(100, (byte) 2)), offHeapImageCache.getGeneration());
+        assertNotNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.THUMBNAIL));
+
+        // A one-time image must not evict them
+        offHeapImageCache.get(UUID_C, ObjectImageVariant.THUMBNAIL);
+        offHeapImageCache.load(UUID_C, ObjectImageVariant.THUMBNAIL, buildImage(buildData(100, (byte) 3)), offHeapImageCache.getGeneration());
+        assertNull(offHeapImageCache.get(UUID_C, ObjectImageVariant.THUMBNAIL));
+        assertEquals(1, meterRegistry.get("cache.admission.rejections").functionCounter().count(), 0);
+
+        // When C becomes more popular than B, it replaces it
+        for (int i = 0; i < 3; i++) {
+            offHeapImageCache.get(UUID_C, ObjectImageVariant.THUMBNAIL);
+        }
+        offHeapImageCache.load(UUID_C, ObjectImageVariant.THUMBNAIL, buildImage(buildData(100, (byte) 3)), offHeapImageCache.getGeneration());
+        assertNotNull(offHeapImageCache.get(UUID_C, ObjectImageVariant.THUMBNAIL));
+        assertNotNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.THUMBNAIL));
+        assertNull(offHeapImageCache.get(UUID_B, ObjectImageVariant.THUMBNAIL));
+        assertEquals(1, meterRegistry.get("cache.evictions").functionCounter().count(), 0);
+        assertEquals(200, meterRegistry.get("cache.weight").gauge().value(), 0);
+    }
+
+    @Test
+    public void testTooLargeImage() {
+        ObjectImage image = buildImage(buildData(151, (byte) 1));
+        assertSame(image, offHeapImageCache.load(UUID_A, ObjectImageVariant.IMAGE, image, offHeapImageCache.getGeneration()));
+        assertNull(offHeapImageCache.get(UUID_A, ObjectImageVariant.IMAGE));
+    }
+
+    private static byte[] buildData(int size, byte value) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, value);
+        return data;
+    }
+
+    private static ObjectImage buildImage(byte[] data) {
+        return new ObjectImage(ObjectImageType.JPEG, data.length, "hash", new ByteArrayResource(data));
+    }
+
+    private static byte[] readData(ObjectImage image) throws IOException {
+        try (InputStream inputStream = image.getData().getInputStream()) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+}
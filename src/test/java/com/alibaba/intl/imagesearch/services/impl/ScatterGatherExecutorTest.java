@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.aliyuncs.exceptions.ServerException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link ScatterGatherExecutor}.
+ *
+ * @author Alibaba Cloud
+ */
+public class ScatterGatherExecutorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ScatterGatherExecutor scatterGatherExecutor;
+
+    @Before
+    public void setup() {
+        scatterGatherExecutor = new ScatterGatherExecutor(meterRegistry);
+        ReflectionTestUtils.setField(scatterGatherExecutor, "timeout", 200L);
+        scatterGatherExecutor.init();
+    }
+
+    @After
+    public void shutdown() {
+        scatterGatherExecutor.shutdown();
+    }
+
+    @Test
+    public void testPartialResults() throws Exception {
+        CompletableFuture<String> failedCall = new CompletableFuture<>();
+        failedCall.completeExceptionally(new ServerException("InternalError", "shard2 failure"));
+        CompletableFuture<String> slowCall = new CompletableFuture<>();
+
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<List<ScatterGatherExecutor.Result<String>>> future = scatterGatherExecutor.gatherAsync(
+                Arrays.asList(CompletableFuture.completedFuture("shard1"), failedCall, slowCall));
+
+        // The caller is not blocked, the future is completed at the timeout and the slow call is cancelled
+        assertFalse(future.isDone());
+        List<ScatterGatherExecutor.Result<String>> results = future.get(2, TimeUnit.SECONDS);
+        assertTrue(System.currentTimeMillis() - startTime < 2000);
+        assertEquals(3, results.size());
+        assertEquals("shard1", results.get(0).getValue());
+        assertTrue(results.get(1).getError() instanceof ServerException);
+        assertTrue(results.get(2).getError() instanceof TimeoutException);
+        try {
+            slowCall.get(1, TimeUnit.SECONDS);
+            fail("The slow call must be cancelled.");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        assertEquals(1, meterRegistry.get("imageSearch.scatterGather.timeouts").counter().count(), 0);
+    }
+
+    @Test
+    public void testAllCompleted() throws Exception {
+        List<ScatterGatherExecutor.Result<String>> results = scatterGatherExecutor.gatherAsync(Arrays.asList(
+                CompletableFuture.completedFuture("shard1"),
+                CompletableFuture.completedFuture("shard2"))).get(1, TimeUnit.SECONDS);
+        assertEquals("shard1", results.get(0).getValue());
+        assertEquals("shard2", results.get(1).getValue());
+        assertEquals(0, meterRegistry.get("imageSearch.scatterGather.timeouts").counter().count(), 0);
+
+        // The cancelled timeout task must not stay queued with the results until the timeout expires
+        ScheduledThreadPoolExecutor timeoutScheduler =
+                (ScheduledThreadPoolExecutor) ReflectionTestUtils.getField(scatterGatherExecutor, "timeoutScheduler");
+        assertEquals(0, timeoutScheduler.getQueue().size());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import com.alibaba.intl.imagesearch.events.CatalogChangedEvent;
+import com.alibaba.intl.imagesearch.model.dto.ImageRegion;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchResponse;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link SearchResultCache}.
+ *
+ * @author Alibaba Cloud
+ */
+public class SearchResultCacheTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger nbSearches = new AtomicInteger();
+    private SearchResultCache searchResultCache;
+
+    @Before
+    public void setup() {
+        searchResultCache = new SearchResultCache(meterRegistry);
+        ReflectionTestUtils.setField(searchResultCache, "maximumWeight", 1024 * 1024L);
+        ReflectionTestUtils.setField(searchResultCache, "timeToLive", 60000L);
+        ReflectionTestUtils.setField(searchResultCache, "refreshAfter", 60000L);
+        searchResultCache.init();
+    }
+
+    @Test
+    public void testCacheAndInvalidation() {
+        ImageSearchResponse response = get("key", this::search);
+        assertEquals(response.getRawImageSearchResponseJson(), get("key", this::search).getRawImageSearchResponseJson());
+        assertEquals(1, nbSearches.get());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count(), 0);
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count(), 0);
+
+        // A change in the catalog must invalidate the results
+        searchResultCache.onCatalogChanged(new CatalogChangedEvent(this, Collections.singletonList("uuid")));
+        assertNotEquals(response.getRawImageSearchResponseJson(), get("key", this::search).getRawImageSearchResponseJson());
+        assertEquals(2, nbSearches.get());
+    }
+
+    @Test
+    public void testCallersGetCopies() {
+        ImageSearchResponse response = searchResultCache.getAsync("key", () -> CompletableFuture.completedFuture(
+                new ImageSearchResponse(new ArrayList<>(Collections.singletonList(
+                        new ImageSearchAuction("item1", "0", "item1.jpg", ImageStoreType.OSS, 0.9, null))),
+                        "{}", new ImageRegion(1, 2, 3, 4)))).join();
+
+        // Modifying the result of a caller must not modify the cached result
+        response.getImageSearchAuctions().get(0).setItemId("modified");
+        response.getImageSearchAuctions().clear();
+        response.getObjectRegion().setX(10);
+
+        ImageSearchResponse cachedResponse = get("key", this::search);
+        assertEquals(0, nbSearches.get());
+        assertEquals("item1", cachedResponse.getImageSearchAuctions().get(0).getItemId());
+        assertEquals(1, cachedResponse.getObjectRegion().getX());
+
+        cachedResponse.getImageSearchAuctions().clear();
+        assertEquals(1, get("key", this::search).getImageSearchAuctions().size());
+    }
+
+    @Test
+    public void testSearchDuringCatalogChange() {
+        // The catalog changes while searching, the result must not be cached
+        get("key", () -> {
+            searchResultCache.onCatalogChanged(new CatalogChangedEvent(this, Collections.singletonList("uuid")));
+            return search();
+        });
+        get("key", this::search);
+        assertEquals(2, nbSearches.get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws InterruptedException {
+        ReflectionTestUtils.setField(searchResultCache, "refreshAfter", 0L);
+        ImageSearchResponse response = get("key", this::search);
+        Thread.sleep(1);
+
+        // The stale result must be returned immediately, then replaced in background
+        assertEquals(response.getRawImageSearchResponseJson(), get("key", this::search).getRawImageSearchResponseJson());
+        ReflectionTestUtils.setField(searchResultCache, "refreshAfter", 60000L);
+        ImageSearchResponse refreshedResponse = waitForRefresh("key", response);
+        assertNotEquals(response.getRawImageSearchResponseJson(), refreshedResponse.getRawImageSearchResponseJson());
+        assertEquals(2, nbSearches.get());
+        assertTrue(meterRegistry.get("cache.gets.stale").counter().count() >= 1);
+    }
+
+    private ImageSearchResponse waitForRefresh(String key, ImageSearchResponse staleResponse) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            ImageSearchResponse response = get(key, this::search);
+            if (!response.getRawImageSearchResponseJson().equals(staleResponse.getRawImageSearchResponseJson())) {
+                return response;
+            }
+            Thread.sleep(10);
+        }
+        fail("The stale result has not been refreshed.");
+        return null;
+    }
+
+    private ImageSearchResponse get(String key, Supplier<ImageSearchResponse> search) {
+        return searchResultCache.getAsync(key, () -> CompletableFuture.completedFuture(search.get())).join();
+    }
+
+    private ImageSearchResponse search() {
+        // Each search gives a distinct result
+        int searchIndex = nbSearches.incrementAndGet();
+        return new ImageSearchResponse(Collections.emptyList(), "{\"search\": " + searchIndex + "}", null);
+    }
+}
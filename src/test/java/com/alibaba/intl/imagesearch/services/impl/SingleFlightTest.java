@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the {@link SingleFlight}.
+ *
+ * @author Alibaba Cloud
+ */
+public class SingleFlightTest {
+
+    private static final int NB_CALLERS = 8;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger nbCalls = new AtomicInteger();
+    private final CountDownLatch callStarted = new CountDownLatch(1);
+    private final CountDownLatch callReleased = new CountDownLatch(1);
+    private final CountDownLatch waitersJoined = new CountDownLatch(NB_CALLERS - 1);
+    private final ExecutorService executorService = Executors.newFixedThreadPool(NB_CALLERS);
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        List<Future<String>> results = startCallers(() -> "result");
+        waitForWaiters();
+        callReleased.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("result", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, nbCalls.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+
+        // Once completed, the call is executed again
+        assertEquals("other", singleFlight.executeAsync("key",
+                () -> CompletableFuture.completedFuture("other")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailurePropagation() throws Exception {
+        List<Future<String>> results = startCallers(() -> {
+            throw new IllegalStateException("upstream failure");
+        });
+        waitForWaiters();
+        callReleased.countDown();
+
+        for (Future<String> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("The failure must be propagated to all the callers.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("upstream failure", e.getCause().getMessage());
+            }
+        }
+        assertEquals(1, nbCalls.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testWaiterCancellation() throws Exception {
+        CompletableFuture<String> asyncCall = new CompletableFuture<>();
+        CompletableFuture<String> leaderResult = singleFlight.executeAsync("key", () -> {
+            nbCalls.incrementAndGet();
+            return asyncCall;
+        });
+        CompletableFuture<String> waiterResult = singleFlight.executeAsync("key", () -> {
+            nbCalls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        CompletableFuture<String> otherWaiterResult = singleFlight.executeAsync("key", () -> {
+            nbCalls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+
+        // Cancel one waiter (not the leader): the call and the other callers must not be affected
+        waiterResult.cancel(true);
+        assertFalse(asyncCall.isCancelled());
+        assertFalse(leaderResult.isDone());
+        assertFalse(otherWaiterResult.isDone());
+
+        asyncCall.complete("result");
+        assertTrue(waiterResult.isCancelled());
+        assertEquals("result", leaderResult.get(5, TimeUnit.SECONDS));
+        assertEquals("result", otherWaiterResult.get(5, TimeUnit.SECONDS));
+        assertEquals(1, nbCalls.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testAsyncCoalescing() throws Exception {
+        CompletableFuture<String> asyncCall = new CompletableFuture<>();
+        CompletableFuture<String> result1 = singleFlight.executeAsync("key", () -> {
+            nbCalls.incrementAndGet();
+            return asyncCall;
+        });
+        CompletableFuture<String> result2 = singleFlight.executeAsync("key", () -> {
+            nbCalls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        assertFalse(result1.isDone());
+        assertEquals(1, singleFlight.getInFlightCount());
+
+        // Both callers get the result without blocking a thread while waiting
+        asyncCall.complete("result");
+        assertEquals("result", result1.get(5, TimeUnit.SECONDS));
+        assertEquals("result", result2.get(5, TimeUnit.SECONDS));
+        assertEquals(1, nbCalls.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    private List<Future<String>> startCallers(Supplier<String> call) throws InterruptedException {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < NB_CALLERS; i++) {
+            results.add(executorService.submit(() -> {
+                CompletableFuture<String> result = singleFlight.executeAsync("key", () -> {
+                    nbCalls.incrementAndGet();
+                    callStarted.countDown();
+                    try {
+                        callReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return CompletableFuture.completedFuture(call.get());
+                });
+                // Note: the leader only gets its future once the call is released
+                waitersJoined.countDown();
+                return join(result);
+            }));
+        }
+        assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private void waitForWaiters() throws InterruptedException {
+        // The other callers have joined the call in progress
+        assertTrue(waitersJoined.await(5, TimeUnit.SECONDS));
+    }
+}
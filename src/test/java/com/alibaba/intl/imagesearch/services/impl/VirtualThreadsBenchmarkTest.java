@@ -0,0 +1,310 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.intl.imagesearch.services.impl;
+
+import ch.qos.logback.classic.Level;
+import com.alibaba.intl.imagesearch.AbstractTest;
+import com.alibaba.intl.imagesearch.facade.controllers.ObjectController;
+import com.alibaba.intl.imagesearch.model.Configuration;
+import com.alibaba.intl.imagesearch.model.ObjectCategory;
+import com.alibaba.intl.imagesearch.model.dto.ImageSearchAuction;
+import com.alibaba.intl.imagesearch.model.dto.ImageStoreType;
+import com.alibaba.intl.imagesearch.services.ConfigurationService;
+import com.alibaba.intl.imagesearch.services.ImageSearchOperation;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+
+/**
+ * Measure the number of concurrent searches sustained by "/objects/findAllBySimilarImage" with the real beans (single
+ * flight, result cache, concurrency limiter, circuit breaker, hedging, scatter-gather and catalog join), when the
+ * Image Search API answers in a constant time.
+ * <p>
+ * The transport is replaced by a non-blocking stub, so no thread is held while a search waits for the API, whatever
+ * the "virtualThreads.enabled" mode. The concurrency is capped by the limiter ("imageSearchLimiter.search.maxLimit"):
+ * the searches above it must be rejected instead of queuing. The upstream latency is long compared to the processing
+ * of a search, so that the limiter is reached before the CPU is saturated.
+ * <p>
+ * Skipped by default, run it with: mvn test -Dtest=VirtualThreadsBenchmarkTest -Dbenchmark=true
+ *
+ * @author Alibaba Cloud
+ */
+public class VirtualThreadsBenchmarkTest extends AbstractTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadsBenchmarkTest.class);
+    private static final long UPSTREAM_LATENCY = 1000;
+    private static final long LEVEL_DURATION = 6000;
+    private static final int[] CONCURRENCY_LEVELS = {16, 32, 64, 128};
+
+    @Value("${imageSearchLimiter.search.maxLimit}")
+    private int searchMaxLimit;
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    private ImageSearchServiceImpl imageSearchService;
+
+    @Autowired
+    private ObjectController objectController;
+
+    private final ScheduledExecutorService upstreamScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger upstreamInFlight = new AtomicInteger();
+    private final AtomicInteger upstreamMaxInFlight = new AtomicInteger();
+    private MockMvc mockMvc;
+    private Object originalTransport;
+    private Object originalConfigurationService;
+    private Level originalLogLevel;
+    private Level originalFacadeLogLevel;
+
+    @Before
+    public void setup() {
+        Assume.assumeTrue("Benchmark disabled, enable it with -Dbenchmark=true.", Boolean.getBoolean("benchmark"));
+
+        mockMvc = MockMvcBuilders.webAppContextSetup(wac).build();
+        originalTransport = ReflectionTestUtils.getField(imageSearchService, "imageSearchTransport");
+        originalConfigurationService = ReflectionTestUtils.getField(imageSearchService, "configurationService");
+        ReflectionTestUtils.setField(imageSearchService, "imageSearchTransport", createStubTransport());
+        ConfigurationService configurationService = mock(ConfigurationService.class);
+        when(configurationService.load()).thenReturn(new Configuration("MAIN_CONFIGURATION", null, "accessKeyId",
+                "accessKeySecret", "cn-shanghai", "benchmark-instance", null, null, "https://oss.example.com/"));
+        ReflectionTestUtils.setField(imageSearchService, "configurationService", configurationService);
+        ReflectionTestUtils.setField(objectController, "configurationService", configurationService);
+
+        // One log line per search (or per rejected search) would measure the logger
+        originalLogLevel = setLogLevel("com.alibaba.intl.imagesearch", Level.WARN);
+        originalFacadeLogLevel = setLogLevel("com.alibaba.intl.imagesearch.facade", Level.ERROR);
+    }
+
+    @After
+    public void restore() {
+        if (originalTransport != null) {
+            ReflectionTestUtils.setField(imageSearchService, "imageSearchTransport", originalTransport);
+            ReflectionTestUtils.setField(imageSearchService, "configurationService", originalConfigurationService);
+            ReflectionTestUtils.setField(objectController, "configurationService", originalConfigurationService);
+            setLogLevel("com.alibaba.intl.imagesearch", originalLogLevel);
+            setLogLevel("com.alibaba.intl.imagesearch.facade", originalFacadeLogLevel);
+        }
+        upstreamScheduler.shutdownNow();
+    }
+
+    @Test
+    public void measureMaxSustainedConcurrentSearches() throws Exception {
+        int maxSustainedConcurrency = 0;
+        LevelResult overCapacityResult = null;
+        for (int concurrency : CONCURRENCY_LEVELS) {
+            LevelResult result = runLevel(concurrency);
+            if (concurrency > searchMaxLimit) {
+                overCapacityResult = result;
+            } else if (result.isSustained()) {
+                maxSustainedConcurrency = concurrency;
+            }
+        }
+        LOGGER.warn("Max sustained concurrent searches: {} (limiter max limit = {}, max upstream calls in flight = {}).",
+                maxSustainedConcurrency, searchMaxLimit, upstreamMaxInFlight.get());
+
+        // Up to the limiter cap, the searches must be served without queuing
+        assertEquals(searchMaxLimit, maxSustainedConcurrency);
+
+        // Above it, the limiter must bound the upstream calls and reject the excess, the accepted searches still
+        // being served without queuing
+        assertTrue(upstreamMaxInFlight.get() <= searchMaxLimit);
+        assertNotNull(overCapacityResult);
+        assertTrue(overCapacityResult.nbRejectedSearches > 0);
+        assertEquals(0, overCapacityResult.nbFailedSearches);
+        assertTrue(overCapacityResult.p99Latency <= 2 * UPSTREAM_LATENCY);
+    }
+
+    /**
+     * Run concurrent clients that search again as soon as they get a response (or after the "Retry-After" delay
+     * when their search is rejected), during {@link #LEVEL_DURATION}.
+     */
+    private LevelResult runLevel(int concurrency) throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(concurrency);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger nbRejectedSearches = new AtomicInteger();
+        AtomicInteger nbFailedSearches = new AtomicInteger();
+        long endTime = System.currentTimeMillis() + LEVEL_DURATION;
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                Random random = new Random();
+                clients.add(clientExecutor.submit(() -> {
+                    while (System.currentTimeMillis() < endTime) {
+                        // Distinct query images, so that the searches are neither coalesced nor cached
+                        byte[] queryImage = createRandomImage(random);
+                        long startTime = System.nanoTime();
+                        MockHttpServletResponse response = search(queryImage);
+                        if (response.getStatus() == 200) {
+                            latencies.add(System.nanoTime() - startTime);
+                        } else if (response.getStatus() == 503) {
+                            nbRejectedSearches.incrementAndGet();
+                            Thread.sleep(TimeUnit.SECONDS.toMillis(Long.parseLong(response.getHeader(HttpHeaders.RETRY_AFTER))));
+                        } else {
+                            nbFailedSearches.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        } finally {
+            clientExecutor.shutdownNow();
+        }
+
+        Long[] sortedLatencies = latencies.toArray(new Long[0]);
+        Arrays.sort(sortedLatencies);
+        long p99Latency = TimeUnit.NANOSECONDS.toMillis(sortedLatencies[(int) Math.ceil(sortedLatencies.length * 0.99) - 1]);
+        LevelResult result = new LevelResult(p99Latency, nbRejectedSearches.get(), nbFailedSearches.get());
+        LOGGER.warn("{} concurrent searches: {} searches/s served, p99 latency = {} ms, {} rejected, {} failed.",
+                concurrency, sortedLatencies.length * 1000 / LEVEL_DURATION, p99Latency,
+                result.nbRejectedSearches, result.nbFailedSearches);
+        return result;
+    }
+
+    private MockHttpServletResponse search(byte[] queryImage) throws Exception {
+        MvcResult mvcResult = mockMvc.perform(multipart("/objects/findAllBySimilarImage")
+                .file(new MockMultipartFile("imageFile", "query.png", "image/png", queryImage)))
+                .andReturn();
+        if (mvcResult.getRequest().isAsyncStarted()) {
+            mvcResult.getAsyncResult(10 * UPSTREAM_LATENCY);
+            return mockMvc.perform(asyncDispatch(mvcResult)).andReturn().getResponse();
+        }
+        return mvcResult.getResponse();
+    }
+
+    private ImageSearchTransport createStubTransport() {
+        List<ImageSearchAuction> auctions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            auctions.add(new ImageSearchAuction("item-" + i, ObjectCategory.OTHERS.getId(), "item-" + i + ".jpg",
+                    ImageStoreType.OSS, 1F / (i + 1), null));
+        }
+        return new ImageSearchTransport() {
+            @Override
+            public CompletableFuture<ImageSearchResults.InstanceResult> searchItem(
+                    Configuration configuration, String instanceName, ImageSearchQuery query, ImageSearchOperation operation) {
+                int inFlight = upstreamInFlight.incrementAndGet();
+                upstreamMaxInFlight.accumulateAndGet(inFlight, Math::max);
+
+                // Like the HTTP transport: the response is received later, without blocking a thread
+                CompletableFuture<ImageSearchResults.InstanceResult> future = new CompletableFuture<>();
+                upstreamScheduler.schedule(() -> {
+                    upstreamInFlight.decrementAndGet();
+                    future.complete(new ImageSearchResults.InstanceResult(
+                            Collections.singletonMap("instanceName", instanceName), auctions, null));
+                }, UPSTREAM_LATENCY, TimeUnit.MILLISECONDS);
+                return future;
+            }
+
+            @Override
+            public CompletableFuture<Void> addItem(Configuration configuration, String instanceName, String itemId,
+                                                   String pictureName, byte[] imageData) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> deleteItem(Configuration configuration, String instanceName, String itemId) {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+    }
+
+    private static Level setLogLevel(String loggerName, Level level) {
+        ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(loggerName);
+        Level previousLevel = logger.getLevel();
+        logger.setLevel(level);
+        return previousLevel;
+    }
+
+    /**
+     * Create an image of random blocks, large enough to give distinct perceptual hashes (pixel noise would be
+     * averaged to the same gray).
+     */
+    private static byte[] createRandomImage(Random random) throws IOException {
+        BufferedImage image = new BufferedImage(36, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y += 4) {
+            for (int x = 0; x < image.getWidth(); x += 4) {
+                int rgb = random.nextInt(0x1000000);
+                for (int i = 0; i < 16; i++) {
+                    image.setRGB(x + i % 4, y + i / 4, rgb);
+                }
+            }
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Outcome of one concurrency level.
+     */
+    private static final class LevelResult {
+        private final long p99Latency;
+        private final int nbRejectedSearches;
+        private final int nbFailedSearches;
+
+        LevelResult(long p99Latency, int nbRejectedSearches, int nbFailedSearches) {
+            this.p99Latency = p99Latency;
+            this.nbRejectedSearches = nbRejectedSearches;
+            this.nbFailedSearches = nbFailedSearches;
+        }
+
+        /**
+         * A level is sustained when no search is rejected or fails, and when the 99th percentile latency stays within
+         * twice the upstream latency, so that queuing is detected.
+         */
+        boolean isSustained() {
+            return nbRejectedSearches == 0 && nbFailedSearches == 0 && p99Latency <= 2 * UPSTREAM_LATENCY;
+        }
+    }
+}